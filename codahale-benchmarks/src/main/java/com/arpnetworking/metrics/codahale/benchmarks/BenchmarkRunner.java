@@ -0,0 +1,85 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the benchmarks at 1, 2, 4, ... N threads where N is the number of
+ * available processors. The GC profiler is always enabled so that allocation
+ * per operation is reported next to the time per operation. The results for
+ * each thread count are written as JSON to allow comparison between releases.
+ *
+ * Usage: java -jar benchmarks.jar [JMH options] [include regular expression]
+ *
+ * Any JMH command line option other than the thread count is honored.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class BenchmarkRunner {
+
+    /**
+     * Entry point.
+     *
+     * @param args JMH command line options
+     * @throws CommandLineOptionException if the options are invalid
+     * @throws RunnerException if a benchmark fails
+     */
+    public static void main(final String[] args) throws CommandLineOptionException, RunnerException {
+        final CommandLineOptions commandLine = new CommandLineOptions(args);
+        for (final int threads : threadCounts(Runtime.getRuntime().availableProcessors())) {
+            final OptionsBuilder builder = new OptionsBuilder();
+            if (commandLine.getIncludes().isEmpty()) {
+                builder.include(BenchmarkRunner.class.getPackage().getName() + ".*");
+            }
+            final Options options = builder
+                    .parent(commandLine)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-result-" + threads + "-threads.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    /**
+     * The powers of two up to and including the number of processors.
+     *
+     * @param processors number of available processors
+     * @return the thread counts to benchmark with
+     */
+    static List<Integer> threadCounts(final int processors) {
+        final List<Integer> counts = new ArrayList<>();
+        for (int threads = 1; threads < processors; threads *= 2) {
+            counts.add(threads);
+        }
+        counts.add(processors);
+        return counts;
+    }
+
+    private BenchmarkRunner() { }
+}
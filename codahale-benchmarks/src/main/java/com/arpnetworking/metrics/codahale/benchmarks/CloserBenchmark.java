@@ -0,0 +1,108 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale.benchmarks;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.codahale.MetricRegistry;
+import com.arpnetworking.metrics.codahale.SafeRefLock;
+import com.arpnetworking.metrics.impl.TsdMetricsFactory;
+import com.codahale.metrics.Gauge;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Benchmarks for closing a period of a registry with many metrics, one in ten
+ * of which is a gauge. The Codahale gauge benchmark is the cost of filtering
+ * and sorting the gauges from all the metrics which closing a period used to
+ * incur.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CloserBenchmark {
+
+    /**
+     * Create the registry and its metrics.
+     */
+    @Setup
+    public void setUp() {
+        final MetricsFactory factory = new TsdMetricsFactory.Builder()
+                .setClusterName("BenchmarkCluster")
+                .setServiceName("BenchmarkService")
+                .setHostName("localhost")
+                .setSinks(Collections.singletonList(event -> { }))
+                .build();
+        _registry = new MetricRegistry(factory);
+        for (int i = 0; i < _metricCount; ++i) {
+            final String name = "metric_" + i;
+            if (i % GAUGE_RATIO == 0) {
+                final long value = i;
+                _registry.register(name, (Gauge<Long>) () -> value);
+            } else {
+                _registry.counter(name);
+            }
+        }
+        final AtomicReference<Metrics> reference = new AtomicReference<>(factory.create());
+        final SafeRefLock<Metrics> lock = new SafeRefLock<>(reference, new ReentrantReadWriteLock(false));
+        _closer = new MetricRegistry.Closer(lock, factory, reference, _registry);
+    }
+
+    /**
+     * Close a period.
+     */
+    @Benchmark
+    public void close() {
+        _closer.run();
+    }
+
+    /**
+     * Filter and sort the gauges from all the metrics.
+     *
+     * @return the gauges
+     */
+    @Benchmark
+    public Object codahaleGetGauges() {
+        return _registry.getGauges();
+    }
+
+    @Param({"10000", "100000"})
+    private int _metricCount;
+
+    private MetricRegistry _registry;
+    private MetricRegistry.Closer _closer;
+
+    private static final int GAUGE_RATIO = 10;
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the Counter class. The Codahale benchmark is the baseline
+ * cost of the parent class alone.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CounterBenchmark {
+
+    /**
+     * Increment the counter.
+     *
+     * @param state the shared benchmark state
+     */
+    @Benchmark
+    public void inc(final RecordingState state) {
+        state.getCounter().inc();
+    }
+
+    /**
+     * Decrement the counter.
+     *
+     * @param state the shared benchmark state
+     */
+    @Benchmark
+    public void dec(final RecordingState state) {
+        state.getCounter().dec();
+    }
+
+    /**
+     * Increment a counter which emits one sample per period.
+     *
+     * @param state the shared benchmark state
+     */
+    @Benchmark
+    public void coalescedInc(final RecordingState state) {
+        state.getCoalescedCounter().inc();
+    }
+
+    /**
+     * Increment a Codahale counter.
+     *
+     * @param state the shared benchmark state
+     */
+    @Benchmark
+    public void codahaleInc(final RecordingState state) {
+        state.getCodahaleCounter().inc();
+    }
+}
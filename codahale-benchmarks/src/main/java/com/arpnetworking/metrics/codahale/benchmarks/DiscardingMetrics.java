@@ -0,0 +1,125 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale.benchmarks;
+
+import com.arpnetworking.metrics.Counter;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.Timer;
+import com.arpnetworking.metrics.Unit;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics which discard every sample, so that draining buffered samples into
+ * them measures the drain without allocating samples. Counters and timers
+ * cannot be created.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+final class DiscardingMetrics implements Metrics {
+    @Override
+    public Counter createCounter(final String name) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void incrementCounter(final String name) {
+    }
+
+    @Override
+    public void incrementCounter(final String name, final long value) {
+    }
+
+    @Override
+    public void decrementCounter(final String name) {
+    }
+
+    @Override
+    public void decrementCounter(final String name, final long value) {
+    }
+
+    @Override
+    public void resetCounter(final String name) {
+    }
+
+    @Override
+    public Timer createTimer(final String name) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void startTimer(final String name) {
+    }
+
+    @Override
+    public void stopTimer(final String name) {
+    }
+
+    @Override
+    public void setTimer(final String name, final long duration, final TimeUnit unit) {
+    }
+
+    @Override
+    public void setTimer(final String name, final long duration, final Unit unit) {
+    }
+
+    @Override
+    public void setGauge(final String name, final double value) {
+    }
+
+    @Override
+    public void setGauge(final String name, final double value, final Unit unit) {
+    }
+
+    @Override
+    public void setGauge(final String name, final long value) {
+    }
+
+    @Override
+    public void setGauge(final String name, final long value, final Unit unit) {
+    }
+
+    @Override
+    public void addAnnotation(final String key, final String value) {
+    }
+
+    @Override
+    public void addAnnotations(final Map<String, String> map) {
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public Instant getOpenTime() {
+        return OPEN_TIME;
+    }
+
+    @Override
+    public Instant getCloseTime() {
+        return null;
+    }
+
+    private static final Instant OPEN_TIME = Instant.now();
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale.benchmarks;
+
+import com.codahale.metrics.Timer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for looking up metrics in the MetricRegistry class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricRegistryBenchmark {
+
+    /**
+     * Look up a registered timer by name.
+     *
+     * @param state the shared benchmark state
+     * @param name the name to look up
+     * @return the timer
+     */
+    @Benchmark
+    public Timer timer(final RecordingState state, final NameState name) {
+        return state.getRegistry().timer(name.getName());
+    }
+
+    /**
+     * Per thread choice of a registered timer name.
+     */
+    @State(Scope.Thread)
+    public static class NameState {
+
+        /**
+         * Pick the next name to look up.
+         */
+        @Setup(Level.Iteration)
+        public void setUp() {
+            _name = RecordingState.timerName(ThreadLocalRandom.current().nextInt(RecordingState.REGISTERED_TIMERS));
+        }
+
+        public String getName() {
+            return _name;
+        }
+
+        private String _name;
+    }
+}
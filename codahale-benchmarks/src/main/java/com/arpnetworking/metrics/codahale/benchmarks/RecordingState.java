@@ -0,0 +1,225 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale.benchmarks;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.codahale.Counter;
+import com.arpnetworking.metrics.codahale.Histogram;
+import com.arpnetworking.metrics.codahale.Meter;
+import com.arpnetworking.metrics.codahale.MetricRegistry;
+import com.arpnetworking.metrics.codahale.RecordingMode;
+import com.arpnetworking.metrics.codahale.SafeRefLock;
+import com.arpnetworking.metrics.codahale.StripedReadWriteLock;
+import com.arpnetworking.metrics.codahale.Timer;
+import com.arpnetworking.metrics.impl.TsdMetricsFactory;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Shared state for the recording benchmarks. The wrappers are created by a
+ * registry with the lock, recording mode and period of the benchmark, so its
+ * periods are closed, and any buffered samples drained, on the shared closer
+ * thread. The lock benchmark uses a lock and metrics reference that are owned
+ * by the benchmark and swapped by a dedicated thread at the same period. A
+ * period of 500 milliseconds matches the registry and is effectively recording
+ * without a concurrent swap, while a period of 1 millisecond keeps the swap
+ * constantly contending with recording. The period is never disabled because
+ * without it the samples accumulate in the open metrics without bound and the
+ * benchmark measures the collector instead of the recording path. Closed
+ * metrics are published to a sink that discards the events so that only the
+ * cost of recording and closing is measured. In TSD only mode the Codahale
+ * reservoirs and rates are not updated.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+@State(Scope.Benchmark)
+public class RecordingState {
+
+    /**
+     * Create the metrics and start swapping periods.
+     */
+    @Setup
+    public void setUp() {
+        _factory = new TsdMetricsFactory.Builder()
+                .setClusterName("BenchmarkCluster")
+                .setServiceName("BenchmarkService")
+                .setHostName("localhost")
+                .setSinks(Collections.singletonList(event -> { }))
+                .build();
+        _registry = new MetricRegistry(_factory);
+        _reference.set(_factory.create());
+        _lock = new SafeRefLock<>(_reference, createLock(_lockType));
+
+        _wrappers = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setLock(createLock(_lockType))
+                .setRecordingMode(_recordingMode)
+                .setCoalesced("coalesced_counter"::equals)
+                .setTsdOnly(_tsdOnly)
+                .setPeriod(Duration.ofMillis(_closerPeriodMillis))
+                .build();
+        _counter = _wrappers.counter("counter");
+        _coalescedCounter = _wrappers.counter("coalesced_counter");
+        _timer = _wrappers.timer("timer");
+        _histogram = _wrappers.histogram("histogram");
+        _meter = _wrappers.meter("meter");
+        for (int i = 0; i < REGISTERED_TIMERS; ++i) {
+            _registry.timer(timerName(i));
+        }
+
+        _codahaleCounter = new com.codahale.metrics.Counter();
+        _codahaleTimer = new com.codahale.metrics.Timer();
+        _codahaleHistogram = new com.codahale.metrics.Histogram(new ExponentiallyDecayingReservoir());
+        _codahaleMeter = new com.codahale.metrics.Meter();
+
+        final MetricRegistry.Closer closer = new MetricRegistry.Closer(_lock, _factory, _reference, _registry);
+        final long periodNanos = TimeUnit.MILLISECONDS.toNanos(_closerPeriodMillis);
+        _swapper = new Thread(
+                () -> {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        LockSupport.parkNanos(periodNanos);
+                        closer.run();
+                    }
+                },
+                "benchmark-closer");
+        _swapper.setDaemon(true);
+        _swapper.start();
+    }
+
+    /**
+     * Stop swapping periods and close the last one.
+     *
+     * @throws InterruptedException if interrupted while waiting for the swapping thread
+     */
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        _swapper.interrupt();
+        _swapper.join();
+        _reference.get().close();
+        _wrappers.close();
+    }
+
+    /**
+     * Create the lock guarding the open metrics.
+     *
+     * @param type the type of lock; either reentrant or striped
+     * @return a new lock
+     */
+    public static ReadWriteLock createLock(final String type) {
+        if ("striped".equals(type)) {
+            return new StripedReadWriteLock();
+        }
+        return new ReentrantReadWriteLock(false);
+    }
+
+    /**
+     * Name of the i-th timer registered with the registry.
+     *
+     * @param index index of the timer
+     * @return the name of the timer
+     */
+    public static String timerName(final int index) {
+        return "timer_" + index;
+    }
+
+    public SafeRefLock<Metrics> getLock() {
+        return _lock;
+    }
+
+    public Counter getCounter() {
+        return _counter;
+    }
+
+    public Counter getCoalescedCounter() {
+        return _coalescedCounter;
+    }
+
+    public Timer getTimer() {
+        return _timer;
+    }
+
+    public Histogram getHistogram() {
+        return _histogram;
+    }
+
+    public Meter getMeter() {
+        return _meter;
+    }
+
+    public MetricRegistry getRegistry() {
+        return _registry;
+    }
+
+    public com.codahale.metrics.Counter getCodahaleCounter() {
+        return _codahaleCounter;
+    }
+
+    public com.codahale.metrics.Timer getCodahaleTimer() {
+        return _codahaleTimer;
+    }
+
+    public com.codahale.metrics.Histogram getCodahaleHistogram() {
+        return _codahaleHistogram;
+    }
+
+    public com.codahale.metrics.Meter getCodahaleMeter() {
+        return _codahaleMeter;
+    }
+
+    @Param({"500", "1"})
+    private int _closerPeriodMillis;
+    @Param({"reentrant", "striped"})
+    private String _lockType;
+    @Param({"LOCKED", "THREAD_LOCAL", "INDEXED"})
+    private RecordingMode _recordingMode;
+    @Param({"false", "true"})
+    private boolean _tsdOnly;
+
+    private MetricsFactory _factory;
+    private MetricRegistry _registry;
+    private MetricRegistry _wrappers;
+    private SafeRefLock<Metrics> _lock;
+    private Counter _counter;
+    private Counter _coalescedCounter;
+    private Timer _timer;
+    private Histogram _histogram;
+    private Meter _meter;
+    private com.codahale.metrics.Counter _codahaleCounter;
+    private com.codahale.metrics.Timer _codahaleTimer;
+    private com.codahale.metrics.Histogram _codahaleHistogram;
+    private com.codahale.metrics.Meter _codahaleMeter;
+    private Thread _swapper;
+
+    private final AtomicReference<Metrics> _reference = new AtomicReference<>();
+
+    /**
+     * Number of timers registered with the registry for lookup benchmarks.
+     */
+    public static final int REGISTERED_TIMERS = 1024;
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale.benchmarks;
+
+import com.arpnetworking.metrics.codahale.LogLinearReservoir;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the reservoirs backing histograms and timers. Values are
+ * drawn uniformly from a millisecond range of nanoseconds.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReservoirBenchmark {
+
+    /**
+     * Create the reservoir.
+     */
+    @Setup
+    public void setUp() {
+        if ("log_linear".equals(_reservoirType)) {
+            _reservoir = new LogLinearReservoir();
+        } else {
+            _reservoir = new ExponentiallyDecayingReservoir();
+        }
+        for (int i = 0; i < PRELOADED_VALUES; ++i) {
+            _reservoir.update(nextValue());
+        }
+    }
+
+    /**
+     * Update the reservoir.
+     */
+    @Benchmark
+    public void update() {
+        _reservoir.update(nextValue());
+    }
+
+    /**
+     * Take a snapshot of the reservoir and read a percentile.
+     *
+     * @return the 99th percentile
+     */
+    @Benchmark
+    public double snapshot() {
+        final Snapshot snapshot = _reservoir.getSnapshot();
+        return snapshot.get99thPercentile();
+    }
+
+    private static long nextValue() {
+        return ThreadLocalRandom.current().nextLong(MAX_VALUE);
+    }
+
+    @Param({"exponentially_decaying", "log_linear"})
+    private String _reservoirType;
+
+    private Reservoir _reservoir;
+
+    private static final int PRELOADED_VALUES = 10000;
+    private static final long MAX_VALUE = TimeUnit.MILLISECONDS.toNanos(1);
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale.benchmarks;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.codahale.MetricRegistry;
+import com.arpnetworking.metrics.codahale.RecordingMode;
+import com.arpnetworking.metrics.codahale.Timer;
+import com.arpnetworking.metrics.impl.TsdMetricsFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the allocation of the Timer timing paths; run with the GC
+ * profiler. The timer buffers its samples either per thread or in off heap
+ * chunks and skips the Codahale bookkeeping. The registry never closes a
+ * period; instead the timer is drained on the benchmark thread every 1024
+ * samples into metrics which discard them, so that only the timing path
+ * itself is measured. The context benchmark allocates a context per event unless it
+ * is eliminated by escape analysis.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimerAllocationBenchmark {
+
+    /**
+     * Create the timer.
+     */
+    @Setup
+    public void setUp() {
+        final boolean offHeap = "off_heap".equals(_storage);
+        _registry = new MetricRegistry.Builder()
+                .setMetricsFactory(
+                        new TsdMetricsFactory.Builder()
+                                .setClusterName("BenchmarkCluster")
+                                .setServiceName("BenchmarkService")
+                                .setHostName("localhost")
+                                .setSinks(Collections.singletonList(event -> { }))
+                                .build())
+                .setPeriod(Duration.ofDays(1))
+                .setRecordingMode(RecordingMode.THREAD_LOCAL)
+                .setOffHeap(name -> offHeap)
+                .setTsdOnly(true)
+                .build();
+        _timer = _registry.timer("timer");
+    }
+
+    /**
+     * Close the registry.
+     */
+    @TearDown
+    public void tearDown() {
+        _registry.close();
+    }
+
+    /**
+     * Time an empty block without a context.
+     *
+     * @return the recorded duration
+     */
+    @Benchmark
+    public long recordSince() {
+        final long elapsed = _timer.recordSince(_timer.start());
+        drainPeriodically();
+        return elapsed;
+    }
+
+    /**
+     * Time an empty runnable.
+     */
+    @Benchmark
+    public void timeRunnable() {
+        _timer.time(NO_OP);
+        drainPeriodically();
+    }
+
+    /**
+     * Time a callable returning a constant.
+     *
+     * @return the result of the callable
+     * @throws Exception never
+     */
+    @Benchmark
+    public Object timeCallable() throws Exception {
+        final Object result = _timer.time(CONSTANT);
+        drainPeriodically();
+        return result;
+    }
+
+    /**
+     * Time an empty block with a context.
+     *
+     * @return the recorded duration
+     */
+    @Benchmark
+    public long timeContext() {
+        final long elapsed = _timer.time().stop();
+        drainPeriodically();
+        return elapsed;
+    }
+
+    private void drainPeriodically() {
+        if ((++_samples & DRAIN_MASK) == 0) {
+            _timer.drainTo(DISCARD);
+        }
+    }
+
+    @Param({"thread_local", "off_heap"})
+    private String _storage;
+
+    private MetricRegistry _registry;
+    private Timer _timer;
+    private long _samples;
+
+    private static final int DRAIN_MASK = 1023;
+    private static final Object RESULT = new Object();
+    private static final Runnable NO_OP = () -> { };
+    private static final Callable<Object> CONSTANT = () -> RESULT;
+    private static final Metrics DISCARD = new DiscardingMetrics();
+}
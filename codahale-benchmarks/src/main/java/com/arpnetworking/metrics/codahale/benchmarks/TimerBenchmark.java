@@ -0,0 +1,110 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale.benchmarks;
+
+import com.codahale.metrics.Timer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the Timer class. The Codahale benchmarks are the baseline
+ * cost of the parent class alone.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimerBenchmark {
+
+    /**
+     * Record a duration.
+     *
+     * @param state the shared benchmark state
+     */
+    @Benchmark
+    public void update(final RecordingState state) {
+        state.getTimer().update(DURATION, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Time an empty block with a context.
+     *
+     * @param state the shared benchmark state
+     * @return the recorded duration
+     */
+    @Benchmark
+    public long time(final RecordingState state) {
+        final Timer.Context context = state.getTimer().time();
+        return context.stop();
+    }
+
+    /**
+     * Time an empty block without a context.
+     *
+     * @param state the shared benchmark state
+     * @return the recorded duration
+     */
+    @Benchmark
+    public long recordSince(final RecordingState state) {
+        final com.arpnetworking.metrics.codahale.Timer timer = state.getTimer();
+        return timer.recordSince(timer.start());
+    }
+
+    /**
+     * Time an empty runnable.
+     *
+     * @param state the shared benchmark state
+     */
+    @Benchmark
+    public void timeRunnable(final RecordingState state) {
+        state.getTimer().time(NO_OP);
+    }
+
+    /**
+     * Record a duration on a Codahale timer.
+     *
+     * @param state the shared benchmark state
+     */
+    @Benchmark
+    public void codahaleUpdate(final RecordingState state) {
+        state.getCodahaleTimer().update(DURATION, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Time an empty block with a Codahale timer context.
+     *
+     * @param state the shared benchmark state
+     * @return the recorded duration
+     */
+    @Benchmark
+    public long codahaleTime(final RecordingState state) {
+        final Timer.Context context = state.getCodahaleTimer().time();
+        return context.stop();
+    }
+
+    private static final long DURATION = 12345;
+    private static final Runnable NO_OP = () -> { };
+}
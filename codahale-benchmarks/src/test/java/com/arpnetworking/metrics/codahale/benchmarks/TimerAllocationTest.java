@@ -0,0 +1,73 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale.benchmarks;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Collection;
+
+/**
+ * Tests that the context free timing paths of the Timer class do not allocate.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class TimerAllocationTest {
+    @Test
+    public void allocationFree() throws RunnerException {
+        final Options options = new OptionsBuilder()
+                .include(TimerAllocationBenchmark.class.getName() + "\\.(recordSince|timeRunnable|timeCallable)$")
+                .addProfiler(GCProfiler.class)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.milliseconds(200))
+                .measurementIterations(3)
+                .measurementTime(TimeValue.milliseconds(200))
+                .forks(1)
+                .shouldFailOnError(true)
+                .build();
+        final Collection<RunResult> results = new Runner(options).run();
+        Assert.assertEquals(6, results.size());
+        for (final RunResult result : results) {
+            final String benchmark = result.getParams().getBenchmark() + " " + result.getParams().getParam("_storage");
+            final Result<?> allocation = allocationPerOperation(result);
+            Assert.assertNotNull("No allocation profile for " + benchmark, allocation);
+            Assert.assertTrue(
+                    benchmark + " allocated " + allocation.getScore() + " bytes per operation",
+                    allocation.getScore() < MAX_BYTES_PER_OPERATION);
+        }
+    }
+
+    private static Result<?> allocationPerOperation(final RunResult result) {
+        for (final String label : result.getSecondaryResults().keySet()) {
+            if (label.endsWith("gc.alloc.rate.norm")) {
+                final Result<?> allocation = result.getSecondaryResults().get(label);
+                return allocation;
+            }
+        }
+        return null;
+    }
+
+    // Allows for measurement noise from the profiler and the harness
+    private static final double MAX_BYTES_PER_OPERATION = 1;
+}
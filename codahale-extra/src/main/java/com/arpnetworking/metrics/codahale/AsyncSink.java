@@ -0,0 +1,361 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Sink;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A sink which queues units of work and records them to another sink on a
+ * dedicated writer thread, so that closing a period never waits on
+ * serialization or disk. The writer takes the queued units in batches and
+ * flushes the sink after each batch if it is {@link Flushable}. When the bounded
+ * queue is full, units are dropped or the recording thread waits according to
+ * the {@link OverflowPolicy}.
+ *
+ * Closing the sink stops it accepting units and waits, up to a timeout, for
+ * the writer to record the units already queued, close the sink if it is
+ * {@link Closeable} and exit. Units which arrive as the writer exits are
+ * dropped.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class AsyncSink implements Sink, Closeable {
+    private AsyncSink(final Builder builder) {
+        if (builder._sink == null) {
+            throw new IllegalArgumentException("Sink must be set");
+        }
+        if (builder._capacity < 1 || builder._batchSize < 1) {
+            throw new IllegalArgumentException(
+                    "Capacity and batch size must be positive; capacity=" + builder._capacity
+                            + ", batchSize=" + builder._batchSize);
+        }
+        _sink = builder._sink;
+        _overflowPolicy = builder._overflowPolicy;
+        _batchSize = builder._batchSize;
+        _queue = new ArrayBlockingQueue<>(builder._capacity);
+        _writer = new Thread(this::write, "metrics-sink-writer");
+        _writer.setDaemon(true);
+        _writer.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void record(final Event event) {
+        if (_closed) {
+            _dropped.increment();
+            return;
+        }
+        switch (_overflowPolicy) {
+            case DROP_OLDEST:
+                while (!_queue.offer(event)) {
+                    // A close racing with this record may have queued the wake up
+                    final Event oldest = _queue.poll();
+                    if (oldest != null && oldest != WAKE) {
+                        _dropped.increment();
+                        complete(1);
+                    }
+                }
+                break;
+            case BLOCK:
+                try {
+                    _queue.put(event);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    _dropped.increment();
+                    return;
+                }
+                break;
+            default:
+                if (!_queue.offer(event)) {
+                    _dropped.increment();
+                    return;
+                }
+        }
+        _accepted.increment();
+        if (_exited) {
+            // Closed after the check above; the writer may have drained the queue before this unit arrived
+            dropQueued();
+        }
+    }
+
+    /**
+     * Wait for the units of work recorded before this call to be written.
+     *
+     * @param timeout the longest time to wait
+     * @return true if the units were written, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean flush(final Duration timeout) throws InterruptedException {
+        final long target = _accepted.sum();
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (_monitor) {
+            while (_completed < target) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(_monitor, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stop accepting units and wait for the writer to record the queued units
+     * and close the sink. Waits at most five seconds.
+     */
+    @Override
+    public void close() {
+        try {
+            close(DEFAULT_CLOSE_TIMEOUT);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stop accepting units and wait for the writer to record the queued units
+     * and close the sink.
+     *
+     * @param timeout the longest time to wait
+     * @return true if the sink was closed, false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @SuppressFBWarnings(
+            value = "RV_RETURN_VALUE_IGNORED_BAD_PRACTICE",
+            justification = "A full queue means the writer is not waiting and so needs no wake up")
+    public boolean close(final Duration timeout) throws InterruptedException {
+        _closed = true;
+        // Wakes the writer if it is waiting for a unit
+        _queue.offer(WAKE);
+        _writer.join(Math.max(1, timeout.toMillis()));
+        return !_writer.isAlive();
+    }
+
+    /**
+     * The number of units of work dropped because the queue was full or the
+     * sink was closed.
+     *
+     * @return the number of dropped units
+     */
+    public long getDropped() {
+        return _dropped.sum();
+    }
+
+    /**
+     * The number of units of work waiting to be written.
+     *
+     * @return the number of queued units
+     */
+    public int getQueued() {
+        return _queue.size();
+    }
+
+    private void write() {
+        final List<Event> batch = new ArrayList<>(_batchSize);
+        while (!_closed || !_queue.isEmpty()) {
+            final Event first;
+            try {
+                first = _queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                // Only closing the sink stops the writer
+                continue;
+            }
+            if (first == null) {
+                continue;
+            }
+            batch.add(first);
+            _queue.drainTo(batch, _batchSize - 1);
+            batch.removeIf(WAKE::equals);
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+                complete(batch.size());
+                batch.clear();
+            }
+        }
+        _exited = true;
+        dropQueued();
+        if (_sink instanceof Closeable) {
+            try {
+                ((Closeable) _sink).close();
+            } catch (final IOException e) {
+                System.err.println(e);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void writeBatch(final List<Event> batch) {
+        try {
+            for (final Event event : batch) {
+                _sink.record(event);
+            }
+            if (_sink instanceof Flushable) {
+                ((Flushable) _sink).flush();
+            }
+            //CHECKSTYLE.OFF: IllegalCatch - we need to catch everything
+        } catch (final Exception ex) {
+            //CHECKSTYLE.ON: IllegalCatch
+            System.err.println(ex);
+            ex.printStackTrace();
+        }
+    }
+
+    private void dropQueued() {
+        Event event;
+        while ((event = _queue.poll()) != null) {
+            if (event != WAKE) {
+                _dropped.increment();
+                complete(1);
+            }
+        }
+    }
+
+    private void complete(final int count) {
+        synchronized (_monitor) {
+            _completed += count;
+            _monitor.notifyAll();
+        }
+    }
+
+    private final Sink _sink;
+    private final OverflowPolicy _overflowPolicy;
+    private final int _batchSize;
+    private final BlockingQueue<Event> _queue;
+    private final Thread _writer;
+    private final LongAdder _accepted = new LongAdder();
+    private final LongAdder _dropped = new LongAdder();
+    private final Object _monitor = new Object();
+    private volatile boolean _closed;
+    private volatile boolean _exited;
+    // Units written or dropped from the queue; guarded by the monitor
+    private long _completed;
+
+    private static final long POLL_MILLIS = 100;
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int DEFAULT_BATCH_SIZE = 64;
+    private static final Duration DEFAULT_CLOSE_TIMEOUT = Duration.ofSeconds(5);
+    private static final Event WAKE = new Wakeup();
+
+    /**
+     * Builder for {@link AsyncSink}.
+     *
+     * @author Brandon Arp (barp at groupon dot com)
+     */
+    public static final class Builder {
+        /**
+         * Create the sink and start its writer thread.
+         *
+         * @return a new {@link AsyncSink}
+         */
+        public AsyncSink build() {
+            return new AsyncSink(this);
+        }
+
+        /**
+         * Set the sink to write the units of work to. Required. If the sink is
+         * {@link Flushable} it is flushed after each batch and if it is
+         * {@link Closeable} it is closed once the writer exits.
+         *
+         * @param value the sink to write to
+         * @return this builder
+         */
+        public Builder setSink(final Sink value) {
+            _sink = value;
+            return this;
+        }
+
+        /**
+         * Set the number of units of work the queue holds. Optional; defaults to 1024.
+         *
+         * @param value the capacity of the queue; at least one
+         * @return this builder
+         */
+        public Builder setCapacity(final int value) {
+            _capacity = value;
+            return this;
+        }
+
+        /**
+         * Set the most units of work written between flushes of the sink.
+         * Optional; defaults to 64.
+         *
+         * @param value the largest batch; at least one
+         * @return this builder
+         */
+        public Builder setBatchSize(final int value) {
+            _batchSize = value;
+            return this;
+        }
+
+        /**
+         * Set what to do with a unit of work when the queue is full. Optional;
+         * defaults to {@link OverflowPolicy#DROP_NEWEST}.
+         *
+         * @param value the overflow policy
+         * @return this builder
+         */
+        public Builder setOverflowPolicy(final OverflowPolicy value) {
+            _overflowPolicy = value;
+            return this;
+        }
+
+        private Sink _sink;
+        private int _capacity = DEFAULT_CAPACITY;
+        private int _batchSize = DEFAULT_BATCH_SIZE;
+        private OverflowPolicy _overflowPolicy = OverflowPolicy.DROP_NEWEST;
+    }
+
+    private static final class Wakeup implements Event {
+        @Override
+        public Map<String, String> getAnnotations() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Map<String, List<Quantity>> getTimerSamples() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Map<String, List<Quantity>> getCounterSamples() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Map<String, List<Quantity>> getGaugeSamples() {
+            return Collections.emptyMap();
+        }
+    }
+}
@@ -0,0 +1,434 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.CompoundUnit;
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Unit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads units of work from a binary query log written by {@link BinaryFileSink}
+ * one at a time, and converts binary query logs to the JSON query log format.
+ *
+ * A binary query log file starts with the four bytes TSDB and a version byte,
+ * followed by one record per unit of work. Each record is its length as a
+ * varint followed by:
+ *
+ * <ul>
+ * <li>the number of annotations, then the key and value of each</li>
+ * <li>the counter, gauge and timer samples in turn; for each the number of
+ * metrics, then the name, number of samples and samples of each metric</li>
+ * </ul>
+ *
+ * Each sample is a flags byte, the value as a zigzag varint or, if flagged as
+ * floating, as the eight bytes of a double, and, if flagged, a new unit given
+ * by its numerator and denominator names. Samples which are not flagged have
+ * the unit of the previous sample of the metric.
+ *
+ * Strings are a varint whose low bit is set if the UTF-8 bytes of the string,
+ * as many as the rest of the varint, follow. Otherwise the rest of the varint
+ * is the index of a name written in full earlier in the file; annotation keys,
+ * metric names and unit names written in full are added to this table in the
+ * order they appear, annotation values are not.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class BinaryEventReader implements Closeable {
+    /**
+     * Public constructor.
+     *
+     * @param input the stream to read the binary query log from
+     */
+    public BinaryEventReader(final InputStream input) {
+        _input = new BufferedInputStream(input);
+    }
+
+    /**
+     * Read the next unit of work.
+     *
+     * @return the unit of work, or null at the end of the stream
+     * @throws IOException if the stream could not be read or is not a binary query log
+     */
+    public Event read() throws IOException {
+        if (!_started) {
+            readHeader();
+            _started = true;
+        }
+        final int first = _input.read();
+        if (first < 0) {
+            return null;
+        }
+        final long length = readLength(first);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Record too long; length=" + length);
+        }
+        if (_record.length < length) {
+            _record = new byte[(int) length];
+        }
+        readFully(_record, 0, (int) length);
+        _position = 0;
+        _limit = (int) length;
+        return readEvent();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        _input.close();
+    }
+
+    /**
+     * Convert a binary query log to the JSON query log format, one unit of work per line.
+     *
+     * @param input the stream to read the binary query log from
+     * @param output the writer to write the JSON to
+     * @throws IOException if the binary query log could not be read or the JSON written
+     */
+    public static void toJson(final InputStream input, final Writer output) throws IOException {
+        final BinaryEventReader reader = new BinaryEventReader(input);
+        final StringBuilder json = new StringBuilder();
+        for (Event event = reader.read(); event != null; event = reader.read()) {
+            json.setLength(0);
+            QueryLogJson.append(event, json);
+            json.append('\n');
+            output.append(json);
+        }
+        output.flush();
+    }
+
+    /**
+     * Convert the binary query log files given as arguments, or standard input
+     * if there are none, to the JSON query log format on standard output.
+     *
+     * @param args the files to convert
+     * @throws IOException if a file could not be read
+     */
+    public static void main(final String[] args) throws IOException {
+        final Writer output = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        if (args.length == 0) {
+            toJson(System.in, output);
+        }
+        for (final String file : args) {
+            try (InputStream input = new FileInputStream(file)) {
+                toJson(input, output);
+            }
+        }
+    }
+
+    private void readHeader() throws IOException {
+        final byte[] header = new byte[HEADER.length];
+        final int read = _input.read(header);
+        if (read < 0) {
+            return;
+        }
+        if (read < header.length) {
+            readFully(header, read, header.length - read);
+        }
+        for (int i = 0; i < HEADER.length - 1; ++i) {
+            if (header[i] != HEADER[i]) {
+                throw new IOException("Not a binary query log");
+            }
+        }
+        if (header[HEADER.length - 1] != VERSION) {
+            throw new IOException("Unsupported binary query log version; version=" + header[HEADER.length - 1]);
+        }
+    }
+
+    private Event readEvent() throws IOException {
+        final int annotationCount = readCount();
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        for (int i = 0; i < annotationCount; ++i) {
+            final String key = readString(true);
+            annotations.put(key, readString(false));
+        }
+        final Map<String, List<Quantity>> counters = readSamples();
+        final Map<String, List<Quantity>> gauges = readSamples();
+        final Map<String, List<Quantity>> timers = readSamples();
+        return new DecodedEvent(annotations, counters, gauges, timers);
+    }
+
+    private Map<String, List<Quantity>> readSamples() throws IOException {
+        final int metricCount = readCount();
+        final Map<String, List<Quantity>> samples = new LinkedHashMap<>();
+        for (int i = 0; i < metricCount; ++i) {
+            final String name = readString(true);
+            final int sampleCount = readCount();
+            final List<Quantity> quantities = new ArrayList<>(sampleCount);
+            Unit unit = null;
+            for (int j = 0; j < sampleCount; ++j) {
+                final int flags = readByte();
+                final Number value;
+                if ((flags & FLOATING) != 0) {
+                    value = Double.longBitsToDouble(readLong());
+                } else {
+                    final long zigzag = readVarint();
+                    value = (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+                if ((flags & UNIT) != 0) {
+                    unit = readUnit();
+                }
+                quantities.add(new DecodedQuantity(value, unit));
+            }
+            samples.put(name, quantities);
+        }
+        return samples;
+    }
+
+    private Unit readUnit() throws IOException {
+        final List<Unit> numerators = readUnits();
+        final List<Unit> denominators = readUnits();
+        if (denominators.isEmpty() && numerators.size() <= 1) {
+            return numerators.isEmpty() ? null : numerators.get(0);
+        }
+        return new DecodedCompoundUnit(numerators, denominators);
+    }
+
+    private List<Unit> readUnits() throws IOException {
+        final int count = readCount();
+        if (count == 0) {
+            return Collections.emptyList();
+        }
+        final List<Unit> units = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            units.add(new DecodedUnit(readString(true)));
+        }
+        return units;
+    }
+
+    private String readString(final boolean name) throws IOException {
+        final long reference = readVarint();
+        if ((reference & 1) == 0) {
+            final long index = reference >>> 1;
+            if (index >= _names.size()) {
+                throw new IOException("Unknown string; index=" + index);
+            }
+            return _names.get((int) index);
+        }
+        final long length = reference >>> 1;
+        if (length > _limit - _position) {
+            throw new IOException("Truncated record");
+        }
+        final String value = StandardCharsets.UTF_8.decode(ByteBuffer.wrap(_record, _position, (int) length)).toString();
+        _position += (int) length;
+        if (name) {
+            _names.add(value);
+        }
+        return value;
+    }
+
+    private int readCount() throws IOException {
+        final long count = readVarint();
+        // Every counted item takes at least a byte
+        if (count > _limit - _position) {
+            throw new IOException("Truncated record");
+        }
+        return (int) count;
+    }
+
+    private long readLong() throws IOException {
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; ++i) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    private int readByte() throws IOException {
+        if (_position >= _limit) {
+            throw new IOException("Truncated record");
+        }
+        return _record[_position++] & 0xFF;
+    }
+
+    private long readVarint() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift <= MAX_VARINT_SHIFT; shift += 7) {
+            final int current = readByte();
+            value |= (long) (current & 0x7F) << shift;
+            if ((current & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private long readLength(final int first) throws IOException {
+        long value = first & 0x7F;
+        int current = first;
+        for (int shift = 7; (current & 0x80) != 0; shift += 7) {
+            if (shift > MAX_VARINT_SHIFT) {
+                throw new IOException("Malformed varint");
+            }
+            current = _input.read();
+            if (current < 0) {
+                throw new EOFException("Truncated record");
+            }
+            value |= (long) (current & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    private void readFully(final byte[] buffer, final int offset, final int length) throws IOException {
+        int read = 0;
+        while (read < length) {
+            final int count = _input.read(buffer, offset + read, length - read);
+            if (count < 0) {
+                throw new EOFException("Truncated record");
+            }
+            read += count;
+        }
+    }
+
+    private final InputStream _input;
+    private final List<String> _names = new ArrayList<>();
+    private byte[] _record = new byte[INITIAL_CAPACITY];
+    private int _position;
+    private int _limit;
+    private boolean _started;
+
+    static final byte[] HEADER = {'T', 'S', 'D', 'B', 1};
+    static final int FLOATING = 1;
+    static final int UNIT = 2;
+    private static final byte VERSION = 1;
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final int MAX_VARINT_SHIFT = 63;
+
+    private static final class DecodedEvent implements Event {
+        private DecodedEvent(
+                final Map<String, String> annotations,
+                final Map<String, List<Quantity>> counters,
+                final Map<String, List<Quantity>> gauges,
+                final Map<String, List<Quantity>> timers) {
+            _annotations = annotations;
+            _counters = counters;
+            _gauges = gauges;
+            _timers = timers;
+        }
+
+        @Override
+        public Map<String, String> getAnnotations() {
+            return _annotations;
+        }
+
+        @Override
+        public Map<String, List<Quantity>> getTimerSamples() {
+            return _timers;
+        }
+
+        @Override
+        public Map<String, List<Quantity>> getCounterSamples() {
+            return _counters;
+        }
+
+        @Override
+        public Map<String, List<Quantity>> getGaugeSamples() {
+            return _gauges;
+        }
+
+        private final Map<String, String> _annotations;
+        private final Map<String, List<Quantity>> _counters;
+        private final Map<String, List<Quantity>> _gauges;
+        private final Map<String, List<Quantity>> _timers;
+    }
+
+    private static final class DecodedQuantity implements Quantity {
+        private DecodedQuantity(final Number value, final Unit unit) {
+            _value = value;
+            _unit = unit;
+        }
+
+        @Override
+        public Number getValue() {
+            return _value;
+        }
+
+        @Override
+        public Unit getUnit() {
+            return _unit;
+        }
+
+        private final Number _value;
+        private final Unit _unit;
+    }
+
+    private static final class DecodedUnit implements Unit {
+        private DecodedUnit(final String name) {
+            _name = name;
+        }
+
+        @Override
+        public String getName() {
+            return _name;
+        }
+
+        private final String _name;
+    }
+
+    private static final class DecodedCompoundUnit implements CompoundUnit {
+        private DecodedCompoundUnit(final List<Unit> numerators, final List<Unit> denominators) {
+            _numerators = numerators;
+            _denominators = denominators;
+        }
+
+        @Override
+        public String getName() {
+            final StringBuilder name = new StringBuilder();
+            for (final Unit numerator : _numerators) {
+                name.append(numerator.getName()).append('*');
+            }
+            if (name.length() > 0) {
+                name.setLength(name.length() - 1);
+            }
+            for (final Unit denominator : _denominators) {
+                name.append('/').append(denominator.getName());
+            }
+            return name.toString();
+        }
+
+        @Override
+        public List<Unit> getNumeratorUnits() {
+            return _numerators;
+        }
+
+        @Override
+        public List<Unit> getDenominatorUnits() {
+            return _denominators;
+        }
+
+        private final List<Unit> _numerators;
+        private final List<Unit> _denominators;
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.CompoundUnit;
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Unit;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes units of work in the binary query log format read by
+ * {@link BinaryEventReader}. The writer keeps the string table of the file
+ * being written, so each annotation key, metric name and unit name is written
+ * in full only the first time it appears in the file. Each encoded unit is held
+ * in a reusable buffer until the next is encoded.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+final class BinaryEventWriter {
+    /**
+     * Start a new file; the strings written to the previous file are written
+     * in full again.
+     */
+    public void reset() {
+        _strings.clear();
+    }
+
+    /**
+     * Encode a unit of work, without its length prefix.
+     *
+     * @param event the unit of work
+     */
+    public void encode(final Event event) {
+        _size = 0;
+        final Map<String, String> annotations = event.getAnnotations();
+        writeVarint(annotations.size());
+        for (final Map.Entry<String, String> annotation : annotations.entrySet()) {
+            writeName(annotation.getKey());
+            // Values such as the id of the unit rarely repeat so are not added to the table
+            writeString(annotation.getValue());
+        }
+        writeSamples(event.getCounterSamples());
+        writeSamples(event.getGaugeSamples());
+        writeSamples(event.getTimerSamples());
+    }
+
+    public byte[] getBuffer() {
+        return _buffer;
+    }
+
+    public int getSize() {
+        return _size;
+    }
+
+    private void writeSamples(final Map<String, List<Quantity>> samples) {
+        writeVarint(samples.size());
+        for (final Map.Entry<String, List<Quantity>> metric : samples.entrySet()) {
+            writeName(metric.getKey());
+            final List<Quantity> quantities = metric.getValue();
+            writeVarint(quantities.size());
+            Unit previous = null;
+            for (final Quantity quantity : quantities) {
+                final Number value = quantity.getValue();
+                final Unit unit = quantity.getUnit();
+                final boolean floating = !(value instanceof Long
+                        || value instanceof Integer
+                        || value instanceof Short
+                        || value instanceof Byte);
+                final boolean unitChanged = unit != previous;
+                writeByte((floating ? BinaryEventReader.FLOATING : 0) | (unitChanged ? BinaryEventReader.UNIT : 0));
+                if (floating) {
+                    writeLong(Double.doubleToRawLongBits(value.doubleValue()));
+                } else {
+                    final long number = value.longValue();
+                    writeVarint((number << 1) ^ (number >> 63));
+                }
+                if (unitChanged) {
+                    writeUnit(unit);
+                    previous = unit;
+                }
+            }
+        }
+    }
+
+    private void writeUnit(final Unit unit) {
+        final List<Unit> numerators;
+        final List<Unit> denominators;
+        if (unit instanceof CompoundUnit) {
+            numerators = ((CompoundUnit) unit).getNumeratorUnits();
+            denominators = ((CompoundUnit) unit).getDenominatorUnits();
+        } else if (unit != null) {
+            numerators = Collections.singletonList(unit);
+            denominators = Collections.emptyList();
+        } else {
+            numerators = Collections.emptyList();
+            denominators = Collections.emptyList();
+        }
+        writeVarint(numerators.size());
+        for (final Unit numerator : numerators) {
+            writeName(numerator.getName());
+        }
+        writeVarint(denominators.size());
+        for (final Unit denominator : denominators) {
+            writeName(denominator.getName());
+        }
+    }
+
+    private void writeName(final String name) {
+        final Integer id = _strings.get(name);
+        if (id != null) {
+            writeVarint((long) id << 1);
+        } else {
+            _strings.put(name, _strings.size());
+            writeString(name);
+        }
+    }
+
+    private void writeString(final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(((long) bytes.length << 1) | 1);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, _buffer, _size, bytes.length);
+        _size += bytes.length;
+    }
+
+    private void writeLong(final long value) {
+        ensureCapacity(Long.BYTES);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            _buffer[_size++] = (byte) (value >>> shift);
+        }
+    }
+
+    private void writeVarint(final long value) {
+        ensureCapacity(MAX_VARINT_BYTES);
+        long remaining = value;
+        while ((remaining & ~0x7FL) != 0) {
+            _buffer[_size++] = (byte) ((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        _buffer[_size++] = (byte) remaining;
+    }
+
+    private void writeByte(final int value) {
+        ensureCapacity(1);
+        _buffer[_size++] = (byte) value;
+    }
+
+    private void ensureCapacity(final int bytes) {
+        if (_size + bytes > _buffer.length) {
+            final byte[] buffer = new byte[Math.max(_buffer.length * 2, _size + bytes)];
+            System.arraycopy(_buffer, 0, buffer, 0, _size);
+            _buffer = buffer;
+        }
+    }
+
+    private final Map<String, Integer> _strings = new LinkedHashMap<>();
+    private byte[] _buffer = new byte[INITIAL_CAPACITY];
+    private int _size;
+
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final int MAX_VARINT_BYTES = 10;
+}
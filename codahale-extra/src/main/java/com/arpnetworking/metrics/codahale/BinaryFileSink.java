@@ -0,0 +1,234 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Sink;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+/**
+ * A sink writing the query log in a compact binary format to a rolling file.
+ * Each unit of work is a length prefixed record in which names are written in
+ * full only the first time they appear in the file and numbers are written as
+ * varints; see {@link BinaryEventReader} for the format and for converting the
+ * files back to the JSON query log format. Each record is written with a
+ * single system call. The file is rolled once it reaches the maximum size or
+ * the roll interval elapses; an active file left by a previous process is
+ * rolled when the first unit of work is recorded.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class BinaryFileSink implements Sink, Closeable {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void record(final Event event) {
+        if (_closed) {
+            return;
+        }
+        try {
+            final long now = System.currentTimeMillis();
+            if (_channel == null || _file.isDue(now) || _channel.position() >= _maxFileBytes) {
+                rollTo(now);
+            }
+            _writer.encode(event);
+            _length.clear();
+            int remaining = _writer.getSize();
+            while ((remaining & ~0x7F) != 0) {
+                _length.put((byte) ((remaining & 0x7F) | 0x80));
+                remaining >>>= 7;
+            }
+            _length.put((byte) remaining);
+            _length.flip();
+            final ByteBuffer[] buffers = {_length, ByteBuffer.wrap(_writer.getBuffer(), 0, _writer.getSize())};
+            while (buffers[1].hasRemaining()) {
+                _channel.write(buffers);
+            }
+        } catch (final IOException e) {
+            System.err.println(e);
+            e.printStackTrace();
+            abandon();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        if (_channel != null) {
+            _channel.close();
+            _channel = null;
+        }
+    }
+
+    // The unit may be partly written and its names already added to the string
+    // table, so the file is rolled on the next record and the table reset with it
+    private void abandon() {
+        if (_channel != null) {
+            try {
+                _channel.close();
+            } catch (final IOException e) {
+                System.err.println(e);
+                e.printStackTrace();
+            }
+            _channel = null;
+        }
+    }
+
+    private void rollTo(final long now) throws IOException {
+        if (_channel != null) {
+            _channel.close();
+            _channel = null;
+        }
+        _file.roll(now);
+        _channel = FileChannel.open(
+                _file.getActive(),
+                StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        _channel.write(ByteBuffer.wrap(BinaryEventReader.HEADER));
+        _writer.reset();
+    }
+
+    private BinaryFileSink(final Builder builder) {
+        if (builder._maxFileBytes < 1) {
+            throw new IllegalArgumentException("Files must be positive; maxFileBytes=" + builder._maxFileBytes);
+        }
+        _file = new RollingFile(
+                builder._directory,
+                builder._name,
+                builder._extension,
+                builder._rollInterval,
+                builder._maxHistory);
+        _maxFileBytes = builder._maxFileBytes;
+    }
+
+    private final RollingFile _file;
+    private final long _maxFileBytes;
+    private final BinaryEventWriter _writer = new BinaryEventWriter();
+    private final ByteBuffer _length = ByteBuffer.allocate(MAX_LENGTH_BYTES);
+    private FileChannel _channel;
+    private boolean _closed;
+
+    private static final int MAX_LENGTH_BYTES = 5;
+    private static final long DEFAULT_MAX_FILE_BYTES = 256L * 1024 * 1024;
+    private static final Duration DEFAULT_ROLL_INTERVAL = Duration.ofHours(1);
+    private static final int DEFAULT_MAX_HISTORY = 24;
+
+    /**
+     * Builder for {@link BinaryFileSink}.
+     *
+     * @author Brandon Arp (barp at groupon dot com)
+     */
+    public static final class Builder {
+        /**
+         * Create the sink. The file is opened, and any active file left by a
+         * previous process rolled, when the first unit of work is recorded.
+         *
+         * @return a new {@link BinaryFileSink}
+         */
+        public BinaryFileSink build() {
+            return new BinaryFileSink(this);
+        }
+
+        /**
+         * Set the directory to write the query log to. Optional; defaults to the
+         * system temporary directory.
+         *
+         * @param value the directory
+         * @return this builder
+         */
+        public Builder setDirectory(final File value) {
+            _directory = value;
+            return this;
+        }
+
+        /**
+         * Set the name of the query log file. Optional; defaults to query.
+         *
+         * @param value the name of the file without its extension
+         * @return this builder
+         */
+        public Builder setName(final String value) {
+            _name = value;
+            return this;
+        }
+
+        /**
+         * Set the extension of the query log file. Optional; defaults to .bin.
+         *
+         * @param value the extension of the file, including the dot
+         * @return this builder
+         */
+        public Builder setExtension(final String value) {
+            _extension = value;
+            return this;
+        }
+
+        /**
+         * Set the size at which the file is rolled. Optional; defaults to 256 MiB.
+         *
+         * @param value the maximum size of a file in bytes
+         * @return this builder
+         */
+        public Builder setMaxFileBytes(final long value) {
+            _maxFileBytes = value;
+            return this;
+        }
+
+        /**
+         * Set how often the file is rolled regardless of its size. Optional;
+         * defaults to one hour.
+         *
+         * @param value the roll interval
+         * @return this builder
+         */
+        public Builder setRollInterval(final Duration value) {
+            _rollInterval = value;
+            return this;
+        }
+
+        /**
+         * Set the number of rolled files to keep. Optional; defaults to 24.
+         *
+         * @param value the number of rolled files to keep
+         * @return this builder
+         */
+        public Builder setMaxHistory(final int value) {
+            _maxHistory = value;
+            return this;
+        }
+
+        private File _directory = new File(System.getProperty("java.io.tmpdir"));
+        private String _name = "query";
+        private String _extension = ".bin";
+        private long _maxFileBytes = DEFAULT_MAX_FILE_BYTES;
+        private Duration _rollInterval = DEFAULT_ROLL_INTERVAL;
+        private int _maxHistory = DEFAULT_MAX_HISTORY;
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of fixed size direct byte buffers holding samples off the heap.
+ * Released chunks are recycled up to a limit so that steady state recording
+ * neither allocates on the heap nor allocates direct memory; chunks released
+ * beyond the limit are left to be freed with their buffer.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class ChunkPool {
+    /**
+     * Public constructor. Creates 64 KiB chunks and pools up to 256 of them.
+     */
+    public ChunkPool() {
+        this(DEFAULT_CHUNK_BYTES, DEFAULT_MAX_POOLED);
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param chunkBytes the size of each chunk in bytes; a positive multiple of eight
+     * @param maxPooled the maximum number of released chunks to keep for reuse; not negative
+     */
+    public ChunkPool(final int chunkBytes, final int maxPooled) {
+        if (chunkBytes < Long.BYTES || chunkBytes % Long.BYTES != 0) {
+            throw new IllegalArgumentException("Chunk size must be a positive multiple of eight; chunkBytes=" + chunkBytes);
+        }
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException("Pooled chunks must not be negative; maxPooled=" + maxPooled);
+        }
+        _chunkBytes = chunkBytes;
+        _maxPooled = maxPooled;
+    }
+
+    /**
+     * Take an empty chunk from the pool, allocating one if the pool is empty.
+     *
+     * @return an empty chunk in native byte order
+     */
+    public ByteBuffer acquire() {
+        final ByteBuffer chunk = _pooled.poll();
+        if (chunk != null) {
+            _size.decrementAndGet();
+            return chunk;
+        }
+        return ByteBuffer.allocateDirect(_chunkBytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Return a chunk to the pool. The chunk must not be used afterwards.
+     *
+     * @param chunk the chunk to return
+     */
+    public void release(final ByteBuffer chunk) {
+        chunk.clear();
+        if (_size.incrementAndGet() <= _maxPooled) {
+            _pooled.add(chunk);
+        } else {
+            _size.decrementAndGet();
+        }
+    }
+
+    /**
+     * The number of chunks held for reuse.
+     *
+     * @return the number of pooled chunks
+     */
+    public int getPooled() {
+        return _size.get();
+    }
+
+    private final int _chunkBytes;
+    private final int _maxPooled;
+    private final Queue<ByteBuffer> _pooled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger _size = new AtomicInteger();
+
+    private static final int DEFAULT_CHUNK_BYTES = 64 * 1024;
+    private static final int DEFAULT_MAX_POOLED = 256;
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+/**
+ * Closes the periods of every registry in the process on a single thread. Each
+ * registered closer runs on the boundaries of its period, which are aligned to
+ * the epoch, so the closers of registries with the same period are run as one
+ * batch on a common boundary. Closers should only swap the open period here and
+ * hand anything which may block, such as gauges and sinks, to the pool of
+ * workers shared by every registry, which has a fixed number of threads however
+ * many registries there are. The order of each batch is rotated so that no
+ * registry is always closed last behind the others. The threads exit while idle.
+ *
+ * Closers are only weakly referenced, so a registry which is garbage collected
+ * without being closed is unregistered at its next boundary. A boundary which
+ * passes while the previous batch is still running is not run back to back;
+ * instead it is merged into the following boundary and counted as an overrun
+ * of the closer.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class CloserScheduler {
+    /**
+     * The scheduler shared by every registry in the process.
+     *
+     * @return the shared scheduler
+     */
+    public static CloserScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Run a closer on every boundary of a period until it is unregistered or
+     * garbage collected. The caller must hold a strong reference to the closer
+     * for as long as it should run.
+     *
+     * @param closer the closer to run
+     * @param periodMillis the period in milliseconds
+     * @param overruns notified of the number of boundaries merged into the next
+     * one after each run which overran
+     * @return the registration, to unregister the closer with
+     */
+    public Registration register(final Runnable closer, final long periodMillis, final LongConsumer overruns) {
+        if (periodMillis < 1) {
+            throw new IllegalArgumentException("Period must be at least one millisecond; periodMillis=" + periodMillis);
+        }
+        final Registration registration = new Registration(
+                closer,
+                periodMillis,
+                overruns,
+                nextBoundary(System.currentTimeMillis(), periodMillis));
+        synchronized (this) {
+            _registrations.add(registration);
+            scheduleNext();
+        }
+        return registration;
+    }
+
+    /**
+     * The pool shared by every registry for the work of closing a period which
+     * may block, such as evaluating gauges and writing the closed metrics. Each
+     * registry must limit how much of it it occupies at once.
+     *
+     * @return the shared workers
+     */
+    public Executor getWorkers() {
+        return _workers;
+    }
+
+    /**
+     * The executor of the closers, for scheduling short tasks such as the
+     * deadlines of the work handed to the workers. Must not be shut down.
+     *
+     * @return the executor of the closers
+     */
+    public ScheduledExecutorService getTimer() {
+        return _executor;
+    }
+
+    /**
+     * The number of closers currently registered, including any which have been
+     * garbage collected since they were last due.
+     *
+     * @return the number of registered closers
+     */
+    public synchronized int size() {
+        return _registrations.size();
+    }
+
+    static long nextBoundary(final long timeMillis, final long periodMillis) {
+        return (timeMillis / periodMillis + 1) * periodMillis;
+    }
+
+    CloserScheduler() {
+        _executor = new ScheduledThreadPoolExecutor(
+                1,
+                (r) -> {
+                    final Thread thread = new Thread(r, "metrics-closer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        _executor.setKeepAliveTime(THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+        _executor.allowCoreThreadTimeOut(true);
+        _executor.setRemoveOnCancelPolicy(true);
+        final AtomicInteger index = new AtomicInteger();
+        _workers = new ThreadPoolExecutor(
+                WORKER_THREADS,
+                WORKER_THREADS,
+                THREAD_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                (r) -> {
+                    final Thread thread = new Thread(r, "metrics-worker-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        _workers.allowCoreThreadTimeOut(true);
+    }
+
+    private void tick() {
+        final List<Registration> batch = new ArrayList<>();
+        synchronized (this) {
+            _scheduled = null;
+            final long now = System.currentTimeMillis();
+            final Iterator<Registration> iterator = _registrations.iterator();
+            while (iterator.hasNext()) {
+                final Registration registration = iterator.next();
+                if (registration._cancelled || registration._closer.get() == null) {
+                    iterator.remove();
+                } else if (registration._boundary <= now) {
+                    batch.add(registration);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            Collections.rotate(batch, _batches++);
+            for (final Registration registration : batch) {
+                registration.run();
+            }
+        }
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            for (final Registration registration : batch) {
+                registration.advance(now);
+            }
+            scheduleNext();
+        }
+    }
+
+    private void scheduleNext() {
+        long earliest = Long.MAX_VALUE;
+        for (final Registration registration : _registrations) {
+            earliest = Math.min(earliest, registration._boundary);
+        }
+        if (_scheduled != null) {
+            if (_scheduledBoundary <= earliest) {
+                return;
+            }
+            _scheduled.cancel(false);
+            _scheduled = null;
+        }
+        if (earliest != Long.MAX_VALUE) {
+            _scheduledBoundary = earliest;
+            _scheduled = _executor.schedule(
+                    this::tick,
+                    Math.max(0, earliest - System.currentTimeMillis()),
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private final ScheduledThreadPoolExecutor _executor;
+    private final ThreadPoolExecutor _workers;
+    private final List<Registration> _registrations = new ArrayList<>();
+    private ScheduledFuture<?> _scheduled;
+    private long _scheduledBoundary;
+    // Only modified by the closing thread
+    private int _batches;
+
+    // Declared before the instance, which is constructed with it
+    static final int WORKER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 60;
+    private static final CloserScheduler INSTANCE = new CloserScheduler();
+
+    /**
+     * The registration of a closer with the scheduler.
+     *
+     * @author Brandon Arp (barp at groupon dot com)
+     */
+    public static final class Registration {
+        /**
+         * Stop running the closer. A run which is in progress is completed.
+         */
+        public void cancel() {
+            _cancelled = true;
+        }
+
+        private Registration(
+                final Runnable closer,
+                final long periodMillis,
+                final LongConsumer overruns,
+                final long boundary) {
+            _closer = new WeakReference<>(closer);
+            _periodMillis = periodMillis;
+            _overruns = overruns;
+            _boundary = boundary;
+        }
+
+        private void run() {
+            final Runnable closer = _closer.get();
+            if (_cancelled || closer == null) {
+                return;
+            }
+            try {
+                closer.run();
+                //CHECKSTYLE.OFF: IllegalCatch - we need to catch everything
+            } catch (final Exception e) {
+                //CHECKSTYLE.ON: IllegalCatch
+                System.err.println(e);
+                e.printStackTrace();
+            }
+        }
+
+        private void advance(final long now) {
+            // The scheduled executor may fire marginally before the boundary by the wall clock
+            final long next = nextBoundary(Math.max(now, _boundary), _periodMillis);
+            final long overrun = (next - _boundary) / _periodMillis - 1;
+            if (overrun > 0) {
+                _overruns.accept(overrun);
+            }
+            _boundary = next;
+        }
+
+        private final WeakReference<Runnable> _closer;
+        private final long _periodMillis;
+        private final LongConsumer _overruns;
+        private volatile boolean _cancelled;
+        // Guarded by the scheduler
+        private long _boundary;
+    }
+}
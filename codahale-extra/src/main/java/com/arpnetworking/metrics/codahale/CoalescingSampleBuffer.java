@@ -0,0 +1,88 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * A sample buffer which keeps a single running sum. Each drain emits one sample
+ * holding the sum of the values recorded since the previous drain, provided
+ * any value was recorded. Recording only adds to a {@link LongAdder} so
+ * concurrent recording threads do not contend.
+ *
+ * The sum is never reset. Instead the drained total is remembered and each
+ * drain emits the difference so that values recorded concurrently with a drain
+ * are never lost; they are emitted by the next drain.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class CoalescingSampleBuffer implements SampleBuffer {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void record(final long value) {
+        _sum.add(value);
+        if (!_touched) {
+            _touched = true;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void record(final long[] values, final int offset, final int length) {
+        if (length == 0) {
+            return;
+        }
+        long sum = 0;
+        for (int i = offset; i < offset + length; ++i) {
+            sum += values[i];
+        }
+        record(sum);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drain(final LongConsumer consumer) {
+        // Clear the flag before reading the sum so a concurrent record is either
+        // included in this sum or flags the next drain
+        final boolean touched = _touched;
+        _touched = false;
+        final long sum = _sum.sum();
+        final long delta = sum - _drained;
+        _drained = sum;
+        if (touched || delta != 0) {
+            consumer.accept(delta);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return !_touched && _sum.sum() == _drained;
+    }
+
+    private final LongAdder _sum = new LongAdder();
+    private volatile boolean _touched;
+    private long _drained;
+}
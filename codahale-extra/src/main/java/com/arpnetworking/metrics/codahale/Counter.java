@@ -20,11 +20,12 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 /**
  * Represents a Counter that is wrapped to output ArpNetworking metrics. Each increment or decrement will result in a sample being recorded.
+ * The samples are either recorded directly to the open metrics or held in a buffer until drained into the outgoing metrics.
  *
  * @author Brandon Arp (barp at groupon dot com)
  */
 @SuppressFBWarnings("NM_SAME_SIMPLE_NAME_AS_SUPERCLASS")
-public class Counter extends com.codahale.metrics.Counter {
+public class Counter extends com.codahale.metrics.Counter implements Drainable {
     /**
      * Public constructor.
      *
@@ -32,8 +33,20 @@ public class Counter extends com.codahale.metrics.Counter {
      * @param lock lock for the metrics reference
      */
     public Counter(final String name, final SafeRefLock<Metrics> lock) {
+        this(name, lock, null);
+    }
+
+    /**
+     * Package private constructor with the options of the registry.
+     *
+     * @param name name of the metric
+     * @param lock lock for the metrics reference; only used without a buffer
+     * @param buffer buffer holding the samples until drained, or null to record to the open metrics
+     */
+    Counter(final String name, final SafeRefLock<Metrics> lock, final SampleBuffer buffer) {
         _name = name;
         _lock = lock;
+        _buffer = buffer;
     }
 
     /**
@@ -41,10 +54,15 @@ public class Counter extends com.codahale.metrics.Counter {
      */
     @Override
     public void dec(final long n) {
-        _lock.readLocked(metrics -> {
-                    metrics.resetCounter(_name);
-                    metrics.decrementCounter(_name, n);
-                });
+        touch();
+        if (_buffer != null) {
+            _buffer.record(-n);
+        } else {
+            _lock.readLocked(metrics -> {
+                        metrics.resetCounter(_name);
+                        metrics.decrementCounter(_name, n);
+                    });
+        }
         super.dec(n);
     }
 
@@ -53,13 +71,93 @@ public class Counter extends com.codahale.metrics.Counter {
      */
     @Override
     public void inc(final long n) {
-        _lock.readLocked(metrics -> {
-                    metrics.resetCounter(_name);
-                    metrics.incrementCounter(_name, n);
-                });
+        touch();
+        if (_buffer != null) {
+            _buffer.record(n);
+        } else {
+            _lock.readLocked(metrics -> {
+                        metrics.resetCounter(_name);
+                        metrics.incrementCounter(_name, n);
+                    });
+        }
         super.inc(n);
     }
 
+    /**
+     * Increment the counter by a batch of amounts, each recorded as its own sample. The batch is recorded with a single
+     * acquisition of the lock or the buffer and the Codahale count is incremented once by the total.
+     *
+     * @param values the array holding the amounts to increment by
+     * @param offset the index of the first amount
+     * @param length the number of amounts
+     */
+    public void inc(final long[] values, final int offset, final int length) {
+        if (offset < 0 || length < 0 || length > values.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (length == 0) {
+            return;
+        }
+        touch();
+        if (_buffer != null) {
+            _buffer.record(values, offset, length);
+        } else {
+            _lock.readLocked(metrics -> {
+                        for (int i = offset; i < offset + length; ++i) {
+                            metrics.resetCounter(_name);
+                            metrics.incrementCounter(_name, values[i]);
+                        }
+                    });
+        }
+        long sum = 0;
+        for (int i = offset; i < offset + length; ++i) {
+            sum += values[i];
+        }
+        super.inc(sum);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drainTo(final Metrics metrics) {
+        if (_buffer != null) {
+            _buffer.drain(value -> {
+                        metrics.resetCounter(_name);
+                        metrics.incrementCounter(_name, value);
+                    });
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return _buffer == null || _buffer.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean checkAndClearTouched() {
+        final boolean touched = _touched;
+        if (touched) {
+            _touched = false;
+        }
+        return touched;
+    }
+
+    private void touch() {
+        // Avoid writing the shared cache line on every sample
+        if (!_touched) {
+            _touched = true;
+        }
+    }
+
     private final SafeRefLock<Metrics> _lock;
+    private final SampleBuffer _buffer;
     private final String _name;
+    private volatile boolean _touched;
 }
@@ -0,0 +1,48 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Metrics;
+
+/**
+ * A metric which holds samples outside of the open metrics instance. The closer
+ * drains each of these into the outgoing metrics instance before closing it, and
+ * checks whether each has been recorded to in order to evict idle metrics.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public interface Drainable {
+    /**
+     * Record the samples held since the last drain into a metrics instance.
+     *
+     * @param metrics the metrics instance to record to
+     */
+    void drainTo(Metrics metrics);
+
+    /**
+     * Whether any samples are held.
+     *
+     * @return true if no samples are held
+     */
+    boolean isEmpty();
+
+    /**
+     * Whether any samples have been recorded since the last call.
+     *
+     * @return true if any samples have been recorded
+     */
+    boolean checkAndClearTouched();
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Metrics;
+import com.codahale.metrics.Gauge;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Samples gauges into a closing period on an executor instead of on the
+ * closing thread. The gauges of a period are evaluated by at most a fixed
+ * number of tasks on the executor, so that the executor can be shared with
+ * other registries, and sampling completes once every gauge is evaluated or
+ * the timeout after the period is closed elapses, whichever is first. Nothing
+ * waits for the gauges meanwhile. A gauge which misses its deadline, or whose
+ * value could not be read, is recorded with its last good value; a gauge which
+ * has never produced a numeric value is not recorded. A gauge still being
+ * evaluated from a previous period is not evaluated again, so a gauge that
+ * hangs occupies at most one worker of the executor.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class GaugeSampler {
+    /**
+     * Public constructor.
+     *
+     * @param executor the executor evaluating the gauges
+     * @param timer the executor scheduling the deadline of each period; only runs short tasks
+     * @param parallelism the most gauges evaluated at once
+     * @param timeout how long to wait for the gauges of each period
+     */
+    public GaugeSampler(
+            final Executor executor,
+            final ScheduledExecutorService timer,
+            final int parallelism,
+            final Duration timeout) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Gauge threads must be positive; threads=" + parallelism);
+        }
+        _executor = executor;
+        _timer = timer;
+        _parallelism = parallelism;
+        _timeoutNanos = timeout.toNanos();
+    }
+
+    /**
+     * Add a gauge to sample; replaces any gauge with the same name.
+     *
+     * @param name the name of the gauge
+     * @param gauge the gauge
+     */
+    public void add(final String name, final Gauge<?> gauge) {
+        _gauges.put(name, new Sample(name, gauge));
+    }
+
+    /**
+     * Stop sampling a gauge.
+     *
+     * @param name the name of the gauge
+     */
+    public void remove(final String name) {
+        _gauges.remove(name);
+    }
+
+    /**
+     * Whether there are no gauges to sample.
+     *
+     * @return true if there are no gauges
+     */
+    public boolean isEmpty() {
+        return _gauges.isEmpty();
+    }
+
+    /**
+     * Evaluate the gauges and record their values. The returned future completes
+     * once every gauge has been evaluated or the timeout has elapsed, whichever is
+     * first, and the values have been recorded. Must not be called concurrently.
+     *
+     * @param metrics the metrics of the closing period
+     * @return completes once the gauges are recorded
+     */
+    public CompletableFuture<Void> sampleTo(final Metrics metrics) {
+        final List<Sample> samples = new ArrayList<>(_gauges.values());
+        if (samples.isEmpty()) {
+            return CompletableFuture.allOf();
+        }
+        final Period period = new Period(++_period, samples);
+        int submitted = 0;
+        for (int i = 0; i < Math.min(_parallelism, samples.size()); ++i) {
+            try {
+                _executor.execute(period);
+                ++submitted;
+            } catch (final RejectedExecutionException e) {
+                // Evaluated by the tasks which were accepted, if any
+            }
+        }
+        if (submitted == 0) {
+            period._done.complete(false);
+        }
+        final ScheduledFuture<?> deadline = period._done.isDone()
+                ? null
+                : _timer.schedule(() -> period._done.complete(false), _timeoutNanos, TimeUnit.NANOSECONDS);
+        return period._done.thenRun(() -> {
+                    if (deadline != null) {
+                        deadline.cancel(false);
+                    }
+                    recordTo(metrics, samples, period._id);
+                });
+    }
+
+    /**
+     * The number of times a gauge was not evaluated within its deadline and its
+     * last good value, if any, was recorded instead.
+     *
+     * @return the number of overruns
+     */
+    public long getOverruns() {
+        return _overruns.sum();
+    }
+
+    /**
+     * The number of times evaluating a gauge threw. The last good value of the
+     * gauge, if any, was recorded instead.
+     *
+     * @return the number of gauge failures
+     */
+    public long getFailures() {
+        return _failures.sum();
+    }
+
+    private void recordTo(final Metrics metrics, final List<Sample> samples, final long period) {
+        for (final Sample sample : samples) {
+            if (sample._evaluatedPeriod != period) {
+                _overruns.increment();
+            }
+            if (sample._hasValue) {
+                metrics.setGauge(sample._name, sample._value);
+            }
+        }
+    }
+
+    private final Executor _executor;
+    private final ScheduledExecutorService _timer;
+    private final int _parallelism;
+    private final long _timeoutNanos;
+    private final ConcurrentMap<String, Sample> _gauges = new ConcurrentHashMap<>();
+    private final LongAdder _overruns = new LongAdder();
+    private final LongAdder _failures = new LongAdder();
+    // Only modified by the caller of sampleTo
+    private long _period;
+
+    // Evaluates the gauges of one period; run by each of its tasks on the executor until none are left
+    private static final class Period implements Runnable {
+        private Period(final long id, final List<Sample> samples) {
+            _id = id;
+            _pending = new ConcurrentLinkedQueue<>(samples);
+            _remaining = new AtomicInteger(samples.size());
+        }
+
+        @Override
+        public void run() {
+            Sample sample = _pending.poll();
+            // Gauges not started by the deadline are left for the next period
+            while (sample != null && !_done.isDone()) {
+                sample.evaluate(_id);
+                if (_remaining.decrementAndGet() == 0) {
+                    _done.complete(true);
+                }
+                sample = _pending.poll();
+            }
+        }
+
+        private final long _id;
+        private final Queue<Sample> _pending;
+        private final AtomicInteger _remaining;
+        // Completed with whether every gauge was evaluated by the deadline
+        private final CompletableFuture<Boolean> _done = new CompletableFuture<>();
+    }
+
+    private final class Sample {
+        private Sample(final String name, final Gauge<?> gauge) {
+            _name = name;
+            _gauge = gauge;
+        }
+
+        public void evaluate(final long period) {
+            if (!_evaluating.compareAndSet(false, true)) {
+                // Still stuck in a previous period
+                return;
+            }
+            try {
+                final Object value = _gauge.getValue();
+                if (value instanceof Number) {
+                    _value = ((Number) value).doubleValue();
+                    _hasValue = true;
+                }
+                //CHECKSTYLE.OFF: IllegalCatch - we need to catch everything
+            } catch (final Exception ex) {
+                //CHECKSTYLE.ON: IllegalCatch
+                _failures.increment();
+                System.err.println(ex);
+                ex.printStackTrace();
+            } finally {
+                _evaluatedPeriod = period;
+                _evaluating.set(false);
+            }
+        }
+
+        private final String _name;
+        private final Gauge<?> _gauge;
+        private final AtomicBoolean _evaluating = new AtomicBoolean();
+        private volatile double _value;
+        private volatile boolean _hasValue;
+        private volatile long _evaluatedPeriod;
+    }
+}
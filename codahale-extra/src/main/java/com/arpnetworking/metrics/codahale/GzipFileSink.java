@@ -0,0 +1,344 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Sink;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A sink compressing the query log as it is written to a rolling gzip file.
+ * Each file is a single gzip member which is completed when the file is rolled
+ * or the sink is closed, so every rolled file can be read with any gzip tool.
+ * By default each unit of work is sync flushed, which costs some compression
+ * but lets the active file, or one left by a process which did not close the
+ * sink, be decompressed up to its last complete unit of work. The deflater and
+ * the buffers are reused for every unit of work and every file. The file is
+ * rolled once its compressed size reaches the maximum or the roll interval
+ * elapses; an active file left by a previous process is rolled when the first
+ * unit of work is recorded.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class GzipFileSink implements Sink, Closeable {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void record(final Event event) {
+        if (_closed) {
+            return;
+        }
+        _text.setLength(0);
+        QueryLogJson.append(event, _text);
+        _text.append('\n');
+        try {
+            final long now = System.currentTimeMillis();
+            if (_channel == null || _file.isDue(now) || _written >= _maxFileBytes) {
+                rollTo(now);
+            }
+            encode(_text);
+            _crc.update(_bytes.array(), 0, _bytes.position());
+            _deflater.setInput(_bytes.array(), 0, _bytes.position());
+            deflate(_flushMode);
+        } catch (final IOException e) {
+            System.err.println(e);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        try {
+            finish();
+        } finally {
+            _deflater.end();
+        }
+    }
+
+    private void encode(final CharSequence text) {
+        final CharBuffer chars = CharBuffer.wrap(text);
+        _encoder.reset();
+        _bytes.clear();
+        while (_encoder.encode(chars, _bytes, true).isOverflow()) {
+            grow();
+        }
+        while (_encoder.flush(_bytes).isOverflow()) {
+            grow();
+        }
+    }
+
+    private void grow() {
+        final ByteBuffer bytes = ByteBuffer.allocate(_bytes.capacity() * 2);
+        _bytes.flip();
+        bytes.put(_bytes);
+        _bytes = bytes;
+    }
+
+    private void deflate(final int flushMode) throws IOException {
+        while (true) {
+            final int length = _deflater.deflate(_output.array(), 0, _output.capacity(), flushMode);
+            _output.clear();
+            _output.limit(length);
+            write(_output);
+            if (length < _output.capacity() && _deflater.needsInput()) {
+                return;
+            }
+        }
+    }
+
+    private void write(final ByteBuffer buffer) throws IOException {
+        _written += buffer.remaining();
+        while (buffer.hasRemaining()) {
+            _channel.write(buffer);
+        }
+    }
+
+    private void rollTo(final long now) throws IOException {
+        finish();
+        _file.roll(now);
+        _channel = FileChannel.open(
+                _file.getActive(),
+                StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        _written = 0;
+        write(ByteBuffer.wrap(HEADER));
+    }
+
+    private void finish() throws IOException {
+        if (_channel == null) {
+            return;
+        }
+        try {
+            _deflater.finish();
+            while (!_deflater.finished()) {
+                final int length = _deflater.deflate(_output.array(), 0, _output.capacity());
+                _output.clear();
+                _output.limit(length);
+                write(_output);
+            }
+            _trailer.clear();
+            _trailer.putInt((int) _crc.getValue());
+            _trailer.putInt((int) _deflater.getBytesRead());
+            _trailer.flip();
+            write(_trailer);
+        } finally {
+            _deflater.reset();
+            _crc.reset();
+            _channel.close();
+            _channel = null;
+        }
+    }
+
+    private GzipFileSink(final Builder builder) {
+        if (builder._maxFileBytes < 1
+                || builder._level < Deflater.DEFAULT_COMPRESSION
+                || builder._level > Deflater.BEST_COMPRESSION
+                || builder._bufferBytes < 1) {
+            throw new IllegalArgumentException(
+                    "Files and buffers must be positive and the level a deflater level; maxFileBytes="
+                            + builder._maxFileBytes + ", level=" + builder._level + ", bufferBytes=" + builder._bufferBytes);
+        }
+        _file = new RollingFile(
+                builder._directory,
+                builder._name,
+                builder._extension,
+                builder._rollInterval,
+                builder._maxHistory);
+        _maxFileBytes = builder._maxFileBytes;
+        _flushMode = builder._syncFlush ? Deflater.SYNC_FLUSH : Deflater.NO_FLUSH;
+        _deflater = new Deflater(builder._level, true);
+        _bytes = ByteBuffer.allocate(builder._bufferBytes);
+        _output = ByteBuffer.allocate(builder._bufferBytes);
+    }
+
+    private final RollingFile _file;
+    private final long _maxFileBytes;
+    private final int _flushMode;
+    private final Deflater _deflater;
+    private final CRC32 _crc = new CRC32();
+    private final StringBuilder _text = new StringBuilder();
+    private final CharsetEncoder _encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer _output;
+    private final ByteBuffer _trailer = ByteBuffer.allocate(TRAILER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private ByteBuffer _bytes;
+    private FileChannel _channel;
+    private long _written;
+    private boolean _closed;
+
+    // Magic, deflate, no flags, no modification time, no extra flags, unknown operating system
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int TRAILER_BYTES = 8;
+    private static final int DEFAULT_BUFFER_BYTES = 64 * 1024;
+    private static final long DEFAULT_MAX_FILE_BYTES = 64L * 1024 * 1024;
+    private static final Duration DEFAULT_ROLL_INTERVAL = Duration.ofHours(1);
+    private static final int DEFAULT_MAX_HISTORY = 24;
+
+    /**
+     * Builder for {@link GzipFileSink}.
+     *
+     * @author Brandon Arp (barp at groupon dot com)
+     */
+    public static final class Builder {
+        /**
+         * Create the sink. The file is opened, and any active file left by a
+         * previous process rolled, when the first unit of work is recorded.
+         *
+         * @return a new {@link GzipFileSink}
+         */
+        public GzipFileSink build() {
+            return new GzipFileSink(this);
+        }
+
+        /**
+         * Set the directory to write the query log to. Optional; defaults to the
+         * system temporary directory.
+         *
+         * @param value the directory
+         * @return this builder
+         */
+        public Builder setDirectory(final File value) {
+            _directory = value;
+            return this;
+        }
+
+        /**
+         * Set the name of the query log file. Optional; defaults to query.
+         *
+         * @param value the name of the file without its extension
+         * @return this builder
+         */
+        public Builder setName(final String value) {
+            _name = value;
+            return this;
+        }
+
+        /**
+         * Set the extension of the query log file. Optional; defaults to .log.gz.
+         *
+         * @param value the extension of the file, including the dot
+         * @return this builder
+         */
+        public Builder setExtension(final String value) {
+            _extension = value;
+            return this;
+        }
+
+        /**
+         * Set the compression level, from 0 for none to 9 for the best, or -1
+         * for the deflater's default. Optional; defaults to -1.
+         *
+         * @param value the compression level
+         * @return this builder
+         */
+        public Builder setLevel(final int value) {
+            _level = value;
+            return this;
+        }
+
+        /**
+         * Set whether each unit of work is sync flushed to the file. Optional;
+         * defaults to true.
+         *
+         * @param value whether to sync flush each unit of work
+         * @return this builder
+         */
+        public Builder setSyncFlush(final boolean value) {
+            _syncFlush = value;
+            return this;
+        }
+
+        /**
+         * Set the initial size of the buffer each unit of work is encoded to and
+         * the size of the buffer it is compressed to. Optional; defaults to 64 KiB.
+         *
+         * @param value the size of the buffers in bytes
+         * @return this builder
+         */
+        public Builder setBufferBytes(final int value) {
+            _bufferBytes = value;
+            return this;
+        }
+
+        /**
+         * Set the compressed size at which the file is rolled. Optional; defaults
+         * to 64 MiB.
+         *
+         * @param value the maximum size of a file in bytes
+         * @return this builder
+         */
+        public Builder setMaxFileBytes(final long value) {
+            _maxFileBytes = value;
+            return this;
+        }
+
+        /**
+         * Set how often the file is rolled regardless of its size. Optional;
+         * defaults to one hour.
+         *
+         * @param value the roll interval
+         * @return this builder
+         */
+        public Builder setRollInterval(final Duration value) {
+            _rollInterval = value;
+            return this;
+        }
+
+        /**
+         * Set the number of rolled files to keep. Optional; defaults to 24.
+         *
+         * @param value the number of rolled files to keep
+         * @return this builder
+         */
+        public Builder setMaxHistory(final int value) {
+            _maxHistory = value;
+            return this;
+        }
+
+        private File _directory = new File(System.getProperty("java.io.tmpdir"));
+        private String _name = "query";
+        private String _extension = ".log.gz";
+        private int _level = Deflater.DEFAULT_COMPRESSION;
+        private boolean _syncFlush = true;
+        private int _bufferBytes = DEFAULT_BUFFER_BYTES;
+        private long _maxFileBytes = DEFAULT_MAX_FILE_BYTES;
+        private Duration _rollInterval = DEFAULT_ROLL_INTERVAL;
+        private int _maxHistory = DEFAULT_MAX_HISTORY;
+    }
+}
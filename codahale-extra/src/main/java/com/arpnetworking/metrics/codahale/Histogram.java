@@ -21,11 +21,15 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 /**
  * Represents a Histogram that is wrapped to output ArpNetworking metrics. Each update will result in a counter sample being created.
+ * The samples are either recorded directly to the open metrics or held in a buffer until drained into the outgoing metrics.
+ *
+ * A histogram with a {@link Sampler} only records the kept samples to the metrics and the reservoir. Its count stays exact
+ * and the number of updates in each period is recorded as the counter of the name suffixed with {@code .count}.
  *
  * @author Brandon Arp (barp at groupon dot com)
  */
 @SuppressFBWarnings("NM_SAME_SIMPLE_NAME_AS_SUPERCLASS")
-public class Histogram extends com.codahale.metrics.Histogram {
+public class Histogram extends com.codahale.metrics.Histogram implements Drainable {
     /**
      * Creates a new {@link Histogram} with the given reservoir.
      *
@@ -34,9 +38,31 @@ public class Histogram extends com.codahale.metrics.Histogram {
      * @param reservoir the reservoir to create a histogram from
      */
     public Histogram(final String name, final SafeRefLock<Metrics> lock, final Reservoir reservoir) {
+        this(name, lock, null, reservoir, null);
+    }
+
+    /**
+     * Package private constructor with the options of the registry.
+     *
+     * @param name name of the metric
+     * @param lock lock for the metrics reference; only used without a buffer
+     * @param buffer buffer holding the samples until drained, or null to record to the open metrics
+     * @param reservoir the reservoir to create a histogram from
+     * @param sampler thins the recorded samples, or null to record every sample
+     */
+    Histogram(
+            final String name,
+            final SafeRefLock<Metrics> lock,
+            final SampleBuffer buffer,
+            final Reservoir reservoir,
+            final Sampler sampler) {
         super(reservoir);
         _name = name;
         _lock = lock;
+        _buffer = buffer;
+        _sampler = sampler;
+        _countName = sampler != null ? name + ".count" : null;
+        _rateName = sampler != null ? name + ".sample_rate" : null;
     }
 
     /**
@@ -44,13 +70,122 @@ public class Histogram extends com.codahale.metrics.Histogram {
      */
     @Override
     public void update(final long value) {
-        _lock.readLocked(metrics -> {
-                    metrics.resetCounter(_name);
-                    metrics.incrementCounter(_name, value);
-                });
+        touch();
+        if (_sampler != null && !_sampler.sample()) {
+            return;
+        }
+        if (_buffer != null) {
+            _buffer.record(value);
+        } else {
+            _lock.readLocked(metrics -> {
+                        metrics.resetCounter(_name);
+                        metrics.incrementCounter(_name, value);
+                    });
+        }
         super.update(value);
     }
 
+    /**
+     * Update the histogram with a batch of values. The batch is recorded with a single acquisition of the lock or the
+     * buffer. A sampled histogram samples each value as if updated individually.
+     *
+     * @param values the array holding the values
+     * @param offset the index of the first value
+     * @param length the number of values
+     */
+    public void update(final long[] values, final int offset, final int length) {
+        if (offset < 0 || length < 0 || length > values.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (length == 0) {
+            return;
+        }
+        if (_sampler != null) {
+            for (int i = offset; i < offset + length; ++i) {
+                update(values[i]);
+            }
+            return;
+        }
+        touch();
+        if (_buffer != null) {
+            _buffer.record(values, offset, length);
+        } else {
+            _lock.readLocked(metrics -> {
+                        for (int i = offset; i < offset + length; ++i) {
+                            metrics.resetCounter(_name);
+                            metrics.incrementCounter(_name, values[i]);
+                        }
+                    });
+        }
+        for (int i = offset; i < offset + length; ++i) {
+            super.update(values[i]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCount() {
+        if (_sampler != null) {
+            return _sampler.getCount();
+        }
+        return super.getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drainTo(final Metrics metrics) {
+        if (_buffer != null) {
+            _buffer.drain(value -> {
+                        metrics.resetCounter(_name);
+                        metrics.incrementCounter(_name, value);
+                    });
+        }
+        if (_sampler != null) {
+            final long updates = _sampler.drainCount();
+            if (updates > 0) {
+                metrics.incrementCounter(_countName, updates);
+                // The samples are thinned, so sums of them must be divided by the rate
+                metrics.setGauge(_rateName, _sampler.getRate());
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return (_buffer == null || _buffer.isEmpty()) && (_sampler == null || _sampler.isEmpty());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean checkAndClearTouched() {
+        final boolean touched = _touched;
+        if (touched) {
+            _touched = false;
+        }
+        return touched;
+    }
+
+    private void touch() {
+        // Avoid writing the shared cache line on every sample
+        if (!_touched) {
+            _touched = true;
+        }
+    }
+
     private final String _name;
     private final SafeRefLock<Metrics> _lock;
+    private final SampleBuffer _buffer;
+    private final Sampler _sampler;
+    private final String _countName;
+    private final String _rateName;
+    private volatile boolean _touched;
 }
@@ -0,0 +1,76 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import java.util.function.LongConsumer;
+
+/**
+ * A sample buffer holding the samples of one metric in a {@link SampleTable}
+ * under the id assigned to the metric.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class IndexedSampleBuffer implements SampleBuffer {
+    /**
+     * Public constructor.
+     *
+     * @param table the table holding the samples
+     * @param id the id of the metric in the table
+     */
+    public IndexedSampleBuffer(final SampleTable table, final int id) {
+        _table = table;
+        _id = id;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void record(final long value) {
+        _table.record(_id, value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void record(final long[] values, final int offset, final int length) {
+        _table.record(_id, values, offset, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drain(final LongConsumer consumer) {
+        _table.drain(_id, consumer);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return _table.isEmpty(_id);
+    }
+
+    public int getId() {
+        return _id;
+    }
+
+    private final SampleTable _table;
+    private final int _id;
+}
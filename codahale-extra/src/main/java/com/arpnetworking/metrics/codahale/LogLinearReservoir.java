@@ -0,0 +1,292 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * A reservoir which counts values in log-linear buckets, in the manner of an
+ * HDR histogram. Values are divided into buckets covering successive powers of
+ * two, each of which is split into linear sub-buckets, such that every value is
+ * counted in a sub-bucket no wider than its configured number of significant
+ * decimal digits allows. The counts are held in a fixed array of primitives and
+ * are incremented atomically, so updates take no lock, do not allocate and
+ * only contend when they fall into the same sub-bucket. The memory used is
+ * constant regardless of the number of values recorded.
+ *
+ * Unlike {@link com.codahale.metrics.ExponentiallyDecayingReservoir} the counts
+ * are not biased towards recent values; the snapshot covers every value since
+ * the reservoir was created. Values are reported as the midpoint of their
+ * sub-bucket, except for the minimum and maximum which are exact. Negative
+ * values are counted, and reported in the minimum, as zero and values above the
+ * highest trackable value are counted, and reported in the maximum, as the
+ * highest trackable value.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class LogLinearReservoir implements Reservoir {
+    /**
+     * Public constructor. Tracks values with two significant digits up to an
+     * hour in nanoseconds.
+     */
+    public LogLinearReservoir() {
+        this(DEFAULT_SIGNIFICANT_DIGITS);
+    }
+
+    /**
+     * Public constructor. Tracks values up to an hour in nanoseconds.
+     *
+     * @param significantDigits the number of significant decimal digits to preserve; between 1 and 5
+     */
+    public LogLinearReservoir(final int significantDigits) {
+        this(significantDigits, DEFAULT_HIGHEST_TRACKABLE_VALUE);
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param significantDigits the number of significant decimal digits to preserve; between 1 and 5
+     * @param highestTrackableValue the highest value counted in its own sub-bucket
+     */
+    public LogLinearReservoir(final int significantDigits, final long highestTrackableValue) {
+        if (significantDigits < 1 || significantDigits > MAX_SIGNIFICANT_DIGITS) {
+            throw new IllegalArgumentException("Significant digits must be between 1 and 5; significantDigits=" + significantDigits);
+        }
+        if (highestTrackableValue < 1) {
+            throw new IllegalArgumentException("Highest trackable value must be positive; highestTrackableValue=" + highestTrackableValue);
+        }
+        long largestValueWithSingleUnitResolution = 2;
+        for (int i = 0; i < significantDigits; ++i) {
+            largestValueWithSingleUnitResolution *= 10;
+        }
+        final int subBucketCountMagnitude = Long.SIZE - Long.numberOfLeadingZeros(largestValueWithSingleUnitResolution - 1);
+        _subBucketHalfCountMagnitude = subBucketCountMagnitude - 1;
+        _subBucketHalfCount = 1 << _subBucketHalfCountMagnitude;
+        _subBucketMask = (1L << subBucketCountMagnitude) - 1;
+        _highestTrackableValue = highestTrackableValue;
+        _counts = new AtomicLongArray((bucketCount(subBucketCountMagnitude, highestTrackableValue) + 1) << _subBucketHalfCountMagnitude);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, total());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void update(final long value) {
+        final long clamped = Math.max(0, Math.min(value, _highestTrackableValue));
+        // Before the count so that a snapshot seeing the count also sees the extrema
+        _min.accumulate(clamped);
+        _max.accumulate(clamped);
+        _counts.incrementAndGet(index(clamped));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Snapshot getSnapshot() {
+        final long[] counts = new long[_counts.length()];
+        int buckets = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            counts[i] = _counts.get(i);
+            if (counts[i] != 0) {
+                ++buckets;
+            }
+        }
+        // Read after the counts so that they cover every counted value
+        final long min = _min.get();
+        final long max = _max.get();
+        final long[] values = new long[buckets];
+        final long[] valueCounts = new long[buckets];
+        int bucket = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            if (counts[i] != 0) {
+                values[bucket] = Math.max(min, Math.min(max, medianEquivalentValue(i)));
+                valueCounts[bucket] = counts[i];
+                ++bucket;
+            }
+        }
+        return new BucketSnapshot(values, valueCounts, min, max);
+    }
+
+    int index(final long value) {
+        final int bucketIndex = LEADING_ZERO_COUNT_BASE - _subBucketHalfCountMagnitude - Long.numberOfLeadingZeros(value | _subBucketMask);
+        final int subBucketIndex = (int) (value >>> bucketIndex);
+        return ((bucketIndex + 1) << _subBucketHalfCountMagnitude) + (subBucketIndex - _subBucketHalfCount);
+    }
+
+    long medianEquivalentValue(final int index) {
+        int bucketIndex = (index >> _subBucketHalfCountMagnitude) - 1;
+        int subBucketIndex = (index & (_subBucketHalfCount - 1)) + _subBucketHalfCount;
+        if (bucketIndex < 0) {
+            subBucketIndex -= _subBucketHalfCount;
+            bucketIndex = 0;
+        }
+        return ((long) subBucketIndex << bucketIndex) + ((1L << bucketIndex) >> 1);
+    }
+
+    int length() {
+        return _counts.length();
+    }
+
+    private long total() {
+        long total = 0;
+        for (int i = 0; i < _counts.length(); ++i) {
+            total += _counts.get(i);
+        }
+        return total;
+    }
+
+    private static int bucketCount(final int subBucketCountMagnitude, final long highestTrackableValue) {
+        long smallestUntrackableValue = 1L << subBucketCountMagnitude;
+        int buckets = 1;
+        while (smallestUntrackableValue <= highestTrackableValue) {
+            if (smallestUntrackableValue > Long.MAX_VALUE / 2) {
+                return buckets + 1;
+            }
+            smallestUntrackableValue <<= 1;
+            ++buckets;
+        }
+        return buckets;
+    }
+
+    private final int _subBucketHalfCountMagnitude;
+    private final int _subBucketHalfCount;
+    private final long _subBucketMask;
+    private final long _highestTrackableValue;
+    private final AtomicLongArray _counts;
+    private final LongAccumulator _min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator _max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    private static final int DEFAULT_SIGNIFICANT_DIGITS = 2;
+    private static final int MAX_SIGNIFICANT_DIGITS = 5;
+    private static final long DEFAULT_HIGHEST_TRACKABLE_VALUE = TimeUnit.HOURS.toNanos(1);
+    private static final int LEADING_ZERO_COUNT_BASE = Long.SIZE - 1;
+
+    /**
+     * A snapshot of the counts of a {@link LogLinearReservoir}. Holds the
+     * representative value and count of each non-empty sub-bucket in ascending
+     * order. Since the individual values are not retained, {@link #getValues()}
+     * and {@link #dump(OutputStream)} provide each distinct representative value
+     * once.
+     */
+    private static final class BucketSnapshot extends Snapshot {
+        private BucketSnapshot(final long[] values, final long[] counts, final long min, final long max) {
+            _values = values;
+            _counts = counts;
+            long total = 0;
+            double sum = 0;
+            for (int i = 0; i < values.length; ++i) {
+                total += counts[i];
+                sum += (double) values[i] * counts[i];
+            }
+            _total = total;
+            _min = total == 0 ? 0 : min;
+            _max = total == 0 ? 0 : max;
+            _mean = total == 0 ? 0 : sum / total;
+        }
+
+        @Override
+        public double getValue(final double quantile) {
+            if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+                throw new IllegalArgumentException(quantile + " is not in [0..1]");
+            }
+            if (_total == 0) {
+                return 0.0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(quantile * _total));
+            long cumulative = 0;
+            for (int i = 0; i < _values.length - 1; ++i) {
+                cumulative += _counts[i];
+                if (cumulative >= rank) {
+                    return _values[i];
+                }
+            }
+            return _values[_values.length - 1];
+        }
+
+        @Override
+        public long[] getValues() {
+            return Arrays.copyOf(_values, _values.length);
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(Integer.MAX_VALUE, _total);
+        }
+
+        @Override
+        public long getMax() {
+            return _max;
+        }
+
+        @Override
+        public double getMean() {
+            return _mean;
+        }
+
+        @Override
+        public long getMin() {
+            return _min;
+        }
+
+        @Override
+        public double getStdDev() {
+            if (_total <= 1) {
+                return 0;
+            }
+            double sum = 0;
+            for (int i = 0; i < _values.length; ++i) {
+                final double difference = _values[i] - _mean;
+                sum += difference * difference * _counts[i];
+            }
+            return Math.sqrt(sum / (_total - 1));
+        }
+
+        @Override
+        public void dump(final OutputStream output) {
+            try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+                for (final long value : _values) {
+                    writer.printf("%d%n", value);
+                }
+            }
+        }
+
+        private final long[] _values;
+        private final long[] _counts;
+        private final long _total;
+        private final long _min;
+        private final long _max;
+        private final double _mean;
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Sink;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+/**
+ * A sink writing the JSON query log into memory mapped segments of a
+ * rolling file. Each unit of work is encoded straight into the mapped segment,
+ * so recording needs neither a write system call nor a copy through a stream
+ * buffer; a new segment is mapped, extending the file, when the current one is
+ * full. The file is rolled once it reaches the maximum size or the roll
+ * interval elapses, and the unused tail of the last segment is truncated when
+ * the file is rolled or the sink is closed.
+ *
+ * Until then the file is padded with zeros up to the end of the mapped
+ * segment. An active file left padded by a process which did not close the
+ * sink is rolled when the sink is next created.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class MappedFileSink implements Sink, Closeable {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void record(final Event event) {
+        if (_closed) {
+            return;
+        }
+        _text.setLength(0);
+        QueryLogJson.append(event, _text);
+        _text.append('\n');
+        try {
+            final long now = System.currentTimeMillis();
+            if (_channel == null || _file.isDue(now) || size() >= _maxFileBytes) {
+                rollTo(now);
+            }
+            write(_text);
+        } catch (final IOException e) {
+            System.err.println(e);
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        finish();
+    }
+
+    private void write(final CharSequence text) throws IOException {
+        final CharBuffer chars = CharBuffer.wrap(text);
+        _encoder.reset();
+        while (_encoder.encode(chars, _segment, true).isOverflow()) {
+            mapNext();
+        }
+        while (_encoder.flush(_segment).isOverflow()) {
+            mapNext();
+        }
+    }
+
+    private void rollTo(final long now) throws IOException {
+        finish();
+        _file.roll(now);
+        _channel = FileChannel.open(
+                _file.getActive(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        _segmentStart = 0;
+        _segment = _channel.map(FileChannel.MapMode.READ_WRITE, 0, _segmentBytes);
+    }
+
+    private void mapNext() throws IOException {
+        _segmentStart += _segment.position();
+        _segment = _channel.map(FileChannel.MapMode.READ_WRITE, _segmentStart, _segmentBytes);
+    }
+
+    private void finish() throws IOException {
+        if (_channel == null) {
+            return;
+        }
+        try {
+            _channel.truncate(size());
+        } finally {
+            _channel.close();
+            _channel = null;
+            _segment = null;
+        }
+    }
+
+    private long size() {
+        return _segmentStart + _segment.position();
+    }
+
+    private MappedFileSink(final Builder builder) {
+        if (builder._segmentBytes < MIN_SEGMENT_BYTES || builder._maxFileBytes < 1) {
+            throw new IllegalArgumentException(
+                    "Segments must be at least " + MIN_SEGMENT_BYTES + " bytes and files positive; segmentBytes="
+                            + builder._segmentBytes + ", maxFileBytes=" + builder._maxFileBytes);
+        }
+        _file = new RollingFile(
+                builder._directory,
+                builder._name,
+                builder._extension,
+                builder._rollInterval,
+                builder._maxHistory);
+        _segmentBytes = builder._segmentBytes;
+        _maxFileBytes = builder._maxFileBytes;
+    }
+
+    private final RollingFile _file;
+    private final int _segmentBytes;
+    private final long _maxFileBytes;
+    private final StringBuilder _text = new StringBuilder();
+    private final CharsetEncoder _encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private FileChannel _channel;
+    private MappedByteBuffer _segment;
+    private long _segmentStart;
+    private boolean _closed;
+
+    private static final int MIN_SEGMENT_BYTES = 4096;
+    private static final int DEFAULT_SEGMENT_BYTES = 8 * 1024 * 1024;
+    private static final long DEFAULT_MAX_FILE_BYTES = 256L * 1024 * 1024;
+    private static final Duration DEFAULT_ROLL_INTERVAL = Duration.ofHours(1);
+    private static final int DEFAULT_MAX_HISTORY = 24;
+
+    /**
+     * Builder for {@link MappedFileSink}.
+     *
+     * @author Brandon Arp (barp at groupon dot com)
+     */
+    public static final class Builder {
+        /**
+         * Create the sink. The file is opened, and any active file left by a
+         * previous process rolled, when the first unit of work is recorded.
+         *
+         * @return a new {@link MappedFileSink}
+         */
+        public MappedFileSink build() {
+            return new MappedFileSink(this);
+        }
+
+        /**
+         * Set the directory to write the query log to. Optional; defaults to the
+         * system temporary directory.
+         *
+         * @param value the directory
+         * @return this builder
+         */
+        public Builder setDirectory(final File value) {
+            _directory = value;
+            return this;
+        }
+
+        /**
+         * Set the name of the query log file. Optional; defaults to query.
+         *
+         * @param value the name of the file without its extension
+         * @return this builder
+         */
+        public Builder setName(final String value) {
+            _name = value;
+            return this;
+        }
+
+        /**
+         * Set the extension of the query log file. Optional; defaults to .log.
+         *
+         * @param value the extension of the file, including the dot
+         * @return this builder
+         */
+        public Builder setExtension(final String value) {
+            _extension = value;
+            return this;
+        }
+
+        /**
+         * Set the size of each mapped segment. Larger segments map the file less
+         * often but pad it further. Optional; defaults to 8 MiB.
+         *
+         * @param value the size of a segment in bytes; at least 4096
+         * @return this builder
+         */
+        public Builder setSegmentBytes(final int value) {
+            _segmentBytes = value;
+            return this;
+        }
+
+        /**
+         * Set the size at which the file is rolled. Optional; defaults to 256 MiB.
+         *
+         * @param value the maximum size of a file in bytes
+         * @return this builder
+         */
+        public Builder setMaxFileBytes(final long value) {
+            _maxFileBytes = value;
+            return this;
+        }
+
+        /**
+         * Set how often the file is rolled regardless of its size. Optional;
+         * defaults to one hour.
+         *
+         * @param value the roll interval
+         * @return this builder
+         */
+        public Builder setRollInterval(final Duration value) {
+            _rollInterval = value;
+            return this;
+        }
+
+        /**
+         * Set the number of rolled files to keep. Optional; defaults to 24.
+         *
+         * @param value the number of rolled files to keep
+         * @return this builder
+         */
+        public Builder setMaxHistory(final int value) {
+            _maxHistory = value;
+            return this;
+        }
+
+        private File _directory = new File(System.getProperty("java.io.tmpdir"));
+        private String _name = "query";
+        private String _extension = ".log";
+        private int _segmentBytes = DEFAULT_SEGMENT_BYTES;
+        private long _maxFileBytes = DEFAULT_MAX_FILE_BYTES;
+        private Duration _rollInterval = DEFAULT_ROLL_INTERVAL;
+        private int _maxHistory = DEFAULT_MAX_HISTORY;
+    }
+}
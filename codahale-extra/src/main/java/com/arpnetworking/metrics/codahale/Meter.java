@@ -18,13 +18,16 @@ package com.arpnetworking.metrics.codahale;
 import com.arpnetworking.metrics.Metrics;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Represents a Meter that is wrapped to output ArpNetworking Metrics.  Each call to mark will result in a counter sample being created.
+ * The samples are either recorded directly to the open metrics or held in a buffer until drained into the outgoing metrics.
  *
  * @author Brandon Arp (barp at groupon dot com)
  */
 @SuppressFBWarnings("NM_SAME_SIMPLE_NAME_AS_SUPERCLASS")
-public class Meter extends com.codahale.metrics.Meter {
+public class Meter extends com.codahale.metrics.Meter implements Drainable {
     /**
      * Public constructor.
      *
@@ -32,8 +35,23 @@ public class Meter extends com.codahale.metrics.Meter {
      * @param lock lock for the metrics reference
      */
     public Meter(final String name, final SafeRefLock<Metrics> lock) {
+        this(name, lock, null, false);
+    }
+
+    /**
+     * Package private constructor with the options of the registry.
+     *
+     * @param name name of the metric
+     * @param lock lock for the metrics reference; only used without a buffer
+     * @param buffer buffer holding the samples until drained, or null to record to the open metrics
+     * @param tsdOnly whether to skip the Codahale moving average rates; the count and mean rate remain accurate but the moving
+     * average rates are always zero
+     */
+    Meter(final String name, final SafeRefLock<Metrics> lock, final SampleBuffer buffer, final boolean tsdOnly) {
         _name = name;
         _lock = lock;
+        _buffer = buffer;
+        _count = tsdOnly ? new LongAdder() : null;
     }
 
     /**
@@ -41,15 +59,77 @@ public class Meter extends com.codahale.metrics.Meter {
      */
     @Override
     public void mark(final long n) {
-        super.mark(n);
-        _lock.readLocked(
-                (metrics) -> {
-                    metrics.resetCounter(_name);
-                    metrics.incrementCounter(_name, n);
-                });
+        touch();
+        if (_count != null) {
+            _count.add(n);
+        } else {
+            super.mark(n);
+        }
+        if (_buffer != null) {
+            _buffer.record(n);
+        } else {
+            _lock.readLocked(
+                    (metrics) -> {
+                        metrics.resetCounter(_name);
+                        metrics.incrementCounter(_name, n);
+                    });
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCount() {
+        if (_count != null) {
+            return _count.sum();
+        }
+        return super.getCount();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drainTo(final Metrics metrics) {
+        if (_buffer != null) {
+            _buffer.drain(value -> {
+                        metrics.resetCounter(_name);
+                        metrics.incrementCounter(_name, value);
+                    });
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return _buffer == null || _buffer.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean checkAndClearTouched() {
+        final boolean touched = _touched;
+        if (touched) {
+            _touched = false;
+        }
+        return touched;
     }
 
+    private void touch() {
+        // Avoid writing the shared cache line on every sample
+        if (!_touched) {
+            _touched = true;
+        }
+    }
 
     private final String _name;
     private final SafeRefLock<Metrics> _lock;
+    private final SampleBuffer _buffer;
+    private final LongAdder _count;
+    private volatile boolean _touched;
 }
@@ -17,26 +17,42 @@ package com.arpnetworking.metrics.codahale;
 
 import com.arpnetworking.metrics.Metrics;
 import com.arpnetworking.metrics.MetricsFactory;
-import com.arpnetworking.metrics.impl.TsdLogSink;
-import com.arpnetworking.metrics.impl.TsdMetricsFactory;
+import com.arpnetworking.metrics.Sink;
 import com.codahale.metrics.Clock;
 import com.codahale.metrics.ExponentiallyDecayingReservoir;
 import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricRegistryListener;
+import com.codahale.metrics.Reservoir;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
-import java.io.File;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.SortedMap;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
 
 /**
  * The replacement class for the MetricRegistry.  In the case of using the shaded library
@@ -47,23 +63,13 @@ import java.util.function.Function;
  * @author Brandon Arp (barp at groupon dot com)
  */
 @SuppressFBWarnings("NM_SAME_SIMPLE_NAME_AS_SUPERCLASS")
-public class MetricRegistry extends com.codahale.metrics.MetricRegistry {
+public class MetricRegistry extends com.codahale.metrics.MetricRegistry implements Closeable {
 
     /**
      * Public constructor.
      */
     public MetricRegistry() {
-        // TODO(barp): Read the settings from a config file [#2]
-        this(
-                new TsdMetricsFactory.Builder()
-                        .setClusterName(System.getProperty("METRICS_CODAHALE_EXTRA_CLUSTER", "CodahaleCluster"))
-                        .setServiceName(System.getProperty("METRICS_CODAHALE_EXTRA_SERVICE", "CodahaleService"))
-                        .setSinks(Collections.singletonList(
-                                new TsdLogSink.Builder()
-                                        .setDirectory(
-                                                new File(System.getProperty("METRICS_CODAHALE_EXTRA_DIRECTORY", "/tmp")))
-                                        .build()))
-                        .build());
+        this(new Builder());
     }
 
     /**
@@ -72,19 +78,58 @@ public class MetricRegistry extends com.codahale.metrics.MetricRegistry {
      * @param metricsFactory The metrics factory to use to create metrics.
      */
     public MetricRegistry(final MetricsFactory metricsFactory) {
-        _metricsFactory = metricsFactory;
-        _openMetrics.set(_metricsFactory.create());
-        _closingExecutor = Executors.newSingleThreadScheduledExecutor(
-                (r) -> {
-                    final Thread thread = new Thread(r, "metrics-closer");
-                    thread.setDaemon(true);
-                    return thread;
-                });
-        _closingExecutor.scheduleAtFixedRate(
-                new Closer(_lock, _metricsFactory, _openMetrics, this),
-                CLOSER_PERIOD,
-                CLOSER_PERIOD,
-                TimeUnit.MILLISECONDS);
+        this(new Builder().setMetricsFactory(metricsFactory));
+    }
+
+    /**
+     * Protected constructor.
+     *
+     * @param builder the builder to create the registry from
+     */
+    protected MetricRegistry(final Builder builder) {
+        _periodMillis = builder._period != null
+                ? builder._period.toMillis()
+                : Long.parseLong(System.getProperty("METRICS_CODAHALE_EXTRA_PERIOD", DEFAULT_PERIOD_MILLIS));
+        if (_periodMillis < 1) {
+            throw new IllegalArgumentException("Period must be at least one millisecond; periodMillis=" + _periodMillis);
+        }
+        final List<Sink> sinks = new ArrayList<>(builder._sinks);
+        _metricsFactory = builder._metricsFactory != null ? builder._metricsFactory : createDefaultMetricsFactory(sinks);
+        _sinks = sinks;
+        _instrumentation = builder._instrumented ? createInstrumentation() : null;
+        final MetricsFactory factory = _instrumentation != null ? _instrumentation.wrap(_metricsFactory) : _metricsFactory;
+        _closeTimeout = builder._closeTimeout;
+        if (_closeTimeout.isNegative() || _closeTimeout.isZero()) {
+            throw new IllegalArgumentException("Close timeout must be positive; closeTimeout=" + _closeTimeout);
+        }
+        _lock = new SafeRefLock<>(
+                _openMetrics,
+                builder._lock != null ? builder._lock : new ReentrantReadWriteLock(false),
+                _instrumentation != null ? _instrumentation::recordReadWait : null);
+        _recordingMode = builder._recordingMode;
+        _coalesced = builder._coalesced;
+        _offHeap = builder._offHeap;
+        _sampleRate = builder._sampleRate;
+        _tsdOnly = builder._tsdOnly;
+        _reservoirFactory = builder._reservoirFactory;
+        _evictionPeriods = builder._evictionPeriods;
+        _maxMetrics = builder._maxMetrics;
+        _maxNewMetricsPerPeriod = builder._maxNewMetricsPerPeriod;
+        if (_maxMetrics < 1 || _maxNewMetricsPerPeriod < 1) {
+            throw new IllegalArgumentException(
+                    "Metric limits must be positive; maxMetrics=" + _maxMetrics
+                            + ", maxNewMetricsPerPeriod=" + _maxNewMetricsPerPeriod);
+        }
+        _openMetrics.set(factory.create());
+        final Duration gaugeTimeout = builder._gaugeTimeout != null
+                ? builder._gaugeTimeout
+                : Duration.ofMillis(Math.max(1, _periodMillis / 2));
+        final CloserScheduler scheduler = CloserScheduler.getInstance();
+        _gaugeSampler = new GaugeSampler(scheduler.getWorkers(), scheduler.getTimer(), builder._gaugeThreads, gaugeTimeout);
+        addListener(new Index());
+        _closer = new Closer(_lock, factory, _openMetrics, this);
+        _closerRegistration = scheduler.register(_closer._handOff, _periodMillis, _overrunPeriods::add);
+        _shutdownHook = builder._shutdownHook ? addShutdownHook() : null;
     }
 
     /**
@@ -92,7 +137,7 @@ public class MetricRegistry extends com.codahale.metrics.MetricRegistry {
      */
     @Override
     public Timer timer(final String name) {
-        final Timer timer = getOrCreate(name, _timerBuilder);
+        final Timer timer = getOrCreate(name, _timerBuilder, OVERFLOW_PREFIX + "timer");
         return timer;
     }
 
@@ -101,7 +146,7 @@ public class MetricRegistry extends com.codahale.metrics.MetricRegistry {
      */
     @Override
     public Counter counter(final String name) {
-        final Counter counter = getOrCreate(name, _counterBuilder);
+        final Counter counter = getOrCreate(name, _counterBuilder, OVERFLOW_PREFIX + "counter");
         return counter;
     }
 
@@ -110,7 +155,7 @@ public class MetricRegistry extends com.codahale.metrics.MetricRegistry {
      */
     @Override
     public Histogram histogram(final String name) {
-        final Histogram histogram = getOrCreate(name, _histogramBuilder);
+        final Histogram histogram = getOrCreate(name, _histogramBuilder, OVERFLOW_PREFIX + "histogram");
         return histogram;
     }
 
@@ -119,55 +164,664 @@ public class MetricRegistry extends com.codahale.metrics.MetricRegistry {
      */
     @Override
     public Meter meter(final String name) {
-        final Meter meter = getOrCreate(name, _meterBuilder);
+        final Meter meter = getOrCreate(name, _meterBuilder, OVERFLOW_PREFIX + "meter");
         return meter;
     }
 
+    /**
+     * Close the open period and stop closing periods. The open period is closed
+     * and written, its gauges read, and the sinks given to the builder, or the
+     * sink of the default metrics factory, flushed and closed, waiting at most
+     * the close timeout for all of it. Anything recorded to the registry once it
+     * is closed is discarded.
+     */
+    @Override
+    public void close() {
+        if (!_closed.compareAndSet(false, true)) {
+            return;
+        }
+        _closerRegistration.cancel();
+        if (_shutdownHook != null && Thread.currentThread() != _shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(_shutdownHook);
+            } catch (final IllegalStateException e) {
+                // The virtual machine is already shutting down
+            }
+        }
+        final long deadline = System.nanoTime() + _closeTimeout.toNanos();
+        final Thread finisher = new Thread(() -> finish(deadline), "metrics-final-close");
+        finisher.setDaemon(true);
+        finisher.start();
+        try {
+            TimeUnit.NANOSECONDS.timedJoin(finisher, Math.max(1, deadline - System.nanoTime()));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (finisher.isAlive()) {
+            System.err.println("Metric registry not closed within " + _closeTimeout + "; the last period may be incomplete");
+        }
+    }
+
     public MetricsFactory getMetricsFactory() {
         return _metricsFactory;
     }
 
-    private <T extends Metric> T getOrCreate(final String name, final Function<String, T> builder) {
-        @SuppressWarnings("unchecked")
-        final T metric = (T) _metrics.computeIfAbsent(name, builder);
-        return metric;
+    public Duration getPeriod() {
+        return Duration.ofMillis(_periodMillis);
     }
 
-    private ScheduledExecutorService _closingExecutor;
+    /**
+     * The number of period boundaries which passed while the previous period was
+     * still being closed, either by this registry or by others swapped on the shared
+     * {@link CloserScheduler} before it. Instead of closing the missed periods back
+     * to back, each is merged into the period which is open at the time.
+     *
+     * @return the number of overrun periods
+     */
+    public long getOverrunPeriods() {
+        return _overrunPeriods.sum();
+    }
 
-    private final ConcurrentMap<String, Metric> _metrics = new ConcurrentHashMap<>();
-    private final AtomicReference<Metrics> _openMetrics = new AtomicReference<>();
-    private final SafeRefLock<Metrics> _lock = new SafeRefLock<>(_openMetrics, new ReentrantReadWriteLock(false));
+    /**
+     * The number of periods which were not closed because nothing was recorded
+     * in them and no gauges are registered. The open metrics instance is kept
+     * for the following period instead.
+     *
+     * @return the number of skipped periods
+     */
+    public long getSkippedPeriods() {
+        return _skippedPeriods.sum();
+    }
 
-    // These are Functions instead of Suppliers so that we don't have to close over them in the getOrCreate function
-    private final Function<String, Counter> _counterBuilder = (n) -> {
-        final Counter counter = new Counter(n, _lock);
-        register(n, counter);
+    /**
+     * The number of lookups of new metric names which were redirected to an
+     * overflow metric because the registry or the period was at its limit.
+     *
+     * @return the number of rejected metric names
+     */
+    public long getRejectedNames() {
+        return _rejectedNames.sum();
+    }
+
+    /**
+     * The number of times a gauge was not evaluated before its deadline when
+     * closing a period. The last good value of the gauge was recorded instead.
+     *
+     * @return the number of gauge overruns
+     */
+    public long getGaugeOverruns() {
+        return _gaugeSampler.getOverruns();
+    }
+
+    /**
+     * The number of times evaluating a gauge threw when closing a period. The
+     * last good value of the gauge was recorded instead.
+     *
+     * @return the number of gauge failures
+     */
+    public long getGaugeFailures() {
+        return _gaugeSampler.getFailures();
+    }
+
+    private static MetricsFactory createDefaultMetricsFactory(final List<Sink> sinks) {
+        // The registry owns the sink of the default factory so closes it as well
+        final Sink sink = QueryLogSinks.create();
+        sinks.add(sink);
+        return MetricsFactories.create(Collections.singletonList(sink));
+    }
+
+    private RegistryInstrumentation createInstrumentation() {
+        // Read when periods are closed, by which time the registry is constructed
+        final RegistryInstrumentation instrumentation = new RegistryInstrumentation();
+        instrumentation.addCounter(INSTRUMENTATION_PREFIX + "names.rejected", this::getRejectedNames);
+        instrumentation.addCounter(INSTRUMENTATION_PREFIX + "periods.skipped", this::getSkippedPeriods);
+        instrumentation.addCounter(INSTRUMENTATION_PREFIX + "periods.overrun", this::getOverrunPeriods);
+        instrumentation.addCounter(INSTRUMENTATION_PREFIX + "gauges.overrun", this::getGaugeOverruns);
+        instrumentation.addCounter(INSTRUMENTATION_PREFIX + "gauges.failed", this::getGaugeFailures);
+        instrumentation.addCounter(INSTRUMENTATION_PREFIX + "sinks.dropped", () -> sumAsyncSinks(AsyncSink::getDropped));
+        instrumentation.addGauge(INSTRUMENTATION_PREFIX + "sinks.queued", () -> sumAsyncSinks(AsyncSink::getQueued));
+        return instrumentation;
+    }
+
+    private long sumAsyncSinks(final ToLongFunction<AsyncSink> value) {
+        long sum = 0;
+        for (final Sink sink : _sinks) {
+            if (sink instanceof AsyncSink) {
+                sum += value.applyAsLong((AsyncSink) sink);
+            }
+        }
+        return sum;
+    }
+
+    private Thread addShutdownHook() {
+        final Thread hook = new Thread(this::close, "metrics-shutdown");
+        Runtime.getRuntime().addShutdownHook(hook);
+        return hook;
+    }
+
+    private void finish(final long deadline) {
+        _closer.finish();
+        for (final Sink sink : _sinks) {
+            try {
+                if (sink instanceof AsyncSink) {
+                    // Writes the queued units and closes the wrapped sink before returning
+                    ((AsyncSink) sink).close(Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+                    continue;
+                }
+                if (sink instanceof Flushable) {
+                    ((Flushable) sink).flush();
+                }
+                if (sink instanceof Closeable) {
+                    ((Closeable) sink).close();
+                }
+            } catch (final IOException | InterruptedException e) {
+                System.err.println(e);
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private Counter newCounter(final String name) {
+        final SampleBuffer buffer = createBuffer(name, true);
+        final Counter counter = new Counter(name, _lock, buffer);
+        if (buffer != null) {
+            _drainables.put(name, counter);
+        }
+        register(name, counter);
         return counter;
-    };
-    private final Function<String, Timer> _timerBuilder = (n) -> {
-        final Timer timer = new Timer(n, _lock, Clock.defaultClock());
-        register(n, timer);
+    }
+
+    private Timer newTimer(final String name) {
+        final SampleBuffer buffer = createBuffer(name, false);
+        final Sampler sampler = createSampler(name);
+        final Timer timer = new Timer(name, _lock, buffer, createReservoir(), Clock.defaultClock(), _tsdOnly, sampler);
+        if (buffer != null || sampler != null) {
+            _drainables.put(name, timer);
+        }
+        register(name, timer);
         return timer;
-    };
-    private final Function<String, Histogram> _histogramBuilder = (n) -> {
-        final Histogram histogram = new Histogram(n, _lock, new ExponentiallyDecayingReservoir());
-        register(n, histogram);
+    }
+
+    private Histogram newHistogram(final String name) {
+        final SampleBuffer buffer = createBuffer(name, false);
+        final Sampler sampler = createSampler(name);
+        final Histogram histogram = new Histogram(name, _lock, buffer, createReservoir(), sampler);
+        if (buffer != null || sampler != null) {
+            _drainables.put(name, histogram);
+        }
+        register(name, histogram);
         return histogram;
-    };
-    private final Function<String, Meter> _meterBuilder = (n) -> {
-        final Meter meter = new Meter(n, _lock);
-        register(n, meter);
+    }
+
+    private Meter newMeter(final String name) {
+        final SampleBuffer buffer = createBuffer(name, true);
+        final Meter meter = new Meter(name, _lock, buffer, _tsdOnly);
+        if (buffer != null) {
+            _drainables.put(name, meter);
+        }
+        register(name, meter);
         return meter;
-    };
+    }
+
+    private Reservoir createReservoir() {
+        if (_tsdOnly) {
+            return new NoOpReservoir();
+        }
+        return _reservoirFactory.get();
+    }
+
+    private Sampler createSampler(final String name) {
+        final double rate = _sampleRate.applyAsDouble(name);
+        return rate == 1 ? null : new Sampler(rate);
+    }
+
+    private SampleBuffer createBuffer(final String name, final boolean coalescable) {
+        if (coalescable && _coalesced.test(name)) {
+            return new CoalescingSampleBuffer();
+        }
+        if (!coalescable && _offHeap.test(name)) {
+            return new OffHeapSampleBuffer(_chunkPool);
+        }
+        if (_recordingMode == RecordingMode.THREAD_LOCAL) {
+            return new ThreadLocalSampleBuffer();
+        }
+        if (_recordingMode == RecordingMode.INDEXED) {
+            final int id = _sampleTable.register();
+            _ids.put(name, id);
+            return new IndexedSampleBuffer(_sampleTable, id);
+        }
+        return null;
+    }
+
+    private boolean isIdle() {
+        for (final Drainable drainable : _drainables.values()) {
+            if (!drainable.isEmpty()) {
+                return false;
+            }
+        }
+        for (final Retired retired : _retired) {
+            final Drainable drainable = retired.peek();
+            if (drainable != null && !drainable.isEmpty()) {
+                return false;
+            }
+        }
+        return _gaugeSampler.isEmpty();
+    }
+
+    private void drainTo(final Metrics metrics) {
+        for (final Drainable drainable : _drainables.values()) {
+            drainable.drainTo(metrics);
+        }
+        final Iterator<Retired> iterator = _retired.iterator();
+        while (iterator.hasNext()) {
+            final Retired retired = iterator.next();
+            final Drainable drainable = retired.take();
+            if (drainable != null) {
+                drainable.drainTo(metrics);
+            } else {
+                iterator.remove();
+                if (retired._id >= 0) {
+                    _sampleTable.release(retired._id);
+                }
+            }
+        }
+    }
+
+    // Evicts the idle metrics and returns the number recorded to since the last sweep
+    private int sweepTouched() {
+        if (_evictionPeriods < 1 && _instrumentation == null) {
+            return 0;
+        }
+        int touched = 0;
+        for (final Map.Entry<String, Drainable> entry : _metrics.entrySet()) {
+            final String name = entry.getKey();
+            if (entry.getValue().checkAndClearTouched()) {
+                ++touched;
+                _idlePeriods.remove(name);
+            } else if (_evictionPeriods > 0 && _idlePeriods.merge(name, 1, Integer::sum) >= _evictionPeriods) {
+                remove(name);
+            }
+        }
+        return touched;
+    }
+
+    private void forget(final String name) {
+        _metrics.remove(name);
+        _idlePeriods.remove(name);
+        final Drainable drainable = _drainables.remove(name);
+        final Integer id = _ids.remove(name);
+        if (drainable != null) {
+            _retired.add(new Retired(drainable, id != null ? id : -1));
+        }
+    }
+
+    private <T extends Metric & Drainable> T getOrCreate(
+            final String name,
+            final Function<String, T> builder,
+            final String overflowName) {
+        Drainable metric = _metrics.get(name);
+        if (metric == null) {
+            if (admit()) {
+                metric = _metrics.computeIfAbsent(name, builder);
+            } else {
+                _rejectedNames.increment();
+                metric = _metrics.computeIfAbsent(overflowName, builder);
+            }
+        }
+        @SuppressWarnings("unchecked")
+        final T typed = (T) metric;
+        return typed;
+    }
+
+    private boolean admit() {
+        // Concurrent lookups of new names may exceed the limits slightly
+        return _metrics.size() < _maxMetrics
+                && _newMetricsInPeriod.get() < _maxNewMetricsPerPeriod
+                && _newMetricsInPeriod.incrementAndGet() <= _maxNewMetricsPerPeriod;
+    }
+
+    private final ConcurrentMap<String, Drainable> _metrics = new ConcurrentHashMap<>();
+    // Maintained by listening to the registry so that closing a period does not filter and sort every metric
+    private final GaugeSampler _gaugeSampler;
+    private final AtomicReference<Metrics> _openMetrics = new AtomicReference<>();
+    private final SafeRefLock<Metrics> _lock;
+    private final RecordingMode _recordingMode;
+    private final Predicate<String> _coalesced;
+    private final Predicate<String> _offHeap;
+    private final ToDoubleFunction<String> _sampleRate;
+    private final ChunkPool _chunkPool = new ChunkPool();
+    private final boolean _tsdOnly;
+    private final Supplier<Reservoir> _reservoirFactory;
+    private final ConcurrentMap<String, Drainable> _drainables = new ConcurrentHashMap<>();
+    private final Queue<Retired> _retired = new ConcurrentLinkedQueue<>();
+    private final SampleTable _sampleTable = new SampleTable();
+    // Ids in the sample table of the metrics recording in indexed mode
+    private final ConcurrentMap<String, Integer> _ids = new ConcurrentHashMap<>();
+    // Consecutive idle periods of the metrics which were idle in the most recently closed period
+    private final ConcurrentMap<String, Integer> _idlePeriods = new ConcurrentHashMap<>();
+    private final int _evictionPeriods;
+    private final int _maxMetrics;
+    private final int _maxNewMetricsPerPeriod;
+    private final AtomicInteger _newMetricsInPeriod = new AtomicInteger();
+    private final LongAdder _rejectedNames = new LongAdder();
+    private final LongAdder _skippedPeriods = new LongAdder();
+    private final LongAdder _overrunPeriods = new LongAdder();
+    private final long _periodMillis;
+    // Only weakly referenced by the scheduler, so held here for as long as the registry is reachable
+    private final Closer _closer;
+
+    // These are Functions instead of Suppliers so that we don't have to close over them in the getOrCreate function
+    private final Function<String, Counter> _counterBuilder = this::newCounter;
+    private final Function<String, Timer> _timerBuilder = this::newTimer;
+    private final Function<String, Histogram> _histogramBuilder = this::newHistogram;
+    private final Function<String, Meter> _meterBuilder = this::newMeter;
 
     private final MetricsFactory _metricsFactory;
+    private final RegistryInstrumentation _instrumentation;
+    private final List<Sink> _sinks;
+    private final Duration _closeTimeout;
+    private final CloserScheduler.Registration _closerRegistration;
+    private final Thread _shutdownHook;
+    private final AtomicBoolean _closed = new AtomicBoolean();
 
-    // TODO(barp): Configurable closer period [#3]
-    private static final int CLOSER_PERIOD = 500;
+    private static final String DEFAULT_PERIOD_MILLIS = "500";
+    private static final int DEFAULT_GAUGE_THREADS = 2;
+    private static final String INSTRUMENTATION_PREFIX = "codahale_extra.";
+    private static final String OVERFLOW_PREFIX = INSTRUMENTATION_PREFIX + "overflow.";
+    private static final Duration DEFAULT_CLOSE_TIMEOUT = Duration.ofSeconds(5);
+
+    /**
+     * Builder for {@link MetricRegistry}.
+     *
+     * @author Brandon Arp (barp at groupon dot com)
+     */
+    public static class Builder {
+        /**
+         * Create the registry.
+         *
+         * @return a new {@link MetricRegistry}
+         */
+        public MetricRegistry build() {
+            return new MetricRegistry(this);
+        }
+
+        /**
+         * Set the metrics factory. Optional; defaults to a factory writing a query log
+         * configured by system properties.
+         *
+         * @param value the metrics factory to use to create metrics
+         * @return this builder
+         */
+        public Builder setMetricsFactory(final MetricsFactory value) {
+            _metricsFactory = value;
+            return this;
+        }
+
+        /**
+         * Set the lock guarding the open metrics. Readers acquire it for every recorded
+         * sample and the closer acquires it as a writer once per period. Optional;
+         * defaults to a non-fair {@link ReentrantReadWriteLock}. Use a
+         * {@link StripedReadWriteLock} when many threads record concurrently.
+         *
+         * @param value the lock guarding the open metrics
+         * @return this builder
+         */
+        public Builder setLock(final ReadWriteLock value) {
+            _lock = value;
+            return this;
+        }
+
+        /**
+         * Set how the wrapped metrics record samples. Optional; defaults to
+         * {@link RecordingMode#LOCKED}.
+         *
+         * @param value the recording mode
+         * @return this builder
+         */
+        public Builder setRecordingMode(final RecordingMode value) {
+            _recordingMode = value;
+            return this;
+        }
+
+        /**
+         * Set which counters and meters are coalesced. All the increments, decrements
+         * and marks of a coalesced metric within a period are summed and emitted as a
+         * single sample when the period is closed, instead of as one sample each.
+         * Optional; defaults to coalescing no metrics.
+         *
+         * @param value predicate on the metric name selecting the coalesced metrics
+         * @return this builder
+         */
+        public Builder setCoalesced(final Predicate<String> value) {
+            _coalesced = value;
+            return this;
+        }
+
+        /**
+         * Set which histograms and timers hold their samples off the heap. The samples
+         * of each period are appended to pooled direct byte buffers until the period
+         * is closed, instead of to the open metrics or to buffers on the heap, so
+         * that high rate metrics do not churn the young generation while recording.
+         * Optional; defaults to holding no samples off the heap.
+         *
+         * @param value predicate on the metric name selecting the off heap metrics
+         * @return this builder
+         */
+        public Builder setOffHeap(final Predicate<String> value) {
+            _offHeap = value;
+            return this;
+        }
+
+        /**
+         * Set the sample rate of each histogram and timer. Each update of a metric with a rate
+         * below one is kept with that probability, and only the kept samples are recorded to
+         * the reservoir and as TSD timer and counter samples, so TSD sums are thinned too. Counts
+         * stay exact: each period records the updates as the counter {@code <name>.count} and the
+         * rate as the gauge {@code <name>.sample_rate}. Optional; defaults to keeping every sample.
+         *
+         * @param value function of the metric name returning its rate; greater than zero and at most one
+         * @return this builder
+         */
+        public Builder setSampleRate(final ToDoubleFunction<String> value) {
+            _sampleRate = value;
+            return this;
+        }
+
+        /**
+         * Set whether samples are only recorded to ArpNetworking metrics. The Codahale
+         * reservoirs and rates of histograms, meters and timers are then never updated,
+         * so their snapshots are empty and their moving average rates are zero. Counts,
+         * and the mean rates of meters, remain accurate.
+         * Optional; defaults to false.
+         *
+         * @param value whether to skip the Codahale bookkeeping
+         * @return this builder
+         */
+        public Builder setTsdOnly(final boolean value) {
+            _tsdOnly = value;
+            return this;
+        }
+
+        /**
+         * Set the factory for the reservoirs of histograms and timers. Optional;
+         * defaults to creating an {@link ExponentiallyDecayingReservoir}. Use a
+         * {@link LogLinearReservoir} for constant memory and contention free updates:
+         * {@code setReservoirFactory(() -> new LogLinearReservoir(3))}.
+         *
+         * @param value the factory creating a reservoir for each histogram and timer
+         * @return this builder
+         */
+        public Builder setReservoirFactory(final Supplier<Reservoir> value) {
+            _reservoirFactory = value;
+            return this;
+        }
+
+        /**
+         * Set the length of each period. Periods are aligned to multiples of the
+         * length since the epoch, so that hosts with synchronized clocks close their
+         * periods together. Optional; defaults to the number of milliseconds in the
+         * METRICS_CODAHALE_EXTRA_PERIOD system property, or 500 milliseconds.
+         *
+         * @param value the length of each period; at least one millisecond
+         * @return this builder
+         */
+        public Builder setPeriod(final Duration value) {
+            _period = value;
+            return this;
+        }
+
+        /**
+         * Set the number of consecutive closed periods without samples after which a
+         * counter, histogram, meter or timer created by the registry is removed from
+         * it. A removed metric which is still referenced keeps recording; a later
+         * lookup by its name creates a new metric. Optional; defaults to 0, never
+         * evicting metrics.
+         *
+         * @param value the number of idle periods before eviction; 0 to disable
+         * @return this builder
+         */
+        public Builder setEvictionPeriods(final int value) {
+            _evictionPeriods = value;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of distinct counters, histograms, meters and timers
+         * in the registry. Lookups of new names beyond the limit return a shared
+         * overflow metric of the same type instead, named for example
+         * codahale_extra.overflow.counter, and are counted by
+         * {@link MetricRegistry#getRejectedNames()}. Optional; defaults to no limit.
+         *
+         * @param value the maximum number of metrics; at least one
+         * @return this builder
+         */
+        public Builder setMaxMetrics(final int value) {
+            _maxMetrics = value;
+            return this;
+        }
+
+        /**
+         * Set the maximum number of new counters, histograms, meters and timers which
+         * may be created in the registry in each period. Lookups of new names beyond
+         * the limit are redirected to the overflow metrics as with
+         * {@link #setMaxMetrics(int)}. Optional; defaults to no limit.
+         *
+         * @param value the maximum number of new metrics per period; at least one
+         * @return this builder
+         */
+        public Builder setMaxNewMetricsPerPeriod(final int value) {
+            _maxNewMetricsPerPeriod = value;
+            return this;
+        }
+
+        /**
+         * Set how many gauges of the registry are evaluated at once. Gauges are
+         * evaluated on the workers of the {@link CloserScheduler}, which are shared by
+         * every registry, so this bounds how many of them the registry occupies, and
+         * how many slow gauges can be evaluated concurrently. Optional; defaults to 2.
+         *
+         * @param value the number of gauges evaluated at once; at least one
+         * @return this builder
+         */
+        public Builder setGaugeThreads(final int value) {
+            _gaugeThreads = value;
+            return this;
+        }
+
+        /**
+         * Set how long closing a period waits for its gauges. A gauge which is not
+         * evaluated in time is recorded with its last good value and counted as an
+         * overrun; its evaluation is not interrupted and it is not evaluated again
+         * until it completes. Optional; defaults to half the period.
+         *
+         * @param value the time to wait for the gauges of each period
+         * @return this builder
+         */
+        public Builder setGaugeTimeout(final Duration value) {
+            _gaugeTimeout = value;
+            return this;
+        }
+
+        /**
+         * Set the sinks of the metrics factory to flush and close when the
+         * registry is closed. Sinks which buffer, such as the {@link AsyncSink},
+         * are flushed before they are closed. Optional; defaults to none, or to the
+         * sink of the default metrics factory if no metrics factory is set.
+         *
+         * @param value the sinks to close with the registry
+         * @return this builder
+         */
+        public Builder setSinks(final List<Sink> value) {
+            _sinks = value;
+            return this;
+        }
+
+        /**
+         * Set how long closing the registry waits for the last period to be
+         * written and the sinks flushed. Optional; defaults to five seconds.
+         *
+         * @param value the longest time to wait when closing
+         * @return this builder
+         */
+        public Builder setCloseTimeout(final Duration value) {
+            _closeTimeout = value;
+            return this;
+        }
+
+        /**
+         * Set whether the registry is closed when the virtual machine shuts down.
+         * The shutdown hook holds the registry until it is closed. Optional;
+         * defaults to false.
+         *
+         * @param value whether to close the registry on shutdown
+         * @return this builder
+         */
+        public Builder setShutdownHook(final boolean value) {
+            _shutdownHook = value;
+            return this;
+        }
+
+        /**
+         * Set whether the registry records its own overhead into each period it
+         * closes; see {@link RegistryInstrumentation} for what is recorded.
+         * Recording then also times each acquisition of the read lock and counts
+         * each sample. Optional; defaults to false.
+         *
+         * @param value whether to record the overhead of the registry
+         * @return this builder
+         */
+        public Builder setInstrumented(final boolean value) {
+            _instrumented = value;
+            return this;
+        }
+
+        private MetricsFactory _metricsFactory;
+        private ReadWriteLock _lock;
+        private RecordingMode _recordingMode = RecordingMode.LOCKED;
+        private Predicate<String> _coalesced = name -> false;
+        private Predicate<String> _offHeap = name -> false;
+        private ToDoubleFunction<String> _sampleRate = name -> 1;
+        private boolean _tsdOnly;
+        private Duration _period;
+        private Supplier<Reservoir> _reservoirFactory = ExponentiallyDecayingReservoir::new;
+        private int _gaugeThreads = DEFAULT_GAUGE_THREADS;
+        private int _evictionPeriods;
+        private int _maxMetrics = Integer.MAX_VALUE;
+        private int _maxNewMetricsPerPeriod = Integer.MAX_VALUE;
+        private Duration _gaugeTimeout;
+        private List<Sink> _sinks = Collections.emptyList();
+        private Duration _closeTimeout = DEFAULT_CLOSE_TIMEOUT;
+        private boolean _shutdownHook;
+        private boolean _instrumented;
+    }
 
     /**
      * Closes a metric instance in a MetricRegistry.  Public to allow cross-package use after shading.
+     * Periods in which nothing was recorded are skipped unless there are gauges to sample.
+     * Gauges are evaluated by the registry's gauge threads after the open metrics are swapped,
+     * so the swap never waits on them. The shared {@link CloserScheduler} only swaps and drains;
+     * the gauges are sampled and the period written on its shared workers, one period at a time,
+     * and a boundary reached while the previous period is still pending is counted as an overrun.
      *
      * @author Brandon Arp (barp at groupon dot com)
      */
@@ -195,31 +849,145 @@ public class MetricRegistry extends com.codahale.metrics.MetricRegistry {
          * {@inheritDoc}
          */
         @Override
-        public void run() {
+        public synchronized void run() {
+            _completing.join();
+            close().join();
+        }
+
+        void handOff() {
+            if (_registry._closed.get()) {
+                // The final close completes the open period itself
+                return;
+            }
+            synchronized (this) {
+                // The registry may have been closed while waiting for the monitor
+                if (_finished) {
+                    return;
+                }
+                if (!_completing.isDone()) {
+                    _registry._overrunPeriods.increment();
+                    return;
+                }
+                close();
+            }
+        }
+
+        // Waits for any period being closed by the scheduler and closes the open one; no hand-off follows it
+        synchronized void finish() {
+            _finished = true;
+            run();
+        }
+
+        private CompletableFuture<Void> close() {
+            _registry._newMetricsInPeriod.set(0);
+            if (!_lock.checkAndClearRead() && _registry.isIdle()) {
+                _registry._skippedPeriods.increment();
+                return _completing;
+            }
             final Metrics metrics = _metricsRef.get();
+            final long start = System.nanoTime();
             _lock.writeLocked(ignored -> _metricsRef.set(_factory.create()));
-            try {
-                @SuppressWarnings("unchecked")
-                final SortedMap<String, Gauge<?>> gauges = (SortedMap<String, Gauge<?>>) (SortedMap<String, ?>) _registry.getGauges();
-                for (final Map.Entry<String, Gauge<?>> entry : gauges.entrySet()) {
-                    final Object value = entry.getValue().getValue();
-                    if (value instanceof Number) {
-                        metrics.setGauge(entry.getKey(), ((Number) value).doubleValue());
-                    }
-                }
-                //CHECKSTYLE.OFF: IllegalCatch - we need to catch everything
-            } catch (final Exception ex) {
-                //CHECKSTYLE.ON: IllegalCatch
-                System.err.println(ex);
-                ex.printStackTrace();
+            final long swapped = System.nanoTime();
+            // Samples buffered before the swap belong to the closing period; any
+            // recorded since are drained into it as well since they cannot be told apart
+            _registry.drainTo(metrics);
+            final int names = _registry.sweepTouched();
+            final long drained = System.nanoTime();
+            _completing = _registry._gaugeSampler.sampleTo(metrics)
+                    .thenRunAsync(
+                            () -> write(metrics, swapped - start, drained - swapped, drained, names),
+                            CloserScheduler.getInstance().getWorkers())
+                    .exceptionally(Closer::report);
+            return _completing;
+        }
 
+        private void write(
+                final Metrics metrics,
+                final long swapNanos,
+                final long drainNanos,
+                final long drained,
+                final int names) {
+            final long sampled = System.nanoTime();
+            final RegistryInstrumentation instrumentation = _registry._instrumentation;
+            if (instrumentation != null) {
+                instrumentation.recordTo(metrics, swapNanos, drainNanos, sampled - drained, names);
             }
             metrics.close();
+            if (instrumentation != null) {
+                instrumentation.recordClose(System.nanoTime() - sampled);
+            }
+        }
+
+        private static Void report(final Throwable throwable) {
+            System.err.println(throwable);
+            throwable.printStackTrace();
+            return null;
         }
 
         private final SafeRefLock<Metrics> _lock;
         private final MetricsFactory _factory;
         private final AtomicReference<Metrics> _metricsRef;
         private final MetricRegistry _registry;
+        // Registered with the scheduler, which only references it weakly
+        private final Runnable _handOff = this::handOff;
+        // The gauges and write of the last closed period; guarded by the closer
+        private CompletableFuture<Void> _completing = CompletableFuture.allOf();
+        private boolean _finished;
+    }
+
+    // A removed metric, which may still be referenced and recorded to by the application
+    private static final class Retired extends WeakReference<Drainable> {
+        private Retired(final Drainable drainable, final int id) {
+            super(drainable);
+            _pending = drainable;
+            _id = id;
+        }
+
+        public Drainable peek() {
+            return _pending != null ? _pending : get();
+        }
+
+        public Drainable take() {
+            final Drainable drainable = peek();
+            // Held strongly until drained once so that its last samples are not collected with it
+            _pending = null;
+            return drainable;
+        }
+
+        private Drainable _pending;
+        private final int _id;
+    }
+
+    // Keeps the maps of the registry consistent with its parent however metrics are registered and removed
+    private final class Index extends MetricRegistryListener.Base {
+        @Override
+        public void onGaugeAdded(final String name, final Gauge<?> gauge) {
+            _gaugeSampler.add(name, gauge);
+        }
+
+        @Override
+        public void onGaugeRemoved(final String name) {
+            _gaugeSampler.remove(name);
+        }
+
+        @Override
+        public void onCounterRemoved(final String name) {
+            forget(name);
+        }
+
+        @Override
+        public void onHistogramRemoved(final String name) {
+            forget(name);
+        }
+
+        @Override
+        public void onMeterRemoved(final String name) {
+            forget(name);
+        }
+
+        @Override
+        public void onTimerRemoved(final String name) {
+            forget(name);
+        }
     }
 }
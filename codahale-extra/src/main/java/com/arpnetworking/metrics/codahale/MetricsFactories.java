@@ -0,0 +1,60 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.Sink;
+import com.arpnetworking.metrics.impl.TsdMetricsFactory;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Creates the default metrics factory used by the {@link MetricRegistry} and
+ * the {@link TsdReporter} when none is given. The cluster and service are read
+ * from the METRICS_CODAHALE_EXTRA_CLUSTER and METRICS_CODAHALE_EXTRA_SERVICE
+ * system properties and the query log sink is created by {@link QueryLogSinks}.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class MetricsFactories {
+    /**
+     * Create the metrics factory configured by the system properties.
+     *
+     * @return the default metrics factory
+     */
+    public static MetricsFactory createDefault() {
+        return create(Collections.singletonList(QueryLogSinks.create()));
+    }
+
+    /**
+     * Create a metrics factory for the cluster and service configured by the
+     * system properties which records to the given sinks.
+     *
+     * @param sinks the sinks to record to
+     * @return the metrics factory
+     */
+    public static MetricsFactory create(final List<Sink> sinks) {
+        // TODO(barp): Read the settings from a config file [#2]
+        return new TsdMetricsFactory.Builder()
+                .setClusterName(System.getProperty("METRICS_CODAHALE_EXTRA_CLUSTER", "CodahaleCluster"))
+                .setServiceName(System.getProperty("METRICS_CODAHALE_EXTRA_SERVICE", "CodahaleService"))
+                .setSinks(sinks)
+                .build();
+    }
+
+    private MetricsFactories() {}
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.codahale.metrics.Reservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformSnapshot;
+
+/**
+ * A reservoir which discards every value. Used for histograms whose samples are
+ * only recorded to ArpNetworking metrics; their snapshot is always empty.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class NoOpReservoir implements Reservoir {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void update(final long value) {
+        // Discarded
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Snapshot getSnapshot() {
+        return EMPTY_SNAPSHOT;
+    }
+
+    private static final Snapshot EMPTY_SNAPSHOT = new UniformSnapshot(new long[0]);
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * A sample buffer which appends samples to direct byte buffers taken from a
+ * {@link ChunkPool}, so that samples held for a period occupy no heap and
+ * create no garbage. Drained chunks are returned to the pool once their
+ * samples have been replayed, and the list of chunks is swapped with a spare,
+ * so that steady state recording does not allocate.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class OffHeapSampleBuffer implements SampleBuffer {
+    /**
+     * Public constructor.
+     *
+     * @param pool the pool to take chunks from
+     */
+    public OffHeapSampleBuffer(final ChunkPool pool) {
+        _pool = pool;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void record(final long value) {
+        if (_current == null || !_current.hasRemaining()) {
+            _current = _pool.acquire();
+            _chunks.add(_current);
+        }
+        _current.putLong(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void record(final long[] values, final int offset, final int length) {
+        for (int i = offset; i < offset + length; ++i) {
+            record(values[i]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drain(final LongConsumer consumer) {
+        final List<ByteBuffer> chunks;
+        synchronized (this) {
+            if (_chunks.isEmpty()) {
+                return;
+            }
+            chunks = _chunks;
+            _chunks = _spare != null ? _spare : new ArrayList<>();
+            _spare = null;
+            _current = null;
+        }
+        for (int i = 0; i < chunks.size(); ++i) {
+            final ByteBuffer chunk = chunks.get(i);
+            chunk.flip();
+            while (chunk.hasRemaining()) {
+                consumer.accept(chunk.getLong());
+            }
+            _pool.release(chunk);
+        }
+        chunks.clear();
+        synchronized (this) {
+            _spare = chunks;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized boolean isEmpty() {
+        return _chunks.isEmpty();
+    }
+
+    private final ChunkPool _pool;
+    private List<ByteBuffer> _chunks = new ArrayList<>();
+    private List<ByteBuffer> _spare;
+    private ByteBuffer _current;
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+/**
+ * What an {@link AsyncSink} does with a unit of work when its queue is full.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public enum OverflowPolicy {
+    /**
+     * The unit being recorded is dropped, keeping the units already queued.
+     */
+    DROP_NEWEST,
+    /**
+     * The oldest queued unit is dropped to make room for the unit being
+     * recorded.
+     */
+    DROP_OLDEST,
+    /**
+     * The recording thread waits for room in the queue. Nothing is dropped,
+     * but a slow sink delays the closing of periods.
+     */
+    BLOCK
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.CompoundUnit;
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Unit;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes units of work in the version 2f JSON query log format written by
+ * {@link com.arpnetworking.metrics.impl.TsdLogSink}, without an object mapper
+ * and into a reusable builder, for the sinks in this package.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class QueryLogJson {
+    /**
+     * Append a unit of work as a single line of JSON, without the line terminator.
+     *
+     * @param event the unit of work
+     * @param out the builder to append to
+     */
+    public static void append(final Event event, final StringBuilder out) {
+        out.append("{\"version\":\"2f\",\"annotations\":{");
+        boolean first = true;
+        for (final Map.Entry<String, String> annotation : event.getAnnotations().entrySet()) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            appendString(annotation.getKey(), out);
+            out.append(':');
+            appendString(annotation.getValue(), out);
+        }
+        out.append('}');
+        appendSamples("counters", event.getCounterSamples(), out);
+        appendSamples("gauges", event.getGaugeSamples(), out);
+        appendSamples("timers", event.getTimerSamples(), out);
+        out.append('}');
+    }
+
+    private static void appendSamples(final String field, final Map<String, List<Quantity>> samples, final StringBuilder out) {
+        if (samples.isEmpty()) {
+            return;
+        }
+        out.append(",\"").append(field).append("\":{");
+        boolean first = true;
+        for (final Map.Entry<String, List<Quantity>> metric : samples.entrySet()) {
+            if (!first) {
+                out.append(',');
+            }
+            first = false;
+            appendString(metric.getKey(), out);
+            out.append(":{\"values\":[");
+            final List<Quantity> quantities = metric.getValue();
+            for (int i = 0; i < quantities.size(); ++i) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                appendQuantity(quantities.get(i), out);
+            }
+            out.append("]}");
+        }
+        out.append('}');
+    }
+
+    private static void appendQuantity(final Quantity quantity, final StringBuilder out) {
+        out.append("{\"value\":");
+        appendNumber(quantity.getValue(), out);
+        final Unit unit = quantity.getUnit();
+        if (unit instanceof CompoundUnit) {
+            final CompoundUnit compound = (CompoundUnit) unit;
+            appendUnits("unitNumerators", compound.getNumeratorUnits(), out);
+            appendUnits("unitDenominators", compound.getDenominatorUnits(), out);
+        } else if (unit != null) {
+            out.append(",\"unitNumerators\":[");
+            appendString(unit.getName(), out);
+            out.append(']');
+        }
+        out.append('}');
+    }
+
+    private static void appendUnits(final String field, final List<Unit> units, final StringBuilder out) {
+        if (units.isEmpty()) {
+            return;
+        }
+        out.append(",\"").append(field).append("\":[");
+        for (int i = 0; i < units.size(); ++i) {
+            if (i > 0) {
+                out.append(',');
+            }
+            appendString(units.get(i).getName(), out);
+        }
+        out.append(']');
+    }
+
+    private static void appendNumber(final Number value, final StringBuilder out) {
+        if (value instanceof Double || value instanceof Float) {
+            final double number = value.doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                // Non-finite values are quoted as they are not valid JSON numbers
+                out.append('"').append(number).append('"');
+            } else {
+                out.append(number);
+            }
+        } else {
+            out.append(value);
+        }
+    }
+
+    private static void appendString(final String value, final StringBuilder out) {
+        out.append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < ' ') {
+                        out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+    private QueryLogJson() {}
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+}
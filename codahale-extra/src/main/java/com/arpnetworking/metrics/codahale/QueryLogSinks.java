@@ -0,0 +1,88 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Sink;
+import com.arpnetworking.metrics.impl.TsdLogSink;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.zip.Deflater;
+
+/**
+ * Creates the query log sink of the default metrics factory from system
+ * properties. The properties read are:
+ *
+ * <ul>
+ * <li>METRICS_CODAHALE_EXTRA_DIRECTORY - the directory to write the query log
+ * to; defaults to /tmp</li>
+ * <li>METRICS_CODAHALE_EXTRA_SINK - the sink writing the query log; one of
+ * tsd for the {@link TsdLogSink}, mapped for the {@link MappedFileSink},
+ * binary for the {@link BinaryFileSink} or gzip for the {@link GzipFileSink};
+ * defaults to tsd</li>
+ * <li>METRICS_CODAHALE_EXTRA_COMPRESSION_LEVEL - the compression level of the
+ * gzip sink, from 0 to 9; defaults to the deflater's default</li>
+ * </ul>
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class QueryLogSinks {
+    /**
+     * Create the sink configured by the system properties.
+     *
+     * @return the query log sink
+     */
+    public static Sink create() {
+        return create(System.getProperties());
+    }
+
+    /**
+     * Create the sink configured by the given properties.
+     *
+     * @param properties the properties configuring the sink
+     * @return the query log sink
+     */
+    public static Sink create(final Properties properties) {
+        final File directory = new File(properties.getProperty("METRICS_CODAHALE_EXTRA_DIRECTORY", "/tmp"));
+        final String sink = properties.getProperty("METRICS_CODAHALE_EXTRA_SINK", "tsd").toLowerCase(Locale.ROOT);
+        switch (sink) {
+            case "tsd":
+                return new TsdLogSink.Builder()
+                        .setDirectory(directory)
+                        .build();
+            case "mapped":
+                return new MappedFileSink.Builder()
+                        .setDirectory(directory)
+                        .build();
+            case "binary":
+                return new BinaryFileSink.Builder()
+                        .setDirectory(directory)
+                        .build();
+            case "gzip":
+                return new GzipFileSink.Builder()
+                        .setDirectory(directory)
+                        .setLevel(Integer.parseInt(properties.getProperty(
+                                "METRICS_CODAHALE_EXTRA_COMPRESSION_LEVEL",
+                                String.valueOf(Deflater.DEFAULT_COMPRESSION))))
+                        .build();
+            default:
+                throw new IllegalArgumentException("Unknown query log sink; METRICS_CODAHALE_EXTRA_SINK=" + sink);
+        }
+    }
+
+    private QueryLogSinks() {}
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+/**
+ * How the metrics created by a {@link MetricRegistry} record their samples.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public enum RecordingMode {
+    /**
+     * Each sample is recorded to the open metrics instance while holding the
+     * read lock.
+     */
+    LOCKED,
+    /**
+     * Each sample is appended to a buffer owned by the recording thread and
+     * the buffers are drained into the outgoing metrics instance when the
+     * period is closed. Recording takes neither the lock nor any lock shared
+     * with other threads, at the cost of one buffer per thread per metric.
+     */
+    THREAD_LOCAL,
+    /**
+     * Each sample is appended to an array of primitives indexed by an id
+     * assigned to the metric when it is created, and the arrays are drained
+     * into the outgoing metrics instance when the period is closed. Recording
+     * neither takes the lock nor hashes the name of the metric, and needs only
+     * one buffer per metric, but threads recording to the same metric contend
+     * on its array.
+     */
+    INDEXED
+}
@@ -0,0 +1,299 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Counter;
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.Timer;
+import com.arpnetworking.metrics.Unit;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Collects the overhead of a registry and records it into each period the
+ * registry closes, alongside the application's metrics. Recording threads only
+ * add to striped counters, which are read and reset when the period is closed.
+ * Each closed period records:
+ *
+ * <ul>
+ * <li>codahale_extra.lock.read_wait - a timer sample of the total time spent
+ * acquiring the read lock in the period</li>
+ * <li>codahale_extra.lock.reads - a counter sample of the number of read lock
+ * acquisitions in the period</li>
+ * <li>codahale_extra.samples - a counter sample of the number of samples
+ * recorded into the period, excluding these</li>
+ * <li>codahale_extra.names - a gauge of the number of metrics recorded to in the
+ * period</li>
+ * <li>codahale_extra.closer.swap, codahale_extra.closer.drain and
+ * codahale_extra.closer.gauges - timer samples of how long closing the period
+ * took to swap in the next period, to drain the buffered samples into it and to
+ * read the gauges</li>
+ * <li>codahale_extra.closer.close - a timer sample of how long closing, and so
+ * writing, the previous period took</li>
+ * <li>the added counters, as counter samples of their change since the previous
+ * period, and the added gauges</li>
+ * </ul>
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class RegistryInstrumentation {
+    /**
+     * Wrap a metrics factory so that the samples recorded into the metrics it
+     * creates are counted.
+     *
+     * @param factory the factory to wrap
+     * @return the wrapping factory
+     */
+    public MetricsFactory wrap(final MetricsFactory factory) {
+        return () -> new CountingMetrics(factory.create());
+    }
+
+    /**
+     * Record an acquisition of the read lock.
+     *
+     * @param waitNanos how long acquiring the lock took in nanoseconds
+     */
+    public void recordReadWait(final long waitNanos) {
+        _readWaitNanos.add(waitNanos);
+        _reads.increment();
+    }
+
+    /**
+     * Add a cumulative count to record the change of in each period.
+     *
+     * @param name the name of the counter
+     * @param count supplies the cumulative count
+     */
+    public void addCounter(final String name, final LongSupplier count) {
+        _counters.add(new Cumulative(name, count));
+    }
+
+    /**
+     * Add a value to record as a gauge in each period.
+     *
+     * @param name the name of the gauge
+     * @param value supplies the value
+     */
+    public void addGauge(final String name, final LongSupplier value) {
+        _gauges.add(new Cumulative(name, value));
+    }
+
+    /**
+     * Record the overhead of a period into it before it is closed.
+     *
+     * @param metrics the metrics of the closing period
+     * @param swapNanos how long swapping in the next period took
+     * @param drainNanos how long draining the buffered samples took
+     * @param gaugeNanos how long reading the gauges took
+     * @param names the number of metrics recorded to in the period
+     */
+    public void recordTo(
+            final Metrics metrics,
+            final long swapNanos,
+            final long drainNanos,
+            final long gaugeNanos,
+            final int names) {
+        // Read before anything below is counted
+        final long samples = metrics instanceof CountingMetrics ? ((CountingMetrics) metrics)._samples.sum() : 0;
+        metrics.resetCounter(PREFIX + "samples");
+        metrics.incrementCounter(PREFIX + "samples", samples);
+        metrics.setGauge(PREFIX + "names", names);
+        metrics.setTimer(PREFIX + "lock.read_wait", _readWaitNanos.sumThenReset(), TimeUnit.NANOSECONDS);
+        metrics.resetCounter(PREFIX + "lock.reads");
+        metrics.incrementCounter(PREFIX + "lock.reads", _reads.sumThenReset());
+        metrics.setTimer(PREFIX + "closer.swap", swapNanos, TimeUnit.NANOSECONDS);
+        metrics.setTimer(PREFIX + "closer.drain", drainNanos, TimeUnit.NANOSECONDS);
+        metrics.setTimer(PREFIX + "closer.gauges", gaugeNanos, TimeUnit.NANOSECONDS);
+        if (_closeNanos >= 0) {
+            metrics.setTimer(PREFIX + "closer.close", _closeNanos, TimeUnit.NANOSECONDS);
+        }
+        for (final Cumulative counter : _counters) {
+            final long count = counter._supplier.getAsLong();
+            metrics.resetCounter(counter._name);
+            metrics.incrementCounter(counter._name, count - counter._previous);
+            counter._previous = count;
+        }
+        for (final Cumulative gauge : _gauges) {
+            metrics.setGauge(gauge._name, gauge._supplier.getAsLong());
+        }
+    }
+
+    /**
+     * Record how long closing a period took, to be recorded into the next
+     * period closed.
+     *
+     * @param closeNanos how long closing the period took in nanoseconds
+     */
+    public void recordClose(final long closeNanos) {
+        _closeNanos = closeNanos;
+    }
+
+    private final LongAdder _readWaitNanos = new LongAdder();
+    private final LongAdder _reads = new LongAdder();
+    private final List<Cumulative> _counters = new CopyOnWriteArrayList<>();
+    private final List<Cumulative> _gauges = new CopyOnWriteArrayList<>();
+    // Only accessed by the closing thread
+    private long _closeNanos = -1;
+
+    private static final String PREFIX = "codahale_extra.";
+
+    private static final class Cumulative {
+        private Cumulative(final String name, final LongSupplier supplier) {
+            _name = name;
+            _supplier = supplier;
+        }
+
+        private final String _name;
+        private final LongSupplier _supplier;
+        // Only accessed by the closing thread
+        private long _previous;
+    }
+
+    // Counts the samples recorded; resetting a counter only starts the sample the increment records
+    private static final class CountingMetrics implements Metrics {
+        private CountingMetrics(final Metrics metrics) {
+            _metrics = metrics;
+        }
+
+        @Override
+        public Counter createCounter(final String name) {
+            _samples.increment();
+            return _metrics.createCounter(name);
+        }
+
+        @Override
+        public void incrementCounter(final String name) {
+            _samples.increment();
+            _metrics.incrementCounter(name);
+        }
+
+        @Override
+        public void incrementCounter(final String name, final long value) {
+            _samples.increment();
+            _metrics.incrementCounter(name, value);
+        }
+
+        @Override
+        public void decrementCounter(final String name) {
+            _samples.increment();
+            _metrics.decrementCounter(name);
+        }
+
+        @Override
+        public void decrementCounter(final String name, final long value) {
+            _samples.increment();
+            _metrics.decrementCounter(name, value);
+        }
+
+        @Override
+        public void resetCounter(final String name) {
+            _metrics.resetCounter(name);
+        }
+
+        @Override
+        public Timer createTimer(final String name) {
+            _samples.increment();
+            return _metrics.createTimer(name);
+        }
+
+        @Override
+        public void startTimer(final String name) {
+            _metrics.startTimer(name);
+        }
+
+        @Override
+        public void stopTimer(final String name) {
+            _samples.increment();
+            _metrics.stopTimer(name);
+        }
+
+        @Override
+        public void setTimer(final String name, final long duration, final TimeUnit unit) {
+            _samples.increment();
+            _metrics.setTimer(name, duration, unit);
+        }
+
+        @Override
+        public void setTimer(final String name, final long duration, final Unit unit) {
+            _samples.increment();
+            _metrics.setTimer(name, duration, unit);
+        }
+
+        @Override
+        public void setGauge(final String name, final double value) {
+            _samples.increment();
+            _metrics.setGauge(name, value);
+        }
+
+        @Override
+        public void setGauge(final String name, final double value, final Unit unit) {
+            _samples.increment();
+            _metrics.setGauge(name, value, unit);
+        }
+
+        @Override
+        public void setGauge(final String name, final long value) {
+            _samples.increment();
+            _metrics.setGauge(name, value);
+        }
+
+        @Override
+        public void setGauge(final String name, final long value, final Unit unit) {
+            _samples.increment();
+            _metrics.setGauge(name, value, unit);
+        }
+
+        @Override
+        public void addAnnotation(final String key, final String value) {
+            _metrics.addAnnotation(key, value);
+        }
+
+        @Override
+        public void addAnnotations(final Map<String, String> map) {
+            _metrics.addAnnotations(map);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return _metrics.isOpen();
+        }
+
+        @Override
+        public void close() {
+            _metrics.close();
+        }
+
+        @Override
+        public Instant getOpenTime() {
+            return _metrics.getOpenTime();
+        }
+
+        @Override
+        public Instant getCloseTime() {
+            return _metrics.getCloseTime();
+        }
+
+        private final Metrics _metrics;
+        private final LongAdder _samples = new LongAdder();
+    }
+}
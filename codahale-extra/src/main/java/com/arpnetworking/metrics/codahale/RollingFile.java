@@ -0,0 +1,159 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The active file of a rolling sink and the files it has rolled. The active
+ * file is named by the name and extension; rolling renames it to include the
+ * time of the roll in UTC, for example query.2015-11-08-17-44-00.log, with a
+ * -N suffix on the time when rolled more than once in a second, and deletes the
+ * oldest rolled files beyond the history to keep. Only files named that way
+ * are pruned. Rolls are due at multiples of the interval on the wall clock.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+final class RollingFile {
+    RollingFile(
+            final File directory,
+            final String name,
+            final String extension,
+            final Duration interval,
+            final int maxHistory) {
+        if (interval.toMillis() < 1 || maxHistory < 0) {
+            throw new IllegalArgumentException(
+                    "Roll interval must be positive and history not negative; interval=" + interval
+                            + ", maxHistory=" + maxHistory);
+        }
+        _directory = directory.toPath();
+        _name = name;
+        _extension = extension;
+        _intervalMillis = interval.toMillis();
+        _maxHistory = maxHistory;
+        _active = _directory.resolve(name + extension);
+        _rolledPattern = Pattern.compile(
+                Pattern.quote(name + ".") + "(\\d{4}(?:-\\d{2}){5})(?:-(\\d{1,9}))?" + Pattern.quote(extension));
+    }
+
+    public Path getActive() {
+        return _active;
+    }
+
+    public boolean isDue(final long nowMillis) {
+        return nowMillis >= _rollAtMillis;
+    }
+
+    public void scheduleNext(final long nowMillis) {
+        _rollAtMillis = (nowMillis / _intervalMillis + 1) * _intervalMillis;
+    }
+
+    public void roll(final long nowMillis) throws IOException {
+        scheduleNext(nowMillis);
+        if (!Files.exists(_active)) {
+            return;
+        }
+        final String stamp = FORMAT.format(Instant.ofEpochMilli(nowMillis));
+        Path rolled = _directory.resolve(_name + "." + stamp + _extension);
+        for (int i = 1; Files.exists(rolled); ++i) {
+            rolled = _directory.resolve(_name + "." + stamp + "-" + i + _extension);
+        }
+        Files.move(_active, rolled);
+        prune();
+    }
+
+    private void prune() throws IOException {
+        final List<Rolled> rolled = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(_directory, _name + ".*" + _extension)) {
+            for (final Path file : files) {
+                final Rolled parsed = parse(file);
+                if (parsed != null) {
+                    rolled.add(parsed);
+                }
+            }
+        }
+        rolled.sort(Comparator.comparing(Rolled::getStamp).thenComparingInt(Rolled::getIndex));
+        for (int i = 0; i < rolled.size() - _maxHistory; ++i) {
+            Files.deleteIfExists(rolled.get(i).getFile());
+        }
+    }
+
+    // Returns null for files not rolled by this, such as those of other sinks sharing the name
+    private Rolled parse(final Path file) {
+        final Matcher matcher = _rolledPattern.matcher(String.valueOf(file.getFileName()));
+        if (!matcher.matches()) {
+            return null;
+        }
+        final Instant stamp;
+        try {
+            stamp = FORMAT.parse(matcher.group(1), Instant::from);
+        } catch (final DateTimeParseException e) {
+            return null;
+        }
+        final String index = matcher.group(2);
+        return new Rolled(file, stamp, index == null ? 0 : Integer.parseInt(index));
+    }
+
+    private final Path _directory;
+    private final String _name;
+    private final String _extension;
+    private final long _intervalMillis;
+    private final int _maxHistory;
+    private final Path _active;
+    private final Pattern _rolledPattern;
+    private long _rollAtMillis;
+
+    private static final DateTimeFormatter FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd-HH-mm-ss").withZone(ZoneOffset.UTC);
+
+    private static final class Rolled {
+        private Rolled(final Path file, final Instant stamp, final int index) {
+            _file = file;
+            _stamp = stamp;
+            _index = index;
+        }
+
+        public Path getFile() {
+            return _file;
+        }
+
+        public Instant getStamp() {
+            return _stamp;
+        }
+
+        public int getIndex() {
+            return _index;
+        }
+
+        private final Path _file;
+        private final Instant _stamp;
+        private final int _index;
+    }
+}
@@ -19,6 +19,7 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 
 /**
  * A class to ease the acquisition and use of an atomic ref, protected by a ReadWriteLock.
@@ -36,8 +37,21 @@ public class SafeRefLock<T> {
      * @param lock the lock protecting the reference
      */
     public SafeRefLock(final AtomicReference<T> reference, final ReadWriteLock lock) {
+        this(reference, lock, null);
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param reference the reference to get
+     * @param lock the lock protecting the reference
+     * @param readWaits notified of how long each acquisition of the read lock
+     * took in nanoseconds; null to not time them
+     */
+    public SafeRefLock(final AtomicReference<T> reference, final ReadWriteLock lock, final LongConsumer readWaits) {
         _reference = reference;
         _lock = lock;
+        _readWaits = readWaits;
     }
 
     /**
@@ -46,7 +60,20 @@ public class SafeRefLock<T> {
      * @param method The action to perform
      */
     public void readLocked(final Consumer<T> method) {
-        locking(method, _lock.readLock());
+        final Lock lock = _lock.readLock();
+        if (_readWaits == null) {
+            lock.lock();
+        } else {
+            final long start = System.nanoTime();
+            lock.lock();
+            _readWaits.accept(System.nanoTime() - start);
+        }
+        // Set under the lock so a check before the swap cannot clear it for the new reference; only
+        // written once per check so readers do not invalidate each other's cache line
+        if (!_read) {
+            _read = true;
+        }
+        run(method, lock);
     }
 
     /**
@@ -58,9 +85,25 @@ public class SafeRefLock<T> {
         locking(method, _lock.writeLock());
     }
 
+    /**
+     * Whether a read locked action has been performed since the last check.
+     * Clears the flag.
+     *
+     * @return true if a read locked action has been performed since the last check
+     */
+    public boolean checkAndClearRead() {
+        final boolean read = _read;
+        _read = false;
+        return read;
+    }
+
     private void locking(final Consumer<T> method, final Lock lock) {
+        lock.lock();
+        run(method, lock);
+    }
+
+    private void run(final Consumer<T> method, final Lock lock) {
         try {
-            lock.lock();
             final T resolved = _reference.get();
             method.accept(resolved);
         } finally {
@@ -70,4 +113,6 @@ public class SafeRefLock<T> {
 
     private final AtomicReference<T> _reference;
     private final ReadWriteLock _lock;
+    private final LongConsumer _readWaits;
+    private volatile boolean _read;
 }
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import java.util.function.LongConsumer;
+
+/**
+ * A growable array of samples which may be appended to by any thread and is
+ * drained by swapping in a spare array, so that steady state recording does
+ * not allocate.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+class SampleArray {
+    public synchronized void add(final long value) {
+        if (_size == _values.length) {
+            final long[] values = new long[_values.length * 2];
+            System.arraycopy(_values, 0, values, 0, _size);
+            _values = values;
+        }
+        _values[_size++] = value;
+    }
+
+    public synchronized void addAll(final long[] values, final int offset, final int length) {
+        if (_size + length > _values.length) {
+            final long[] grown = new long[Math.max(_values.length * 2, _size + length)];
+            System.arraycopy(_values, 0, grown, 0, _size);
+            _values = grown;
+        }
+        System.arraycopy(values, offset, _values, _size, length);
+        _size += length;
+    }
+
+    public void drain(final LongConsumer consumer) {
+        final long[] values;
+        final int size;
+        synchronized (this) {
+            if (_size == 0) {
+                return;
+            }
+            values = _values;
+            size = _size;
+            _values = _spare != null ? _spare : new long[values.length];
+            _spare = null;
+            _size = 0;
+        }
+        for (int i = 0; i < size; ++i) {
+            consumer.accept(values[i]);
+        }
+        synchronized (this) {
+            _spare = values;
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return _size == 0;
+    }
+
+    public synchronized void clear() {
+        _size = 0;
+    }
+
+    private long[] _values = new long[INITIAL_CAPACITY];
+    private long[] _spare;
+    private int _size;
+
+    private static final int INITIAL_CAPACITY = 16;
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Holds the samples recorded for a single metric until they are drained.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public interface SampleBuffer {
+    /**
+     * Record a sample.
+     *
+     * @param value the value of the sample
+     */
+    void record(long value);
+
+    /**
+     * Record a batch of samples. Implementations should record the batch at the
+     * cost of recording a single sample where they can.
+     *
+     * @param values the array holding the values of the samples
+     * @param offset the index of the first value to record
+     * @param length the number of values to record
+     */
+    default void record(final long[] values, final int offset, final int length) {
+        for (int i = offset; i < offset + length; ++i) {
+            record(values[i]);
+        }
+    }
+
+    /**
+     * Remove the samples recorded since the last drain and pass them to a consumer.
+     *
+     * @param consumer the consumer of the samples
+     */
+    void drain(LongConsumer consumer);
+
+    /**
+     * Whether any samples have been recorded since the last drain.
+     *
+     * @return true if no samples have been recorded since the last drain
+     */
+    boolean isEmpty();
+}
@@ -0,0 +1,125 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongConsumer;
+
+/**
+ * Holds the samples of many metrics in arrays of primitives indexed by a dense
+ * integer id assigned to each metric. Recording a sample appends it to the
+ * array of its id for the open period without hashing the name of the metric
+ * or looking it up; names are only resolved when the period is closed and the
+ * samples are drained. Each id is locked while its samples are appended and,
+ * once per drain, while its array is swapped for the spare array of the next
+ * period. Ids are recycled once released.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class SampleTable {
+    /**
+     * Assign an id.
+     *
+     * @return a new id with no samples
+     */
+    public synchronized int register() {
+        if (!_free.isEmpty()) {
+            return _free.pop();
+        }
+        AtomicReferenceArray<SampleArray> slots = _slots;
+        if (_size == slots.length()) {
+            final AtomicReferenceArray<SampleArray> grown = new AtomicReferenceArray<>(slots.length() * 2);
+            for (int i = 0; i < _size; ++i) {
+                grown.lazySet(i, slots.get(i));
+            }
+            slots = grown;
+        }
+        slots.set(_size, new SampleArray());
+        _slots = slots;
+        return _size++;
+    }
+
+    /**
+     * Release an id for reuse. Any samples held for it are discarded and it must
+     * no longer be recorded to.
+     *
+     * @param id the id to release
+     */
+    public synchronized void release(final int id) {
+        _slots.get(id).clear();
+        _free.push(id);
+    }
+
+    /**
+     * Record a sample.
+     *
+     * @param id the id of the metric
+     * @param value the value of the sample
+     */
+    public void record(final int id, final long value) {
+        _slots.get(id).add(value);
+    }
+
+    /**
+     * Record a batch of samples.
+     *
+     * @param id the id of the metric
+     * @param values the array holding the values of the samples
+     * @param offset the index of the first value to record
+     * @param length the number of values to record
+     */
+    public void record(final int id, final long[] values, final int offset, final int length) {
+        _slots.get(id).addAll(values, offset, length);
+    }
+
+    /**
+     * Remove the samples recorded for an id since the last drain and pass them to a consumer.
+     *
+     * @param id the id of the metric
+     * @param consumer the consumer of the samples
+     */
+    public void drain(final int id, final LongConsumer consumer) {
+        _slots.get(id).drain(consumer);
+    }
+
+    /**
+     * Whether any samples have been recorded for an id since the last drain.
+     *
+     * @param id the id of the metric
+     * @return true if no samples have been recorded since the last drain
+     */
+    public boolean isEmpty(final int id) {
+        return _slots.get(id).isEmpty();
+    }
+
+    /**
+     * The number of ids which have been assigned, including released ids.
+     *
+     * @return the number of ids
+     */
+    public synchronized int size() {
+        return _size;
+    }
+
+    // Written only while synchronized; slots are never replaced once assigned
+    private volatile AtomicReferenceArray<SampleArray> _slots = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    private int _size;
+    private final Deque<Integer> _free = new ArrayDeque<>();
+
+    private static final int INITIAL_CAPACITY = 64;
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thins the samples of a histogram or timer to a fixed rate. Each update is
+ * kept with a probability equal to the rate, decided with the random number
+ * generator of the recording thread so that recording threads share no state
+ * for the decision. Every update is counted whether or not it is kept, so the
+ * count stays exact. The kept samples are a uniform random subset of the
+ * updates, so their percentiles and mean estimate those of every update, while
+ * their minimum and maximum underestimate the spread of every update. Sums of
+ * the kept samples must be divided by the rate, which the sampled metrics
+ * publish alongside their counts.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class Sampler {
+    /**
+     * Public constructor.
+     *
+     * @param rate the probability of keeping each update; greater than zero and at most one
+     */
+    public Sampler(final double rate) {
+        if (!(rate > 0 && rate <= 1)) {
+            throw new IllegalArgumentException("Sample rate must be greater than zero and at most one; rate=" + rate);
+        }
+        _rate = rate;
+    }
+
+    /**
+     * Count an update and decide whether to keep its sample.
+     *
+     * @return true if the sample should be recorded
+     */
+    public boolean sample() {
+        _count.increment();
+        return _rate >= 1 || ThreadLocalRandom.current().nextDouble() < _rate;
+    }
+
+    /**
+     * The probability of keeping each update.
+     *
+     * @return the sample rate
+     */
+    public double getRate() {
+        return _rate;
+    }
+
+    /**
+     * The exact number of updates, kept or not.
+     *
+     * @return the number of updates
+     */
+    public long getCount() {
+        return _count.sum();
+    }
+
+    /**
+     * The number of updates since the previous call. Must only be called by the
+     * thread closing the periods.
+     *
+     * @return the number of updates in the closing period
+     */
+    public long drainCount() {
+        final long count = _count.sum();
+        final long updates = count - _drained;
+        _drained = count;
+        return updates;
+    }
+
+    /**
+     * Whether there have been no updates since the previous call to {@link #drainCount()}.
+     *
+     * @return true if there are no updates to drain
+     */
+    public boolean isEmpty() {
+        return _count.sum() == _drained;
+    }
+
+    private final double _rate;
+    private final LongAdder _count = new LongAdder();
+    // Only modified by the closing thread
+    private long _drained;
+}
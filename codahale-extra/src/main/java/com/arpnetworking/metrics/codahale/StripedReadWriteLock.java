@@ -0,0 +1,244 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A ReadWriteLock optimized for frequent short reads and rare writes. Readers
+ * only modify a reader count in a stripe selected by their thread, so unlike
+ * ReentrantReadWriteLock concurrent readers do not contend on a single shared
+ * word. Each stripe is padded onto its own cache lines. A writer announces
+ * itself and then waits for the reader count of every stripe to drain; readers
+ * arriving while a writer is active back off until it releases the lock.
+ *
+ * Read locks may be reentered; each thread counts its holds so that a reader
+ * reentering while a writer waits for it does not back off. Write locks are
+ * exclusive among writers but a thread holding the write lock must not acquire
+ * the read lock. Conditions are not supported.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class StripedReadWriteLock implements ReadWriteLock {
+    /**
+     * Public constructor. Creates four stripes per available processor since
+     * there are typically more recording threads than processors.
+     */
+    public StripedReadWriteLock() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * Public constructor.
+     *
+     * @param stripes the minimum number of reader stripes; rounded up to a power of two
+     */
+    public StripedReadWriteLock(final int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("Stripes must be positive; stripes=" + stripes);
+        }
+        final int size = Integer.highestOneBit(stripes - 1) << 1;
+        _mask = Math.max(size, 1) - 1;
+        _readers = new AtomicLongArray((_mask + 1) * PADDING);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Lock readLock() {
+        return _readLock;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Lock writeLock() {
+        return _writeLock;
+    }
+
+    private int stripe() {
+        return ((int) Thread.currentThread().getId() & _mask) * PADDING;
+    }
+
+    private boolean tryAcquireRead(final int stripe, final int[] holds) {
+        _readers.incrementAndGet(stripe);
+        // The writer waits for a reentering reader, so it must not back off
+        if (_writing && holds[0] == 0) {
+            _readers.decrementAndGet(stripe);
+            return false;
+        }
+        ++holds[0];
+        return true;
+    }
+
+    private boolean readersDrained() {
+        for (int i = 0; i < _readers.length(); i += PADDING) {
+            if (_readers.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean expired(final long deadline) {
+        return System.nanoTime() - deadline >= 0;
+    }
+
+    private final int _mask;
+    private final AtomicLongArray _readers;
+    private final ThreadLocal<int[]> _holds = ThreadLocal.withInitial(() -> new int[1]);
+    private final ReentrantLock _writer = new ReentrantLock();
+    private final Lock _readLock = new ReadLock();
+    private final Lock _writeLock = new WriteLock();
+    private volatile boolean _writing;
+
+    // Longs per stripe; 128 bytes keeps stripes off adjacent (prefetched) cache lines
+    private static final int PADDING = 16;
+
+    private final class ReadLock implements Lock {
+        @Override
+        public void lock() {
+            final int stripe = stripe();
+            final int[] holds = _holds.get();
+            while (!tryAcquireRead(stripe, holds)) {
+                Thread.yield();
+            }
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            final int stripe = stripe();
+            final int[] holds = _holds.get();
+            while (!tryAcquireRead(stripe, holds)) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                Thread.yield();
+            }
+        }
+
+        @Override
+        public boolean tryLock() {
+            return tryAcquireRead(stripe(), _holds.get());
+        }
+
+        @Override
+        public boolean tryLock(final long time, final TimeUnit unit) throws InterruptedException {
+            final long deadline = System.nanoTime() + unit.toNanos(time);
+            final int stripe = stripe();
+            final int[] holds = _holds.get();
+            while (!tryAcquireRead(stripe, holds)) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (expired(deadline)) {
+                    return false;
+                }
+                Thread.yield();
+            }
+            return true;
+        }
+
+        @Override
+        public void unlock() {
+            --_holds.get()[0];
+            _readers.decrementAndGet(stripe());
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private final class WriteLock implements Lock {
+        @Override
+        public void lock() {
+            _writer.lock();
+            _writing = true;
+            while (!readersDrained()) {
+                Thread.yield();
+            }
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            _writer.lockInterruptibly();
+            _writing = true;
+            while (!readersDrained()) {
+                if (Thread.interrupted()) {
+                    unlock();
+                    throw new InterruptedException();
+                }
+                Thread.yield();
+            }
+        }
+
+        @Override
+        public boolean tryLock() {
+            if (!_writer.tryLock()) {
+                return false;
+            }
+            _writing = true;
+            if (!readersDrained()) {
+                unlock();
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean tryLock(final long time, final TimeUnit unit) throws InterruptedException {
+            final long deadline = System.nanoTime() + unit.toNanos(time);
+            if (!_writer.tryLock(time, unit)) {
+                return false;
+            }
+            _writing = true;
+            while (!readersDrained()) {
+                final boolean interrupted = Thread.interrupted();
+                if (interrupted || expired(deadline)) {
+                    unlock();
+                    if (interrupted) {
+                        throw new InterruptedException();
+                    }
+                    return false;
+                }
+                Thread.yield();
+            }
+            return true;
+        }
+
+        @Override
+        public void unlock() {
+            if (_writer.getHoldCount() == 1) {
+                _writing = false;
+            }
+            _writer.unlock();
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongConsumer;
+
+/**
+ * A sample buffer where each recording thread appends to its own array of
+ * primitives. The per thread segment is only locked by its owner and, once
+ * per drain, by the draining thread, so recording threads never contend with
+ * each other. Drained segments swap in a spare array so that steady state
+ * recording does not allocate. Segments of threads which have terminated are
+ * discarded once drained.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class ThreadLocalSampleBuffer implements SampleBuffer {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void record(final long value) {
+        _segment.get().add(value);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void record(final long[] values, final int offset, final int length) {
+        _segment.get().addAll(values, offset, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drain(final LongConsumer consumer) {
+        final Iterator<Segment> iterator = _segments.iterator();
+        while (iterator.hasNext()) {
+            final Segment segment = iterator.next();
+            final boolean terminated = segment.isTerminated();
+            segment.drain(consumer);
+            if (terminated) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        for (final Segment segment : _segments) {
+            if (!segment.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Segment newSegment() {
+        final Segment segment = new Segment(Thread.currentThread());
+        _segments.add(segment);
+        return segment;
+    }
+
+    private final Queue<Segment> _segments = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Segment> _segment = ThreadLocal.withInitial(this::newSegment);
+
+    private static final class Segment extends SampleArray {
+        private Segment(final Thread owner) {
+            _owner = new WeakReference<>(owner);
+        }
+
+        public boolean isTerminated() {
+            final Thread owner = _owner.get();
+            return owner == null || !owner.isAlive();
+        }
+
+        private final WeakReference<Thread> _owner;
+    }
+}
@@ -17,19 +17,29 @@ package com.arpnetworking.metrics.codahale;
 
 import com.arpnetworking.metrics.Metrics;
 import com.codahale.metrics.Clock;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import com.codahale.metrics.Reservoir;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
- * Represents a Timer that is wrapped to output Arpnetworking Metrics.
+ * Represents a Timer that is wrapped to output Arpnetworking Metrics. The samples are either recorded directly to the open metrics
+ * or held in a buffer, in nanoseconds, until drained into the outgoing metrics.
+ *
+ * Besides {@link #time()}, events can be timed without allocating a context through {@link #start()} and
+ * {@link #recordSince(long)}, or by passing the event to {@link #time(Runnable)} or {@link #time(Callable)}.
+ *
+ * A timer with a {@link Sampler} only records the kept samples to the metrics and the reservoir. Its count stays exact,
+ * its Codahale rates are scaled by the inverse of the sample rate, and the number of updates in each period is
+ * recorded as the counter of the name suffixed with {@code .count}.
  *
  * @author Brandon Arp (barp at groupon dot com)
  */
 @SuppressFBWarnings("NM_SAME_SIMPLE_NAME_AS_SUPERCLASS")
-public class Timer extends com.codahale.metrics.Timer {
+public class Timer extends com.codahale.metrics.Timer implements Drainable {
     /**
      * Public constructor.
      *
@@ -38,9 +48,38 @@ public class Timer extends com.codahale.metrics.Timer {
      * @param clock the clock to use for timing
      */
     public Timer(final String name, final SafeRefLock<Metrics> lock, final Clock clock) {
+        this(name, lock, null, new ExponentiallyDecayingReservoir(), clock, false, null);
+    }
+
+    /**
+     * Package private constructor with the options of the registry.
+     *
+     * @param name name of the metric
+     * @param lock lock for the metrics reference; only used without a buffer
+     * @param buffer buffer holding the samples in nanoseconds until drained, or null to record to the open metrics
+     * @param reservoir the reservoir for the Codahale snapshot
+     * @param clock the clock to use for timing
+     * @param tsdOnly whether to skip the Codahale rates and snapshot; the count is still maintained but the rates are
+     * always zero and the snapshot is always empty
+     * @param sampler thins the recorded samples, or null to record every sample
+     */
+    Timer(
+            final String name,
+            final SafeRefLock<Metrics> lock,
+            final SampleBuffer buffer,
+            final Reservoir reservoir,
+            final Clock clock,
+            final boolean tsdOnly,
+            final Sampler sampler) {
+        super(reservoir, clock);
         _name = name;
         _lock = lock;
+        _buffer = buffer;
         _clock = clock;
+        _count = tsdOnly ? new LongAdder() : null;
+        _sampler = sampler;
+        _countName = sampler != null ? name + ".count" : null;
+        _rateName = sampler != null ? name + ".sample_rate" : null;
     }
 
     /**
@@ -48,31 +87,224 @@ public class Timer extends com.codahale.metrics.Timer {
      */
     @Override
     public void update(final long duration, final TimeUnit unit) {
-        _lock.readLocked(metrics -> metrics.setTimer(_name, duration, unit));
-        super.update(duration, unit);
+        touch();
+        if (_sampler != null && !_sampler.sample()) {
+            return;
+        }
+        if (_buffer != null) {
+            _buffer.record(unit.toNanos(duration));
+        } else {
+            _lock.readLocked(metrics -> metrics.setTimer(_name, duration, unit));
+        }
+        if (_count != null) {
+            _count.increment();
+        } else {
+            super.update(duration, unit);
+        }
     }
 
+    /**
+     * Record a batch of durations. The batch is recorded with a single acquisition of the lock, or of the buffer when the
+     * durations are in nanoseconds, and, when only recording to TSD, the count is incremented once. A sampled timer
+     * samples each duration as if updated individually.
+     *
+     * @param durations the array holding the durations
+     * @param offset the index of the first duration
+     * @param length the number of durations
+     * @param unit the unit of the durations
+     */
+    public void update(final long[] durations, final int offset, final int length, final TimeUnit unit) {
+        if (offset < 0 || length < 0 || length > durations.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (length == 0) {
+            return;
+        }
+        if (_sampler != null) {
+            for (int i = offset; i < offset + length; ++i) {
+                update(durations[i], unit);
+            }
+            return;
+        }
+        touch();
+        if (_buffer != null) {
+            recordNanos(durations, offset, length, unit);
+        } else {
+            _lock.readLocked(metrics -> {
+                        for (int i = offset; i < offset + length; ++i) {
+                            metrics.setTimer(_name, durations[i], unit);
+                        }
+                    });
+        }
+        if (_count != null) {
+            _count.add(length);
+        } else {
+            for (int i = offset; i < offset + length; ++i) {
+                super.update(durations[i], unit);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
     @Override
-    public Context time() {
-        try {
-            return CONTEXT_CONSTRUCTOR.newInstance(this, _clock);
-        } catch (final InstantiationException | IllegalAccessException | InvocationTargetException e) {
-            throw new RuntimeException(e);
+    public long getCount() {
+        if (_sampler != null) {
+            return _sampler.getCount();
+        }
+        if (_count != null) {
+            return _count.sum();
         }
+        return super.getCount();
     }
 
-    private final String _name;
-    private final SafeRefLock<Metrics> _lock;
-    private final Clock _clock;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getMeanRate() {
+        return scale(super.getMeanRate());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getOneMinuteRate() {
+        return scale(super.getOneMinuteRate());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getFiveMinuteRate() {
+        return scale(super.getFiveMinuteRate());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getFifteenMinuteRate() {
+        return scale(super.getFifteenMinuteRate());
+    }
 
-    private static final Constructor<Context> CONTEXT_CONSTRUCTOR;
-    static {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drainTo(final Metrics metrics) {
+        if (_buffer != null) {
+            _buffer.drain(value -> metrics.setTimer(_name, value, TimeUnit.NANOSECONDS));
+        }
+        if (_sampler != null) {
+            final long updates = _sampler.drainCount();
+            if (updates > 0) {
+                metrics.incrementCounter(_countName, updates);
+                // The samples are thinned, so sums of them must be divided by the rate
+                metrics.setGauge(_rateName, _sampler.getRate());
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isEmpty() {
+        return (_buffer == null || _buffer.isEmpty()) && (_sampler == null || _sampler.isEmpty());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean checkAndClearTouched() {
+        final boolean touched = _touched;
+        if (touched) {
+            _touched = false;
+        }
+        return touched;
+    }
+
+    private void recordNanos(final long[] durations, final int offset, final int length, final TimeUnit unit) {
+        if (unit == TimeUnit.NANOSECONDS) {
+            _buffer.record(durations, offset, length);
+        } else {
+            for (int i = offset; i < offset + length; ++i) {
+                _buffer.record(unit.toNanos(durations[i]));
+            }
+        }
+    }
+
+    private double scale(final double rate) {
+        return _sampler != null ? rate / _sampler.getRate() : rate;
+    }
+
+    private void touch() {
+        // Avoid writing the shared cache line on every sample
+        if (!_touched) {
+            _touched = true;
+        }
+    }
+
+    /**
+     * Start timing an event. Pass the returned tick to {@link #recordSince(long)} once the event completes.
+     *
+     * @return the current tick of the clock in nanoseconds
+     */
+    public long start() {
+        return _clock.getTick();
+    }
+
+    /**
+     * Record the duration of an event started at the given tick.
+     *
+     * @param startNanos the tick of the clock in nanoseconds when the event started, see {@link #start()}
+     * @return the recorded duration in nanoseconds
+     */
+    public long recordSince(final long startNanos) {
+        final long elapsed = _clock.getTick() - startNanos;
+        update(elapsed, TimeUnit.NANOSECONDS);
+        return elapsed;
+    }
+
+    /**
+     * Time and run an event.
+     *
+     * @param event the event to time
+     */
+    public void time(final Runnable event) {
+        final long startNanos = _clock.getTick();
         try {
-            CONTEXT_CONSTRUCTOR = Context.class.getDeclaredConstructor(com.codahale.metrics.Timer.class, Clock.class);
-            CONTEXT_CONSTRUCTOR.setAccessible(true);
-        } catch (final NoSuchMethodException e) {
-            throw new RuntimeException(e);
+            event.run();
+        } finally {
+            recordSince(startNanos);
         }
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T time(final Callable<T> event) throws Exception {
+        final long startNanos = _clock.getTick();
+        try {
+            return event.call();
+        } finally {
+            recordSince(startNanos);
+        }
     }
+
+    private final String _name;
+    private final SafeRefLock<Metrics> _lock;
+    private final SampleBuffer _buffer;
+    private final Clock _clock;
+    private final LongAdder _count;
+    private final Sampler _sampler;
+    private final String _countName;
+    private final String _rateName;
+    private volatile boolean _touched;
 }
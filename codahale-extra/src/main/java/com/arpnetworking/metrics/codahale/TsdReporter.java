@@ -0,0 +1,218 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.Unit;
+import com.arpnetworking.metrics.Units;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Counting;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricFilter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.ScheduledReporter;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A reporter publishing an unmodified Codahale registry to ArpNetworking
+ * metrics. Instead of recording every call as the {@link MetricRegistry}
+ * subclass does, the registry is read once per period, so recording has no
+ * overhead beyond that of Codahale itself but only aggregates are published.
+ * Each report creates one metrics instance in which:
+ *
+ * <ul>
+ * <li>numeric gauges are recorded as gauges;</li>
+ * <li>counters and meters are recorded as a counter sample of the change in
+ * their count since the previous report;</li>
+ * <li>histograms and timers are recorded as a counter sample of the change in
+ * their count, name.count, and, if it changed, as gauges of the statistics of
+ * their snapshot: name.min, name.max, name.mean, name.stddev, name.p50,
+ * name.p75, name.p95, name.p99 and name.p999. Timer statistics are in
+ * nanoseconds.</li>
+ * </ul>
+ *
+ * The snapshot statistics cover whatever the reservoir of each histogram or
+ * timer holds, which with Codahale's default reservoir is biased towards the
+ * last five minutes rather than the last period.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public final class TsdReporter extends ScheduledReporter {
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public synchronized void report(
+            final SortedMap<String, Gauge> gauges,
+            final SortedMap<String, Counter> counters,
+            final SortedMap<String, Histogram> histograms,
+            final SortedMap<String, Meter> meters,
+            final SortedMap<String, Timer> timers) {
+        final Metrics metrics = _metricsFactory.create();
+        final Map<String, Long> counts = new LinkedHashMap<>();
+        for (final Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            reportGauge(metrics, entry.getKey(), entry.getValue());
+        }
+        for (final Map.Entry<String, Counter> entry : counters.entrySet()) {
+            reportCount(metrics, entry.getKey(), entry.getValue(), counts);
+        }
+        for (final Map.Entry<String, Meter> entry : meters.entrySet()) {
+            reportCount(metrics, entry.getKey(), entry.getValue(), counts);
+        }
+        for (final Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            if (reportCount(metrics, entry.getKey() + ".count", entry.getValue(), counts)) {
+                reportSnapshot(metrics, entry.getKey(), entry.getValue().getSnapshot(), null);
+            }
+        }
+        for (final Map.Entry<String, Timer> entry : timers.entrySet()) {
+            if (reportCount(metrics, entry.getKey() + ".count", entry.getValue(), counts)) {
+                reportSnapshot(metrics, entry.getKey(), entry.getValue().getSnapshot(), Units.NANOSECOND);
+            }
+        }
+        // Only the counts of metrics still registered are kept
+        _counts = counts;
+        metrics.close();
+    }
+
+    private static void reportGauge(final Metrics metrics, final String name, final Gauge<?> gauge) {
+        try {
+            final Object value = gauge.getValue();
+            if (value instanceof Number) {
+                metrics.setGauge(name, ((Number) value).doubleValue());
+            }
+            //CHECKSTYLE.OFF: IllegalCatch - we need to catch everything
+        } catch (final Exception e) {
+            //CHECKSTYLE.ON: IllegalCatch
+            System.err.println(e);
+            e.printStackTrace();
+        }
+    }
+
+    private boolean reportCount(
+            final Metrics metrics,
+            final String name,
+            final Counting counting,
+            final Map<String, Long> counts) {
+        final long count = counting.getCount();
+        final Long previous = _counts.get(name);
+        counts.put(name, count);
+        final long delta = previous == null ? count : count - previous;
+        metrics.incrementCounter(name, delta);
+        return delta != 0;
+    }
+
+    private static void reportSnapshot(final Metrics metrics, final String name, final Snapshot snapshot, final Unit unit) {
+        setGauge(metrics, name + ".min", snapshot.getMin(), unit);
+        setGauge(metrics, name + ".max", snapshot.getMax(), unit);
+        setGauge(metrics, name + ".mean", snapshot.getMean(), unit);
+        setGauge(metrics, name + ".stddev", snapshot.getStdDev(), unit);
+        setGauge(metrics, name + ".p50", snapshot.getMedian(), unit);
+        setGauge(metrics, name + ".p75", snapshot.get75thPercentile(), unit);
+        setGauge(metrics, name + ".p95", snapshot.get95thPercentile(), unit);
+        setGauge(metrics, name + ".p99", snapshot.get99thPercentile(), unit);
+        setGauge(metrics, name + ".p999", snapshot.get999thPercentile(), unit);
+    }
+
+    private static void setGauge(final Metrics metrics, final String name, final double value, final Unit unit) {
+        if (unit == null) {
+            metrics.setGauge(name, value);
+        } else {
+            metrics.setGauge(name, value, unit);
+        }
+    }
+
+    private TsdReporter(final Builder builder) {
+        super(checkRegistry(builder._registry), "tsd-reporter", builder._filter, TimeUnit.SECONDS, TimeUnit.NANOSECONDS);
+        _metricsFactory = builder._metricsFactory != null ? builder._metricsFactory : MetricsFactories.createDefault();
+    }
+
+    private static MetricRegistry checkRegistry(final MetricRegistry registry) {
+        if (registry == null) {
+            throw new IllegalArgumentException("Registry must be set");
+        }
+        return registry;
+    }
+
+    private final MetricsFactory _metricsFactory;
+    private Map<String, Long> _counts = Collections.emptyMap();
+
+    /**
+     * Builder for {@link TsdReporter}.
+     *
+     * @author Brandon Arp (barp at groupon dot com)
+     */
+    public static final class Builder {
+        /**
+         * Create the reporter. Reporting begins once it is started with
+         * {@link ScheduledReporter#start(long, TimeUnit)}.
+         *
+         * @return a new {@link TsdReporter}
+         */
+        public TsdReporter build() {
+            return new TsdReporter(this);
+        }
+
+        /**
+         * Set the registry to report. Required.
+         *
+         * @param value the registry
+         * @return this builder
+         */
+        public Builder setRegistry(final MetricRegistry value) {
+            _registry = value;
+            return this;
+        }
+
+        /**
+         * Set the metrics factory to report to. Optional; defaults to the
+         * factory configured by the system properties, see {@link MetricsFactories}.
+         *
+         * @param value the metrics factory
+         * @return this builder
+         */
+        public Builder setMetricsFactory(final MetricsFactory value) {
+            _metricsFactory = value;
+            return this;
+        }
+
+        /**
+         * Set the filter selecting the metrics to report. Optional; defaults to
+         * all metrics.
+         *
+         * @param value the filter
+         * @return this builder
+         */
+        public Builder setFilter(final MetricFilter value) {
+            _filter = value;
+            return this;
+        }
+
+        private MetricRegistry _registry;
+        private MetricsFactory _metricsFactory;
+        private MetricFilter _filter = MetricFilter.ALL;
+    }
+}
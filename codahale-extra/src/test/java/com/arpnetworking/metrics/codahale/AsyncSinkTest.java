@@ -0,0 +1,297 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Sink;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the AsyncSink class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class AsyncSinkTest {
+    @Test
+    public void writesOnWriterThread() throws InterruptedException {
+        final BlockingSink delegate = new BlockingSink(0);
+        final AsyncSink sink = new AsyncSink.Builder().setSink(delegate).build();
+        final Event first = Mockito.mock(Event.class);
+        final Event second = Mockito.mock(Event.class);
+        sink.record(first);
+        sink.record(second);
+        Assert.assertTrue(sink.flush(Duration.ofSeconds(10)));
+        Assert.assertEquals(2, delegate._recorded.size());
+        Assert.assertSame(first, delegate._recorded.get(0));
+        Assert.assertSame(second, delegate._recorded.get(1));
+        Assert.assertEquals("metrics-sink-writer", delegate._thread);
+        Assert.assertTrue(delegate._flushes.get() >= 1);
+        Assert.assertEquals(0, sink.getQueued());
+        Assert.assertEquals(0, sink.getDropped());
+        sink.close();
+    }
+
+    @Test
+    public void dropNewest() throws InterruptedException {
+        final BlockingSink delegate = new BlockingSink(1);
+        final AsyncSink sink = new AsyncSink.Builder()
+                .setSink(delegate)
+                .setCapacity(1)
+                .build();
+        final Event blocked = Mockito.mock(Event.class);
+        final Event queued = Mockito.mock(Event.class);
+        sink.record(blocked);
+        Assert.assertTrue(delegate._entered.await(10, TimeUnit.SECONDS));
+        sink.record(queued);
+        sink.record(Mockito.mock(Event.class));
+        Assert.assertEquals(1, sink.getQueued());
+        Assert.assertEquals(1, sink.getDropped());
+        Assert.assertFalse(sink.flush(Duration.ofMillis(1)));
+
+        delegate._release.countDown();
+        Assert.assertTrue(sink.flush(Duration.ofSeconds(10)));
+        Assert.assertEquals(2, delegate._recorded.size());
+        Assert.assertSame(queued, delegate._recorded.get(1));
+        sink.close();
+    }
+
+    @Test
+    public void dropOldest() throws InterruptedException {
+        final BlockingSink delegate = new BlockingSink(1);
+        final AsyncSink sink = new AsyncSink.Builder()
+                .setSink(delegate)
+                .setCapacity(1)
+                .setOverflowPolicy(OverflowPolicy.DROP_OLDEST)
+                .build();
+        final Event newest = Mockito.mock(Event.class);
+        sink.record(Mockito.mock(Event.class));
+        Assert.assertTrue(delegate._entered.await(10, TimeUnit.SECONDS));
+        sink.record(Mockito.mock(Event.class));
+        sink.record(newest);
+        Assert.assertEquals(1, sink.getQueued());
+        Assert.assertEquals(1, sink.getDropped());
+
+        delegate._release.countDown();
+        Assert.assertTrue(sink.flush(Duration.ofSeconds(10)));
+        Assert.assertEquals(2, delegate._recorded.size());
+        Assert.assertSame(newest, delegate._recorded.get(1));
+        sink.close();
+    }
+
+    @Test
+    public void block() throws InterruptedException {
+        final BlockingSink delegate = new BlockingSink(1);
+        final AsyncSink sink = new AsyncSink.Builder()
+                .setSink(delegate)
+                .setCapacity(1)
+                .setOverflowPolicy(OverflowPolicy.BLOCK)
+                .build();
+        sink.record(Mockito.mock(Event.class));
+        Assert.assertTrue(delegate._entered.await(10, TimeUnit.SECONDS));
+        sink.record(Mockito.mock(Event.class));
+        final CountDownLatch recorded = new CountDownLatch(1);
+        final Thread thread = new Thread(() -> {
+            sink.record(Mockito.mock(Event.class));
+            recorded.countDown();
+        });
+        thread.start();
+        Assert.assertFalse(recorded.await(50, TimeUnit.MILLISECONDS));
+
+        delegate._release.countDown();
+        Assert.assertTrue(recorded.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(sink.flush(Duration.ofSeconds(10)));
+        Assert.assertEquals(3, delegate._recorded.size());
+        Assert.assertEquals(0, sink.getDropped());
+        sink.close();
+    }
+
+    @Test
+    public void blockInterrupted() throws InterruptedException {
+        final BlockingSink delegate = new BlockingSink(1);
+        final AsyncSink sink = new AsyncSink.Builder()
+                .setSink(delegate)
+                .setCapacity(1)
+                .setOverflowPolicy(OverflowPolicy.BLOCK)
+                .build();
+        sink.record(Mockito.mock(Event.class));
+        Assert.assertTrue(delegate._entered.await(10, TimeUnit.SECONDS));
+        sink.record(Mockito.mock(Event.class));
+        Thread.currentThread().interrupt();
+        sink.record(Mockito.mock(Event.class));
+        Assert.assertTrue(Thread.interrupted());
+        Assert.assertEquals(1, sink.getDropped());
+        delegate._release.countDown();
+        sink.close();
+    }
+
+    @Test
+    public void closeDrainsAndClosesSink() throws InterruptedException {
+        final BlockingSink delegate = new BlockingSink(1);
+        final AsyncSink sink = new AsyncSink.Builder()
+                .setSink(delegate)
+                .setBatchSize(1)
+                .build();
+        sink.record(Mockito.mock(Event.class));
+        Assert.assertTrue(delegate._entered.await(10, TimeUnit.SECONDS));
+        sink.record(Mockito.mock(Event.class));
+        // The writer is blocked in the sink
+        Assert.assertFalse(sink.close(Duration.ofMillis(50)));
+        sink.record(Mockito.mock(Event.class));
+        Assert.assertEquals(1, sink.getDropped());
+
+        delegate._release.countDown();
+        Assert.assertTrue(sink.close(Duration.ofSeconds(10)));
+        Assert.assertEquals(0, delegate._closed.getCount());
+        Assert.assertEquals(2, delegate._recorded.size());
+        Assert.assertEquals(2, delegate._flushes.get());
+    }
+
+    @Test
+    public void closeWaitsForSinkToClose() throws InterruptedException {
+        final BlockingSink delegate = new BlockingSink(0);
+        final AsyncSink sink = new AsyncSink.Builder()
+                .setSink(delegate)
+                .build();
+        sink.record(Mockito.mock(Event.class));
+        sink.record(Mockito.mock(Event.class));
+        sink.close();
+        // Closed before close returns rather than on the next poll of the writer
+        Assert.assertEquals(0, delegate._closed.getCount());
+        Assert.assertEquals(2, delegate._recorded.size());
+        Assert.assertEquals(0, sink.getQueued());
+        sink.record(Mockito.mock(Event.class));
+        Assert.assertEquals(1, sink.getDropped());
+        Assert.assertTrue(sink.flush(Duration.ofMillis(1)));
+        Assert.assertTrue(sink.close(Duration.ofMillis(1)));
+    }
+
+    @Test
+    public void closeInterrupted() {
+        final BlockingSink delegate = new BlockingSink(1);
+        final AsyncSink sink = new AsyncSink.Builder()
+                .setSink(delegate)
+                .build();
+        sink.record(Mockito.mock(Event.class));
+        Thread.currentThread().interrupt();
+        sink.close();
+        Assert.assertTrue(Thread.interrupted());
+        delegate._release.countDown();
+    }
+
+    @Test
+    public void sinkFailuresDoNotStopWriter() throws InterruptedException {
+        final Sink delegate = Mockito.mock(Sink.class);
+        final Event failing = Mockito.mock(Event.class);
+        final Event event = Mockito.mock(Event.class);
+        Mockito.doThrow(new IllegalStateException()).when(delegate).record(failing);
+        final AsyncSink sink = new AsyncSink.Builder().setSink(delegate).setBatchSize(1).build();
+        sink.record(failing);
+        sink.record(event);
+        Assert.assertTrue(sink.flush(Duration.ofSeconds(10)));
+        Mockito.verify(delegate).record(event);
+        sink.close();
+    }
+
+    @Test
+    public void closeFailure() throws InterruptedException {
+        final CountDownLatch closed = new CountDownLatch(1);
+        final AsyncSink sink = new AsyncSink.Builder()
+                .setSink(new FailingCloseSink(closed))
+                .build();
+        sink.close();
+        Assert.assertTrue(closed.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sinkRequired() {
+        new AsyncSink.Builder().build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityInvalid() {
+        new AsyncSink.Builder().setSink(Mockito.mock(Sink.class)).setCapacity(0).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchSizeInvalid() {
+        new AsyncSink.Builder().setSink(Mockito.mock(Sink.class)).setBatchSize(0).build();
+    }
+
+    private static final class BlockingSink implements Sink, Flushable, Closeable {
+        private BlockingSink(final int blocked) {
+            _release = new CountDownLatch(blocked);
+        }
+
+        @Override
+        public void record(final Event event) {
+            _thread = Thread.currentThread().getName();
+            _recorded.add(event);
+            _entered.countDown();
+            try {
+                Assert.assertTrue(_release.await(10, TimeUnit.SECONDS));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void flush() {
+            _flushes.incrementAndGet();
+        }
+
+        @Override
+        public void close() {
+            _closed.countDown();
+        }
+
+        private final List<Event> _recorded = new CopyOnWriteArrayList<>();
+        private final AtomicInteger _flushes = new AtomicInteger();
+        private final CountDownLatch _entered = new CountDownLatch(1);
+        private final CountDownLatch _release;
+        private final CountDownLatch _closed = new CountDownLatch(1);
+        private volatile String _thread;
+    }
+
+    private static final class FailingCloseSink implements Sink, Closeable {
+        private FailingCloseSink(final CountDownLatch closed) {
+            _closed = closed;
+        }
+
+        @Override
+        public void record(final Event event) {
+        }
+
+        @Override
+        public void close() throws IOException {
+            _closed.countDown();
+            throw new IOException();
+        }
+
+        private final CountDownLatch _closed;
+    }
+}
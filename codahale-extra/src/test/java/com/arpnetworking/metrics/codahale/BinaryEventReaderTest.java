@@ -0,0 +1,249 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.CompoundUnit;
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Units;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the BinaryEventReader class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class BinaryEventReaderTest {
+    @Test
+    public void roundTrip() throws IOException {
+        final Event first = createEvent("first");
+        final Event second = createEvent("second");
+        final BinaryEventReader reader = new BinaryEventReader(new ByteArrayInputStream(encode(first, second)));
+        final Event firstRead = reader.read();
+        Assert.assertEquals(toJson(first), toJson(firstRead));
+        Assert.assertEquals(toJson(second), toJson(reader.read()));
+        Assert.assertNull(reader.read());
+        reader.close();
+
+        final Quantity rate = firstRead.getTimerSamples().get("rate").get(0);
+        Assert.assertEquals("byte*bit/second", rate.getUnit().getName());
+        Assert.assertNull(firstRead.getGaugeSamples().get("gauge").get(2).getUnit());
+    }
+
+    @Test
+    public void empty() throws IOException {
+        Assert.assertNull(new BinaryEventReader(new ByteArrayInputStream(new byte[0])).read());
+        Assert.assertNull(new BinaryEventReader(new ByteArrayInputStream(BinaryEventReader.HEADER)).read());
+    }
+
+    @Test
+    public void slowStream() throws IOException {
+        final byte[] bytes = encode(createEvent("first"));
+        final BinaryEventReader reader = new BinaryEventReader(new SlowInputStream(bytes));
+        Assert.assertEquals(toJson(createEvent("first")), toJson(reader.read()));
+    }
+
+    @Test
+    public void toJsonConverts() throws IOException {
+        final StringWriter json = new StringWriter();
+        BinaryEventReader.toJson(new ByteArrayInputStream(encode(createEvent("first"), createEvent("second"))), json);
+        Assert.assertEquals(
+                toJson(createEvent("first")) + "\n" + toJson(createEvent("second")) + "\n",
+                json.toString());
+    }
+
+    @Test
+    public void mainConvertsFilesAndStandardInput() throws IOException {
+        final File file = _folder.newFile();
+        Files.write(file.toPath(), encode(createEvent("first")));
+        final PrintStream out = System.out;
+        final InputStream in = System.in;
+        final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(captured, true, "UTF-8"));
+            System.setIn(new ByteArrayInputStream(encode(createEvent("second"))));
+            BinaryEventReader.main(new String[] {file.getPath()});
+            BinaryEventReader.main(new String[0]);
+        } finally {
+            System.setOut(out);
+            System.setIn(in);
+        }
+        Assert.assertEquals(
+                toJson(createEvent("first")) + "\n" + toJson(createEvent("second")) + "\n",
+                captured.toString("UTF-8"));
+    }
+
+    @Test(expected = IOException.class)
+    public void notBinary() throws IOException {
+        new BinaryEventReader(new ByteArrayInputStream("{\"version\":\"2f\"}".getBytes(StandardCharsets.UTF_8))).read();
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedVersion() throws IOException {
+        new BinaryEventReader(new ByteArrayInputStream(new byte[] {'T', 'S', 'D', 'B', 2})).read();
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedHeader() throws IOException {
+        new BinaryEventReader(new ByteArrayInputStream(new byte[] {'T', 'S'})).read();
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedRecord() throws IOException {
+        final byte[] bytes = encode(createEvent("first"));
+        new BinaryEventReader(new ByteArrayInputStream(Arrays.copyOf(bytes, bytes.length - 1))).read();
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedLength() throws IOException {
+        new BinaryEventReader(new ByteArrayInputStream(record(0x80))).read();
+    }
+
+    @Test(expected = IOException.class)
+    public void recordTooLong() throws IOException {
+        new BinaryEventReader(new ByteArrayInputStream(record(0xFF, 0xFF, 0xFF, 0xFF, 0x7F))).read();
+    }
+
+    @Test(expected = IOException.class)
+    public void lengthMalformed() throws IOException {
+        new BinaryEventReader(new ByteArrayInputStream(
+                record(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01))).read();
+    }
+
+    @Test(expected = IOException.class)
+    public void varintMalformed() throws IOException {
+        new BinaryEventReader(new ByteArrayInputStream(
+                record(11, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01))).read();
+    }
+
+    @Test(expected = IOException.class)
+    public void countOverrunsRecord() throws IOException {
+        new BinaryEventReader(new ByteArrayInputStream(record(1, 5))).read();
+    }
+
+    @Test(expected = IOException.class)
+    public void stringOverrunsRecord() throws IOException {
+        new BinaryEventReader(new ByteArrayInputStream(record(3, 1, 9, 'a'))).read();
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownString() throws IOException {
+        new BinaryEventReader(new ByteArrayInputStream(record(3, 1, 4, 1))).read();
+    }
+
+    @Test(expected = IOException.class)
+    public void recordTruncatedWithin() throws IOException {
+        new BinaryEventReader(new ByteArrayInputStream(record(1, 0))).read();
+    }
+
+    private static byte[] record(final int... bytes) {
+        final byte[] record = Arrays.copyOf(BinaryEventReader.HEADER, BinaryEventReader.HEADER.length + bytes.length);
+        for (int i = 0; i < bytes.length; ++i) {
+            record[BinaryEventReader.HEADER.length + i] = (byte) bytes[i];
+        }
+        return record;
+    }
+
+    private static byte[] encode(final Event... events) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(BinaryEventReader.HEADER);
+        final BinaryEventWriter writer = new BinaryEventWriter();
+        for (final Event event : events) {
+            writer.encode(event);
+            int length = writer.getSize();
+            while ((length & ~0x7F) != 0) {
+                bytes.write((length & 0x7F) | 0x80);
+                length >>>= 7;
+            }
+            bytes.write(length);
+            bytes.write(writer.getBuffer(), 0, writer.getSize());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Event createEvent(final String id) {
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        annotations.put("_id", id);
+        annotations.put("_host", "hé");
+        final Map<String, List<Quantity>> counters = new LinkedHashMap<>();
+        counters.put("c1", Arrays.asList(
+                QueryLogJsonTest.createQuantity(1L, null),
+                QueryLogJsonTest.createQuantity(-2, null),
+                QueryLogJsonTest.createQuantity(Long.MIN_VALUE, null),
+                QueryLogJsonTest.createQuantity((short) 3, null),
+                QueryLogJsonTest.createQuantity((byte) 4, null)));
+        counters.put("c2", Collections.singletonList(QueryLogJsonTest.createQuantity(Long.MAX_VALUE, null)));
+        final Map<String, List<Quantity>> gauges = Collections.singletonMap(
+                "gauge",
+                Arrays.asList(
+                        QueryLogJsonTest.createQuantity(1.5d, Units.BYTE),
+                        QueryLogJsonTest.createQuantity(Double.NaN, Units.BYTE),
+                        QueryLogJsonTest.createQuantity(2.5f, null)));
+        final CompoundUnit rate = Mockito.mock(CompoundUnit.class);
+        Mockito.when(rate.getNumeratorUnits()).thenReturn(Arrays.asList(Units.BYTE, Units.BIT));
+        Mockito.when(rate.getDenominatorUnits()).thenReturn(Collections.singletonList(Units.SECOND));
+        final CompoundUnit perSecond = Mockito.mock(CompoundUnit.class);
+        Mockito.when(perSecond.getNumeratorUnits()).thenReturn(Collections.emptyList());
+        Mockito.when(perSecond.getDenominatorUnits()).thenReturn(Collections.singletonList(Units.SECOND));
+        final Map<String, List<Quantity>> timers = new LinkedHashMap<>();
+        timers.put("rate", Arrays.asList(
+                QueryLogJsonTest.createQuantity(7L, rate),
+                QueryLogJsonTest.createQuantity(8L, rate),
+                QueryLogJsonTest.createQuantity(9L, Units.NANOSECOND)));
+        timers.put("frequency", Collections.singletonList(QueryLogJsonTest.createQuantity(10L, perSecond)));
+        return QueryLogJsonTest.createEvent(annotations, counters, gauges, timers);
+    }
+
+    private static String toJson(final Event event) {
+        final StringBuilder json = new StringBuilder();
+        QueryLogJson.append(event, json);
+        return json.toString();
+    }
+
+    @Rule
+    public final TemporaryFolder _folder = new TemporaryFolder();
+
+    private static final class SlowInputStream extends ByteArrayInputStream {
+        private SlowInputStream(final byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public synchronized int read(final byte[] buffer, final int offset, final int length) {
+            return super.read(buffer, offset, Math.min(length, 1));
+        }
+    }
+}
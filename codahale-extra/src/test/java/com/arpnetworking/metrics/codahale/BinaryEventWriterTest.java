@@ -0,0 +1,68 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Units;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+/**
+ * Tests for the BinaryEventWriter class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class BinaryEventWriterTest {
+    @Test
+    public void namesWrittenOnce() {
+        final BinaryEventWriter writer = new BinaryEventWriter();
+        final Event event = createEvent("value");
+        writer.encode(event);
+        final int first = writer.getSize();
+        writer.encode(event);
+        final int second = writer.getSize();
+        // The annotation key, metric name and unit name are replaced by single byte indexes
+        Assert.assertEquals(first - "key".length() - "metric".length() - "second".length(), second);
+
+        writer.reset();
+        writer.encode(event);
+        Assert.assertEquals(first, writer.getSize());
+    }
+
+    @Test
+    public void grows() {
+        final BinaryEventWriter writer = new BinaryEventWriter();
+        final StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 10000; ++i) {
+            value.append('v');
+        }
+        writer.encode(createEvent(value.toString()));
+        Assert.assertTrue(writer.getSize() > 10000);
+        Assert.assertTrue(writer.getBuffer().length >= writer.getSize());
+    }
+
+    private static Event createEvent(final String value) {
+        return QueryLogJsonTest.createEvent(
+                Collections.singletonMap("key", value),
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                Collections.singletonMap(
+                        "metric",
+                        Collections.singletonList(QueryLogJsonTest.createQuantity(1L, Units.SECOND))));
+    }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Event;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for the BinaryFileSink class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class BinaryFileSinkTest {
+    @Test
+    public void writesRecords() throws IOException {
+        final BinaryFileSink sink = new BinaryFileSink.Builder()
+                .setDirectory(_folder.getRoot())
+                .build();
+        final StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 200; ++i) {
+            large.append("large");
+        }
+        sink.record(createEvent("first"));
+        sink.record(createEvent(large.toString()));
+        sink.record(createEvent("last"));
+        sink.close();
+        sink.record(createEvent("closed"));
+        sink.close();
+
+        Assert.assertEquals(
+                toJson(createEvent("first")) + toJson(createEvent(large.toString())) + toJson(createEvent("last")),
+                readJson(_folder.getRoot().toPath().resolve("query.bin")));
+    }
+
+    @Test
+    public void rollsBySizeWithOwnStringTable() throws IOException {
+        final BinaryFileSink sink = new BinaryFileSink.Builder()
+                .setDirectory(_folder.getRoot())
+                .setName("sized")
+                .setExtension(".dat")
+                .setMaxFileBytes(1)
+                .build();
+        sink.record(createEvent("first"));
+        sink.record(createEvent("second"));
+        sink.close();
+
+        final List<Path> files = listFiles();
+        Assert.assertEquals(2, files.size());
+        final StringBuilder json = new StringBuilder();
+        for (final Path file : files) {
+            json.append(readJson(file));
+        }
+        Assert.assertTrue(json.toString().contains(toJson(createEvent("first"))));
+        Assert.assertTrue(json.toString().contains(toJson(createEvent("second"))));
+        Assert.assertTrue(Files.exists(_folder.getRoot().toPath().resolve("sized.dat")));
+    }
+
+    @Test
+    public void rollsByTime() throws IOException, InterruptedException {
+        final BinaryFileSink sink = new BinaryFileSink.Builder()
+                .setDirectory(_folder.getRoot())
+                .setRollInterval(Duration.ofMillis(1))
+                .setMaxHistory(5)
+                .build();
+        sink.record(createEvent("first"));
+        Thread.sleep(5);
+        sink.record(createEvent("second"));
+        sink.close();
+        Assert.assertEquals(2, listFiles().size());
+    }
+
+    @Test
+    public void closeUnused() throws IOException {
+        final BinaryFileSink sink = new BinaryFileSink.Builder()
+                .setDirectory(_folder.getRoot())
+                .build();
+        sink.close();
+        Assert.assertTrue(listFiles().isEmpty());
+    }
+
+    @Test
+    public void writeFailure() throws IOException {
+        final BinaryFileSink sink = new BinaryFileSink.Builder()
+                .setDirectory(new File(_folder.getRoot(), "missing"))
+                .build();
+        sink.record(createEvent("first"));
+        sink.close();
+        Assert.assertTrue(listFiles().isEmpty());
+    }
+
+    @Test
+    public void recoversFromWriteFailure() throws IOException {
+        final File directory = new File(_folder.getRoot(), "later");
+        final BinaryFileSink sink = new BinaryFileSink.Builder()
+                .setDirectory(directory)
+                .build();
+        sink.record(createEvent("first"));
+        Assert.assertTrue(directory.mkdir());
+        sink.record(createEvent("second"));
+        sink.close();
+        Assert.assertEquals(toJson(createEvent("second")), readJson(directory.toPath().resolve("query.bin")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxFileBytesInvalid() {
+        new BinaryFileSink.Builder().setMaxFileBytes(0).build();
+    }
+
+    private static Event createEvent(final String id) {
+        return QueryLogJsonTest.createEvent(
+                Collections.singletonMap("_id", id),
+                Collections.singletonMap("c", Collections.singletonList(QueryLogJsonTest.createQuantity(1L, null))),
+                Collections.emptyMap(),
+                Collections.emptyMap());
+    }
+
+    private static String toJson(final Event event) {
+        final StringBuilder json = new StringBuilder();
+        QueryLogJson.append(event, json);
+        return json.append('\n').toString();
+    }
+
+    private static String readJson(final Path file) throws IOException {
+        final StringWriter json = new StringWriter();
+        try (InputStream input = Files.newInputStream(file)) {
+            BinaryEventReader.toJson(input, json);
+        }
+        return json.toString();
+    }
+
+    private List<Path> listFiles() throws IOException {
+        final List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(_folder.getRoot().toPath())) {
+            for (final Path file : files) {
+                paths.add(file);
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    @Rule
+    public final TemporaryFolder _folder = new TemporaryFolder();
+}
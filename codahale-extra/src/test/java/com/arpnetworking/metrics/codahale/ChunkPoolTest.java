@@ -0,0 +1,68 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Tests for the ChunkPool class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class ChunkPoolTest {
+    @Test
+    public void recycles() {
+        final ChunkPool pool = new ChunkPool(16, 1);
+        final ByteBuffer first = pool.acquire();
+        Assert.assertTrue(first.isDirect());
+        Assert.assertEquals(16, first.capacity());
+        Assert.assertEquals(ByteOrder.nativeOrder(), first.order());
+        final ByteBuffer second = pool.acquire();
+        first.putLong(1);
+        pool.release(first);
+        pool.release(second);
+        Assert.assertEquals(1, pool.getPooled());
+
+        final ByteBuffer recycled = pool.acquire();
+        Assert.assertSame(first, recycled);
+        Assert.assertEquals(0, recycled.position());
+        Assert.assertEquals(0, pool.getPooled());
+    }
+
+    @Test
+    public void defaults() {
+        Assert.assertEquals(64 * 1024, new ChunkPool().acquire().capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void chunkTooSmall() {
+        new ChunkPool(4, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void chunkNotMultipleOfLong() {
+        new ChunkPool(12, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxPooledNegative() {
+        new ChunkPool(8, -1);
+    }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tests for the CloserScheduler class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class CloserSchedulerTest {
+    @Test
+    public void nextBoundary() {
+        Assert.assertEquals(1000, CloserScheduler.nextBoundary(0, 1000));
+        Assert.assertEquals(1000, CloserScheduler.nextBoundary(999, 1000));
+        Assert.assertEquals(2000, CloserScheduler.nextBoundary(1000, 1000));
+        Assert.assertEquals(1500, CloserScheduler.nextBoundary(1234, 500));
+    }
+
+    @Test
+    public void shared() {
+        Assert.assertSame(CloserScheduler.getInstance(), CloserScheduler.getInstance());
+    }
+
+    @Test
+    public void runsOnSharedThread() throws InterruptedException {
+        final CloserScheduler scheduler = new CloserScheduler();
+        final CountDownLatch latch = new CountDownLatch(4);
+        final AtomicReference<Thread> first = new AtomicReference<>();
+        final AtomicReference<Thread> second = new AtomicReference<>();
+        final Runnable firstCloser = () -> {
+            first.set(Thread.currentThread());
+            latch.countDown();
+        };
+        final Runnable secondCloser = () -> {
+            second.set(Thread.currentThread());
+            latch.countDown();
+        };
+        scheduler.register(firstCloser, 10, overrun -> { });
+        scheduler.register(secondCloser, 20, overrun -> { });
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertSame(first.get(), second.get());
+        Assert.assertEquals("metrics-closer", first.get().getName());
+        Assert.assertTrue(first.get().isDaemon());
+        Assert.assertEquals(2, scheduler.size());
+        Assert.assertNotNull(firstCloser);
+        Assert.assertNotNull(secondCloser);
+    }
+
+    @Test
+    public void batchOrderRotated() throws InterruptedException {
+        final CloserScheduler scheduler = new CloserScheduler();
+        final List<long[]> runs = Collections.synchronizedList(new ArrayList<>());
+        final Runnable firstCloser = () -> runs.add(new long[] {System.currentTimeMillis() / PERIOD_MILLIS, 1});
+        final Runnable secondCloser = () -> runs.add(new long[] {System.currentTimeMillis() / PERIOD_MILLIS, 2});
+        scheduler.register(firstCloser, PERIOD_MILLIS, overrun -> { });
+        scheduler.register(secondCloser, PERIOD_MILLIS, overrun -> { });
+
+        // Find a batch in each order among the periods both closers ran in
+        final long deadline = System.currentTimeMillis() + 10000;
+        boolean firstLeads = false;
+        boolean secondLeads = false;
+        while (!(firstLeads && secondLeads) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(PERIOD_MILLIS);
+            synchronized (runs) {
+                for (int i = 1; i < runs.size(); ++i) {
+                    if (runs.get(i - 1)[0] == runs.get(i)[0]) {
+                        firstLeads |= runs.get(i - 1)[1] == 1;
+                        secondLeads |= runs.get(i - 1)[1] == 2;
+                    }
+                }
+            }
+        }
+        Assert.assertTrue(firstLeads);
+        Assert.assertTrue(secondLeads);
+        Assert.assertNotNull(firstCloser);
+        Assert.assertNotNull(secondCloser);
+    }
+
+    @Test
+    public void overrunsMerged() throws InterruptedException {
+        final CloserScheduler scheduler = new CloserScheduler();
+        final LongAdder overruns = new LongAdder();
+        final Runnable closer = () -> {
+            try {
+                Thread.sleep(35);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        scheduler.register(closer, 10, overruns::add);
+
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (overruns.sum() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(overruns.sum() >= 3);
+        Assert.assertNotNull(closer);
+    }
+
+    @Test
+    public void failureDoesNotStopClosing() throws InterruptedException {
+        final CloserScheduler scheduler = new CloserScheduler();
+        final CountDownLatch latch = new CountDownLatch(2);
+        final Runnable closer = () -> {
+            latch.countDown();
+            throw new IllegalStateException();
+        };
+        scheduler.register(closer, 10, overrun -> { });
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertNotNull(closer);
+    }
+
+    @Test
+    public void cancel() throws InterruptedException {
+        final CloserScheduler scheduler = new CloserScheduler();
+        final AtomicInteger runs = new AtomicInteger();
+        final Runnable closer = runs::incrementAndGet;
+        final CloserScheduler.Registration registration = scheduler.register(closer, 10, overrun -> { });
+        registration.cancel();
+
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (scheduler.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, scheduler.size());
+        Assert.assertEquals(0, runs.get());
+        Assert.assertNotNull(closer);
+    }
+
+    @Test
+    public void collectedUnregistered() throws InterruptedException {
+        final CloserScheduler scheduler = new CloserScheduler();
+        scheduler.register(new CountingCloser(), 10, overrun -> { });
+
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (scheduler.size() > 0 && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(0, scheduler.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void periodInvalid() {
+        new CloserScheduler().register(new CountingCloser(), 0, overrun -> { });
+    }
+
+    private static final long PERIOD_MILLIS = 50;
+
+    private static final class CountingCloser implements Runnable {
+        @Override
+        public void run() {
+            _runs.incrementAndGet();
+        }
+
+        private final AtomicInteger _runs = new AtomicInteger();
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for the CoalescingSampleBuffer class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class CoalescingSampleBufferTest {
+    @Test
+    public void drainEmpty() {
+        final CoalescingSampleBuffer buffer = new CoalescingSampleBuffer();
+        final List<Long> drained = new ArrayList<>();
+        buffer.drain(drained::add);
+        Assert.assertTrue(drained.isEmpty());
+    }
+
+    @Test
+    public void coalesces() {
+        final CoalescingSampleBuffer buffer = new CoalescingSampleBuffer();
+        buffer.record(1);
+        buffer.record(1);
+        buffer.record(3);
+        final List<Long> drained = new ArrayList<>();
+        buffer.drain(drained::add);
+        Assert.assertEquals(Collections.singletonList(5L), drained);
+
+        drained.clear();
+        buffer.drain(drained::add);
+        Assert.assertTrue(drained.isEmpty());
+    }
+
+    @Test
+    public void isEmpty() {
+        final CoalescingSampleBuffer buffer = new CoalescingSampleBuffer();
+        Assert.assertTrue(buffer.isEmpty());
+        buffer.record(0);
+        Assert.assertFalse(buffer.isEmpty());
+        buffer.drain(value -> { });
+        Assert.assertTrue(buffer.isEmpty());
+        buffer.record(5);
+        Assert.assertFalse(buffer.isEmpty());
+    }
+
+    @Test
+    public void periodsAreIndependent() {
+        final CoalescingSampleBuffer buffer = new CoalescingSampleBuffer();
+        final List<Long> drained = new ArrayList<>();
+        buffer.record(2);
+        buffer.drain(drained::add);
+        buffer.record(-7);
+        buffer.drain(drained::add);
+        Assert.assertEquals(Arrays.asList(2L, -7L), drained);
+    }
+
+    @Test
+    public void zeroSumStillEmitted() {
+        final CoalescingSampleBuffer buffer = new CoalescingSampleBuffer();
+        buffer.record(4);
+        buffer.record(-4);
+        final List<Long> drained = new ArrayList<>();
+        buffer.drain(drained::add);
+        Assert.assertEquals(Collections.singletonList(0L), drained);
+    }
+
+    @Test
+    public void multipleThreads() throws InterruptedException {
+        final CoalescingSampleBuffer buffer = new CoalescingSampleBuffer();
+        final int threadCount = 4;
+        final int samples = 1000;
+        final List<Long> drained = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; ++i) {
+            final Thread thread = new Thread(() -> {
+                for (int j = 0; j < samples; ++j) {
+                    buffer.record(1);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        buffer.drain(drained::add);
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        buffer.drain(drained::add);
+        long total = 0;
+        for (final Long value : drained) {
+            total += value;
+        }
+        Assert.assertEquals(threadCount * samples, total);
+    }
+
+    @Test
+    public void recordBatch() {
+        final CoalescingSampleBuffer buffer = new CoalescingSampleBuffer();
+        buffer.record(new long[] {5, 2, 3, 5}, 1, 0);
+        Assert.assertTrue(buffer.isEmpty());
+        buffer.record(new long[] {5, 2, 3, 5}, 1, 2);
+        Assert.assertFalse(buffer.isEmpty());
+        final List<Long> drained = new ArrayList<>();
+        buffer.drain(drained::add);
+        Assert.assertEquals(Collections.singletonList(5L), drained);
+    }
+}
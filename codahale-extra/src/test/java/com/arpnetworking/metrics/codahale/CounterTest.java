@@ -16,6 +16,7 @@
 package com.arpnetworking.metrics.codahale;
 
 import com.arpnetworking.metrics.Metrics;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -79,6 +80,82 @@ public class CounterTest {
         Mockito.verify(_metrics).decrementCounter("foo", n);
     }
 
+    @Test
+    public void buffered() {
+        final Counter counter = new Counter("foo", _lock, new ThreadLocalSampleBuffer());
+        counter.inc(3);
+        counter.dec(2);
+        Mockito.verifyZeroInteractions(_lock);
+        Assert.assertEquals(1, counter.getCount());
+        Assert.assertFalse(counter.isEmpty());
+        counter.drainTo(_metrics);
+        Assert.assertTrue(counter.isEmpty());
+        Mockito.verify(_metrics).incrementCounter("foo", 3);
+        Mockito.verify(_metrics).incrementCounter("foo", -2);
+        Mockito.verify(_metrics, Mockito.times(2)).resetCounter("foo");
+    }
+
+    @Test
+    public void touched() {
+        final Counter counter = new Counter("foo", _lock);
+        Assert.assertFalse(counter.checkAndClearTouched());
+        counter.inc();
+        Assert.assertTrue(counter.checkAndClearTouched());
+        Assert.assertFalse(counter.checkAndClearTouched());
+        counter.dec();
+        Assert.assertTrue(counter.checkAndClearTouched());
+        Assert.assertFalse(counter.checkAndClearTouched());
+    }
+
+    @Test
+    public void drainLocked() {
+        final Counter counter = new Counter("foo", _lock);
+        counter.inc();
+        counter.drainTo(_metrics);
+        Mockito.verifyZeroInteractions(_metrics);
+        Assert.assertTrue(counter.isEmpty());
+    }
+
+    @Test
+    public void incrementBatch() {
+        final Counter counter = new Counter("foo", _lock);
+        counter.inc(new long[] {9, 1, 2, 9}, 1, 2);
+        counter.inc(new long[] {9}, 1, 0);
+        Assert.assertEquals(3, counter.getCount());
+        Mockito.verify(_lock).readLocked(_delegateCaptor.capture());
+        _delegateCaptor.getValue().accept(_metrics);
+        Mockito.verify(_metrics, Mockito.times(2)).resetCounter("foo");
+        Mockito.verify(_metrics).incrementCounter("foo", 1);
+        Mockito.verify(_metrics).incrementCounter("foo", 2);
+        Assert.assertTrue(counter.checkAndClearTouched());
+    }
+
+    @Test
+    public void incrementBatchBuffered() {
+        final Counter counter = new Counter("foo", _lock, new ThreadLocalSampleBuffer());
+        counter.inc(new long[] {1, 2}, 0, 2);
+        Mockito.verifyZeroInteractions(_lock);
+        Assert.assertEquals(3, counter.getCount());
+        counter.drainTo(_metrics);
+        Mockito.verify(_metrics).incrementCounter("foo", 1);
+        Mockito.verify(_metrics).incrementCounter("foo", 2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void incrementBatchOutOfBounds() {
+        new Counter("foo", _lock).inc(new long[2], 1, 2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void incrementBatchNegativeOffset() {
+        new Counter("foo", _lock).inc(new long[2], -1, 1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void incrementBatchNegativeLength() {
+        new Counter("foo", _lock).inc(new long[2], 0, -1);
+    }
+
     @Mock
     private SafeRefLock<Metrics> _lock;
     @Captor
@@ -0,0 +1,201 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Metrics;
+import com.codahale.metrics.Gauge;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for the GaugeSampler class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class GaugeSamplerTest {
+    @After
+    public void tearDown() {
+        _timer.shutdownNow();
+    }
+
+    @Test
+    public void samplesNumbers() {
+        final GaugeSampler sampler = new GaugeSampler(Runnable::run, _timer, 2, Duration.ofSeconds(1));
+        Assert.assertTrue(sampler.isEmpty());
+        sampler.add("number", (Gauge<Integer>) () -> 5);
+        sampler.add("string", (Gauge<String>) () -> "value");
+        sampler.add("removed", (Gauge<Integer>) () -> 7);
+        sampler.remove("removed");
+        Assert.assertFalse(sampler.isEmpty());
+        final Metrics metrics = Mockito.mock(Metrics.class);
+
+        sampler.sampleTo(metrics).join();
+        Mockito.verify(metrics).setGauge("number", 5d);
+        Mockito.verifyNoMoreInteractions(metrics);
+        Assert.assertEquals(0, sampler.getOverruns());
+    }
+
+    @Test
+    public void noGauges() {
+        final GaugeSampler sampler = new GaugeSampler(Runnable::run, _timer, 2, Duration.ofSeconds(1));
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        sampler.sampleTo(metrics).join();
+        Mockito.verifyZeroInteractions(metrics);
+    }
+
+    @Test
+    public void throwsKeepsLastGoodValue() {
+        final AtomicInteger calls = new AtomicInteger();
+        final GaugeSampler sampler = new GaugeSampler(Runnable::run, _timer, 2, Duration.ofSeconds(1));
+        sampler.add("gauge", (Gauge<Integer>) () -> {
+            if (calls.incrementAndGet() > 1) {
+                throw new IllegalStateException();
+            }
+            return 1;
+        });
+        sampler.add("never", (Gauge<Integer>) () -> {
+            throw new IllegalStateException();
+        });
+        final Metrics first = Mockito.mock(Metrics.class);
+        final Metrics second = Mockito.mock(Metrics.class);
+
+        sampler.sampleTo(first).join();
+        sampler.sampleTo(second).join();
+        Mockito.verify(first).setGauge("gauge", 1d);
+        Mockito.verify(second).setGauge("gauge", 1d);
+        Mockito.verifyNoMoreInteractions(first, second);
+        Assert.assertEquals(0, sampler.getOverruns());
+        Assert.assertEquals(3, sampler.getFailures());
+    }
+
+    @Test
+    public void overrunKeepsLastGoodValue() throws InterruptedException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final AtomicInteger calls = new AtomicInteger();
+            final Semaphore release = new Semaphore(0);
+            final GaugeSampler sampler = new GaugeSampler(executor, _timer, 1, Duration.ofMillis(200));
+            sampler.add("gauge", (Gauge<Integer>) () -> {
+                final int call = calls.incrementAndGet();
+                if (call == 2) {
+                    release.acquireUninterruptibly();
+                }
+                return call;
+            });
+            final Metrics first = Mockito.mock(Metrics.class);
+            final Metrics second = Mockito.mock(Metrics.class);
+            final Metrics third = Mockito.mock(Metrics.class);
+            final Metrics fourth = Mockito.mock(Metrics.class);
+
+            sampler.sampleTo(first).join();
+            Mockito.verify(first).setGauge("gauge", 1d);
+
+            sampler.sampleTo(second).join();
+            Mockito.verify(second).setGauge("gauge", 1d);
+            Assert.assertEquals(1, sampler.getOverruns());
+
+            // Still evaluating so not submitted again
+            sampler.sampleTo(third).join();
+            Mockito.verify(third).setGauge("gauge", 1d);
+            Assert.assertEquals(2, sampler.getOverruns());
+            Assert.assertEquals(2, calls.get());
+
+            release.release();
+            // Wait for the late evaluation to complete
+            final CountDownLatch done = new CountDownLatch(1);
+            executor.execute(done::countDown);
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+            sampler.sampleTo(fourth).join();
+            Mockito.verify(fourth).setGauge("gauge", 3d);
+            Assert.assertEquals(2, sampler.getOverruns());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void rejected() {
+        final GaugeSampler sampler = new GaugeSampler(
+                r -> {
+                    throw new RejectedExecutionException();
+                },
+                _timer,
+                2,
+                Duration.ofSeconds(1));
+        sampler.add("gauge", (Gauge<Integer>) () -> 1);
+        final Metrics metrics = Mockito.mock(Metrics.class);
+
+        sampler.sampleTo(metrics).join();
+        Mockito.verifyZeroInteractions(metrics);
+        Assert.assertEquals(1, sampler.getOverruns());
+    }
+
+    @Test
+    public void neverEvaluated() {
+        final GaugeSampler sampler = new GaugeSampler(r -> { }, _timer, 2, Duration.ofMillis(10));
+        sampler.add("gauge", (Gauge<Integer>) () -> 1);
+        final Metrics metrics = Mockito.mock(Metrics.class);
+
+        sampler.sampleTo(metrics).join();
+        Mockito.verifyZeroInteractions(metrics);
+        Assert.assertEquals(1, sampler.getOverruns());
+    }
+
+    @Test
+    public void parallelism() {
+        final List<Runnable> tasks = new ArrayList<>();
+        final GaugeSampler sampler = new GaugeSampler(tasks::add, _timer, 2, Duration.ofSeconds(10));
+        sampler.add("first", (Gauge<Integer>) () -> 1);
+        sampler.add("second", (Gauge<Integer>) () -> 2);
+        sampler.add("third", (Gauge<Integer>) () -> 3);
+        final Metrics metrics = Mockito.mock(Metrics.class);
+
+        final CompletableFuture<Void> sampled = sampler.sampleTo(metrics);
+        Assert.assertEquals(2, tasks.size());
+        Assert.assertFalse(sampled.isDone());
+        tasks.get(0).run();
+        Assert.assertTrue(sampled.isDone());
+        Mockito.verify(metrics).setGauge("first", 1d);
+        Mockito.verify(metrics).setGauge("second", 2d);
+        Mockito.verify(metrics).setGauge("third", 3d);
+        tasks.get(1).run();
+        Mockito.verifyNoMoreInteractions(metrics);
+        Assert.assertEquals(0, sampler.getOverruns());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parallelismInvalid() {
+        new GaugeSampler(Runnable::run, _timer, 0, Duration.ofSeconds(1));
+    }
+
+    private final ScheduledExecutorService _timer = Executors.newSingleThreadScheduledExecutor();
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Event;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Tests for the GzipFileSink class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class GzipFileSinkTest {
+    @Test
+    public void writesRecords() throws IOException {
+        final GzipFileSink sink = new GzipFileSink.Builder()
+                .setDirectory(_folder.getRoot())
+                .setBufferBytes(16)
+                .build();
+        final StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 200; ++i) {
+            large.append("largeé");
+        }
+        sink.record(createEvent("first"));
+        sink.record(createEvent(large.toString()));
+        sink.record(createEvent("last"));
+        sink.close();
+        sink.record(createEvent("closed"));
+        sink.close();
+
+        Assert.assertEquals(
+                toJson(createEvent("first")) + toJson(createEvent(large.toString())) + toJson(createEvent("last")),
+                readGzip(_folder.getRoot().toPath().resolve("query.log.gz")));
+    }
+
+    @Test
+    public void activeFileReadableWhenSyncFlushed() throws IOException, DataFormatException {
+        final GzipFileSink sink = new GzipFileSink.Builder()
+                .setDirectory(_folder.getRoot())
+                .setLevel(9)
+                .build();
+        sink.record(createEvent("first"));
+        sink.record(createEvent("second"));
+
+        final byte[] active = Files.readAllBytes(_folder.getRoot().toPath().resolve("query.log.gz"));
+        Assert.assertEquals(toJson(createEvent("first")) + toJson(createEvent("second")), inflate(active));
+        sink.close();
+    }
+
+    @Test
+    public void withoutSyncFlush() throws IOException {
+        final GzipFileSink sink = new GzipFileSink.Builder()
+                .setDirectory(_folder.getRoot())
+                .setLevel(0)
+                .setSyncFlush(false)
+                .build();
+        sink.record(createEvent("first"));
+        sink.record(createEvent("second"));
+        sink.close();
+
+        Assert.assertEquals(
+                toJson(createEvent("first")) + toJson(createEvent("second")),
+                readGzip(_folder.getRoot().toPath().resolve("query.log.gz")));
+    }
+
+    @Test
+    public void rollsBySizeWithCompleteMembers() throws IOException {
+        final GzipFileSink sink = new GzipFileSink.Builder()
+                .setDirectory(_folder.getRoot())
+                .setName("sized")
+                .setExtension(".gz")
+                .setMaxFileBytes(1)
+                .build();
+        sink.record(createEvent("first"));
+        sink.record(createEvent("second"));
+        sink.close();
+
+        final List<Path> files = listFiles();
+        Assert.assertEquals(2, files.size());
+        final StringBuilder json = new StringBuilder();
+        for (final Path file : files) {
+            json.append(readGzip(file));
+        }
+        Assert.assertTrue(json.toString().contains(toJson(createEvent("first"))));
+        Assert.assertTrue(json.toString().contains(toJson(createEvent("second"))));
+        Assert.assertTrue(Files.exists(_folder.getRoot().toPath().resolve("sized.gz")));
+    }
+
+    @Test
+    public void rollsByTime() throws IOException, InterruptedException {
+        final GzipFileSink sink = new GzipFileSink.Builder()
+                .setDirectory(_folder.getRoot())
+                .setRollInterval(Duration.ofMillis(1))
+                .setMaxHistory(5)
+                .build();
+        sink.record(createEvent("first"));
+        Thread.sleep(5);
+        sink.record(createEvent("second"));
+        sink.close();
+        Assert.assertEquals(2, listFiles().size());
+    }
+
+    @Test
+    public void closeUnused() throws IOException {
+        final GzipFileSink sink = new GzipFileSink.Builder()
+                .setDirectory(_folder.getRoot())
+                .build();
+        sink.close();
+        Assert.assertTrue(listFiles().isEmpty());
+    }
+
+    @Test
+    public void writeFailure() throws IOException {
+        final GzipFileSink sink = new GzipFileSink.Builder()
+                .setDirectory(new File(_folder.getRoot(), "missing"))
+                .build();
+        sink.record(createEvent("first"));
+        sink.close();
+        Assert.assertTrue(listFiles().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void levelTooLow() {
+        new GzipFileSink.Builder().setLevel(-2).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void levelTooHigh() {
+        new GzipFileSink.Builder().setLevel(10).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxFileBytesInvalid() {
+        new GzipFileSink.Builder().setMaxFileBytes(0).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bufferBytesInvalid() {
+        new GzipFileSink.Builder().setBufferBytes(0).build();
+    }
+
+    private static Event createEvent(final String id) {
+        return QueryLogJsonTest.createEvent(
+                Collections.singletonMap("_id", id),
+                Collections.singletonMap("c", Collections.singletonList(QueryLogJsonTest.createQuantity(1L, null))),
+                Collections.emptyMap(),
+                Collections.emptyMap());
+    }
+
+    private static String toJson(final Event event) {
+        final StringBuilder json = new StringBuilder();
+        QueryLogJson.append(event, json);
+        return json.append('\n').toString();
+    }
+
+    private static String readGzip(final Path file) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream input = new GZIPInputStream(Files.newInputStream(file))) {
+            final byte[] buffer = new byte[1024];
+            int length = input.read(buffer);
+            while (length >= 0) {
+                bytes.write(buffer, 0, length);
+                length = input.read(buffer);
+            }
+        }
+        return bytes.toString("UTF-8");
+    }
+
+    private static String inflate(final byte[] gzip) throws DataFormatException {
+        // Skip the fixed ten byte header; the member is not yet complete
+        final Inflater inflater = new Inflater(true);
+        inflater.setInput(gzip, 10, gzip.length - 10);
+        final byte[] buffer = new byte[4096];
+        final int length = inflater.inflate(buffer);
+        inflater.end();
+        return StandardCharsets.UTF_8.decode(ByteBuffer.wrap(buffer, 0, length)).toString();
+    }
+
+    private List<Path> listFiles() throws IOException {
+        final List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(_folder.getRoot().toPath())) {
+            for (final Path file : files) {
+                paths.add(file);
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    @Rule
+    public final TemporaryFolder _folder = new TemporaryFolder();
+}
@@ -17,6 +17,7 @@ package com.arpnetworking.metrics.codahale;
 
 import com.arpnetworking.metrics.Metrics;
 import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -60,6 +61,113 @@ public class HistogramTest {
         Mockito.verify(_metrics).incrementCounter("foo", n);
     }
 
+    @Test
+    public void buffered() {
+        final Histogram histogram = new Histogram(
+                "foo", _lock, new ThreadLocalSampleBuffer(), new ExponentiallyDecayingReservoir(), null);
+        histogram.update(7);
+        Mockito.verifyZeroInteractions(_lock);
+        Assert.assertEquals(1, histogram.getCount());
+        Assert.assertFalse(histogram.isEmpty());
+        histogram.drainTo(_metrics);
+        Assert.assertTrue(histogram.isEmpty());
+        Mockito.verify(_metrics).resetCounter("foo");
+        Mockito.verify(_metrics).incrementCounter("foo", 7);
+    }
+
+    @Test
+    public void touched() {
+        final Histogram histogram = new Histogram(
+                "foo", _lock, new ThreadLocalSampleBuffer(), new ExponentiallyDecayingReservoir(), null);
+        Assert.assertFalse(histogram.checkAndClearTouched());
+        histogram.update(7);
+        Assert.assertTrue(histogram.checkAndClearTouched());
+        Assert.assertFalse(histogram.checkAndClearTouched());
+    }
+
+    @Test
+    public void drainLocked() {
+        final Histogram histogram = new Histogram("foo", _lock, new ExponentiallyDecayingReservoir());
+        histogram.update(7);
+        histogram.drainTo(_metrics);
+        Mockito.verifyZeroInteractions(_metrics);
+        Assert.assertTrue(histogram.isEmpty());
+    }
+
+    @Test
+    public void sampled() {
+        final Histogram histogram = new Histogram(
+                "foo", _lock, null, new ExponentiallyDecayingReservoir(), new Sampler(Double.MIN_VALUE));
+        for (int i = 0; i < 1000; ++i) {
+            histogram.update(7);
+        }
+        histogram.update(new long[] {1, 2}, 0, 2);
+        Mockito.verifyZeroInteractions(_lock);
+        Assert.assertEquals(1002, histogram.getCount());
+        Assert.assertEquals(0, histogram.getSnapshot().size());
+        Assert.assertFalse(histogram.isEmpty());
+        histogram.drainTo(_metrics);
+        Mockito.verify(_metrics).incrementCounter("foo.count", 1002);
+        Mockito.verify(_metrics).setGauge("foo.sample_rate", Double.MIN_VALUE);
+        Assert.assertTrue(histogram.isEmpty());
+    }
+
+    @Test
+    public void sampledBuffered() {
+        final Histogram histogram = new Histogram(
+                "foo", _lock, new ThreadLocalSampleBuffer(), new ExponentiallyDecayingReservoir(), new Sampler(1));
+        histogram.update(7);
+        histogram.update(new long[] {1}, 0, 1);
+        Assert.assertEquals(2, histogram.getCount());
+        Assert.assertEquals(7, histogram.getSnapshot().getMax());
+        histogram.drainTo(_metrics);
+        Mockito.verify(_metrics).incrementCounter("foo", 7);
+        Mockito.verify(_metrics).incrementCounter("foo", 1);
+        Mockito.verify(_metrics).incrementCounter("foo.count", 2);
+        Mockito.verify(_metrics).setGauge("foo.sample_rate", 1d);
+    }
+
+    @Test
+    public void updateBatch() {
+        final Histogram histogram = new Histogram("foo", _lock, new ExponentiallyDecayingReservoir());
+        histogram.update(new long[] {9, 1, 2, 9}, 1, 2);
+        histogram.update(new long[] {9}, 1, 0);
+        Assert.assertEquals(2, histogram.getCount());
+        Assert.assertEquals(2, histogram.getSnapshot().getMax());
+        Mockito.verify(_lock).readLocked(_delegateCaptor.capture());
+        _delegateCaptor.getValue().accept(_metrics);
+        Mockito.verify(_metrics, Mockito.times(2)).resetCounter("foo");
+        Mockito.verify(_metrics).incrementCounter("foo", 1);
+        Mockito.verify(_metrics).incrementCounter("foo", 2);
+    }
+
+    @Test
+    public void updateBatchBuffered() {
+        final Histogram histogram = new Histogram(
+                "foo", _lock, new ThreadLocalSampleBuffer(), new ExponentiallyDecayingReservoir(), null);
+        histogram.update(new long[] {1, 2}, 0, 2);
+        Mockito.verifyZeroInteractions(_lock);
+        Assert.assertTrue(histogram.checkAndClearTouched());
+        histogram.drainTo(_metrics);
+        Mockito.verify(_metrics).incrementCounter("foo", 1);
+        Mockito.verify(_metrics).incrementCounter("foo", 2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void updateBatchOutOfBounds() {
+        new Histogram("foo", _lock, new ExponentiallyDecayingReservoir()).update(new long[2], 1, 2);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void updateBatchNegativeOffset() {
+        new Histogram("foo", _lock, new ExponentiallyDecayingReservoir()).update(new long[2], -1, 1);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void updateBatchNegativeLength() {
+        new Histogram("foo", _lock, new ExponentiallyDecayingReservoir()).update(new long[2], 0, -1);
+    }
+
     @Mock
     private SafeRefLock<Metrics> _lock;
     @Captor
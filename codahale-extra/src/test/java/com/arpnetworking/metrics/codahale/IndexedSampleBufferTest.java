@@ -0,0 +1,58 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for the IndexedSampleBuffer class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class IndexedSampleBufferTest {
+    @Test
+    public void recordAndDrain() {
+        final SampleTable table = new SampleTable();
+        final IndexedSampleBuffer other = new IndexedSampleBuffer(table, table.register());
+        final IndexedSampleBuffer buffer = new IndexedSampleBuffer(table, table.register());
+        Assert.assertEquals(1, buffer.getId());
+        Assert.assertTrue(buffer.isEmpty());
+        buffer.record(5);
+        Assert.assertFalse(buffer.isEmpty());
+        Assert.assertTrue(other.isEmpty());
+
+        final List<Long> drained = new ArrayList<>();
+        buffer.drain(drained::add);
+        Assert.assertEquals(Collections.singletonList(5L), drained);
+        Assert.assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void recordBatch() {
+        final SampleTable table = new SampleTable();
+        final IndexedSampleBuffer buffer = new IndexedSampleBuffer(table, table.register());
+        buffer.record(new long[] {5, 2, 3, 5}, 1, 2);
+        final List<Long> drained = new ArrayList<>();
+        buffer.drain(drained::add);
+        Assert.assertEquals(Arrays.asList(2L, 3L), drained);
+    }
+}
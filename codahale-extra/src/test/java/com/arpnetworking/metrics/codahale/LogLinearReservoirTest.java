@@ -0,0 +1,219 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.codahale.metrics.Snapshot;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for the LogLinearReservoir class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class LogLinearReservoirTest {
+    @Test(expected = IllegalArgumentException.class)
+    public void tooFewSignificantDigits() {
+        new LogLinearReservoir(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManySignificantDigits() {
+        new LogLinearReservoir(6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void highestTrackableValueNotPositive() {
+        new LogLinearReservoir(2, 0);
+    }
+
+    @Test
+    public void bucketPrecision() {
+        for (int digits = 1; digits <= 3; ++digits) {
+            final LogLinearReservoir reservoir = new LogLinearReservoir(digits);
+            final double maxError = Math.pow(10, -digits);
+            for (long value = 1; value < 1_000_000_000_000L; value = value * 3 + 1) {
+                final int index = reservoir.index(value);
+                final long representative = reservoir.medianEquivalentValue(index);
+                Assert.assertEquals(index, reservoir.index(representative));
+                Assert.assertEquals((double) value, representative, value * maxError);
+            }
+        }
+    }
+
+    @Test
+    public void smallValuesExact() {
+        final LogLinearReservoir reservoir = new LogLinearReservoir(2);
+        for (long value = 0; value < 256; ++value) {
+            Assert.assertEquals(value, reservoir.medianEquivalentValue(reservoir.index(value)));
+        }
+    }
+
+    @Test
+    public void constantMemory() {
+        Assert.assertEquals(4608, new LogLinearReservoir().length());
+        final LogLinearReservoir full = new LogLinearReservoir(2, Long.MAX_VALUE);
+        Assert.assertTrue(full.index(Long.MAX_VALUE) < full.length());
+    }
+
+    @Test
+    public void empty() {
+        final LogLinearReservoir reservoir = new LogLinearReservoir();
+        Assert.assertEquals(0, reservoir.size());
+        final Snapshot snapshot = reservoir.getSnapshot();
+        Assert.assertEquals(0, snapshot.size());
+        Assert.assertEquals(0, snapshot.getValues().length);
+        Assert.assertEquals(0, snapshot.getMin());
+        Assert.assertEquals(0, snapshot.getMax());
+        Assert.assertEquals(0, snapshot.getMean(), 0);
+        Assert.assertEquals(0, snapshot.getStdDev(), 0);
+        Assert.assertEquals(0, snapshot.getMedian(), 0);
+    }
+
+    @Test
+    public void percentiles() {
+        final LogLinearReservoir reservoir = new LogLinearReservoir(2);
+        for (long value = 1; value <= 10000; ++value) {
+            reservoir.update(value);
+        }
+        Assert.assertEquals(10000, reservoir.size());
+        final Snapshot snapshot = reservoir.getSnapshot();
+        Assert.assertEquals(10000, snapshot.size());
+        Assert.assertEquals(1, snapshot.getMin());
+        Assert.assertEquals(10000, snapshot.getMax());
+        Assert.assertEquals(1, snapshot.getValue(0), 0);
+        Assert.assertEquals(5000, snapshot.getMedian(), 50);
+        Assert.assertEquals(9900, snapshot.get99thPercentile(), 99);
+        Assert.assertEquals(9990, snapshot.get999thPercentile(), 100);
+        Assert.assertEquals(10000, snapshot.getValue(1), 0);
+        Assert.assertEquals(5000.5, snapshot.getMean(), 50);
+        Assert.assertEquals(2886.9, snapshot.getStdDev(), 29);
+    }
+
+    @Test
+    public void singleValue() {
+        final LogLinearReservoir reservoir = new LogLinearReservoir(2);
+        reservoir.update(123456);
+        final Snapshot snapshot = reservoir.getSnapshot();
+        Assert.assertEquals(123456, snapshot.getMin());
+        Assert.assertEquals(123456, snapshot.getMax());
+        Assert.assertEquals(123456, snapshot.getMedian(), 0);
+        Assert.assertEquals(123456, snapshot.getMean(), 0);
+        Assert.assertEquals(0, snapshot.getStdDev(), 0);
+    }
+
+    @Test
+    public void outOfRange() {
+        final LogLinearReservoir reservoir = new LogLinearReservoir(2, 1000);
+        reservoir.update(-5);
+        reservoir.update(1_000_000);
+        final Snapshot snapshot = reservoir.getSnapshot();
+        Assert.assertEquals(2, snapshot.size());
+        Assert.assertEquals(0, snapshot.getMin());
+        Assert.assertEquals(1000, snapshot.getMax());
+        Assert.assertEquals(0, snapshot.getValue(0.5), 0);
+        Assert.assertEquals(1000, snapshot.getValue(1), 0);
+        Assert.assertEquals(500, snapshot.getMean(), 0);
+    }
+
+    @Test
+    public void negativeOnly() {
+        final LogLinearReservoir reservoir = new LogLinearReservoir();
+        reservoir.update(-5);
+        reservoir.update(-7);
+        final Snapshot snapshot = reservoir.getSnapshot();
+        Assert.assertEquals(2, snapshot.size());
+        Assert.assertEquals(0, snapshot.getMin());
+        Assert.assertEquals(0, snapshot.getMax());
+        Assert.assertEquals(0, snapshot.getMean(), 0);
+    }
+
+    @Test
+    public void snapshotDuringFirstUpdate() throws InterruptedException {
+        for (int i = 0; i < 200; ++i) {
+            final LogLinearReservoir reservoir = new LogLinearReservoir();
+            final Thread writer = new Thread(() -> reservoir.update(42));
+            writer.start();
+            Snapshot snapshot = reservoir.getSnapshot();
+            while (snapshot.size() == 0) {
+                snapshot = reservoir.getSnapshot();
+            }
+            // A counted value is never reported without its extrema
+            Assert.assertEquals(42, snapshot.getMin());
+            Assert.assertEquals(42, snapshot.getMax());
+            Assert.assertEquals(42, snapshot.getValue(0.5), 0);
+            writer.join();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void quantileNegative() {
+        new LogLinearReservoir().getSnapshot().getValue(-0.1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void quantileTooLarge() {
+        new LogLinearReservoir().getSnapshot().getValue(1.1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void quantileNaN() {
+        new LogLinearReservoir().getSnapshot().getValue(Double.NaN);
+    }
+
+    @Test
+    public void valuesAndDump() {
+        final LogLinearReservoir reservoir = new LogLinearReservoir(2);
+        reservoir.update(3);
+        reservoir.update(3);
+        reservoir.update(7);
+        final Snapshot snapshot = reservoir.getSnapshot();
+        final long[] values = snapshot.getValues();
+        Assert.assertArrayEquals(new long[] {3, 7}, values);
+        values[0] = 42;
+        Assert.assertArrayEquals(new long[] {3, 7}, snapshot.getValues());
+
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        snapshot.dump(output);
+        Assert.assertArrayEquals(String.format("3%n7%n").getBytes(StandardCharsets.UTF_8), output.toByteArray());
+    }
+
+    @Test
+    public void concurrentUpdates() throws InterruptedException {
+        final LogLinearReservoir reservoir = new LogLinearReservoir(2);
+        final int threadCount = 4;
+        final int samples = 10000;
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; ++i) {
+            final Thread thread = new Thread(() -> {
+                for (int j = 0; j < samples; ++j) {
+                    reservoir.update(j);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(threadCount * samples, reservoir.getSnapshot().size());
+    }
+}
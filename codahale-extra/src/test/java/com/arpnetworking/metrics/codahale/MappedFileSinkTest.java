@@ -0,0 +1,180 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Event;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for the MappedFileSink class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class MappedFileSinkTest {
+    @Test
+    public void writesLines() throws IOException {
+        final MappedFileSink sink = new MappedFileSink.Builder()
+                .setDirectory(_folder.getRoot())
+                .setSegmentBytes(4096)
+                .build();
+        // Larger than a segment so that it spans several
+        final Event large = createEvent(repeat('x', 10000) + "é");
+        sink.record(createEvent("first"));
+        sink.record(large);
+        sink.record(createEvent("last"));
+        sink.close();
+        sink.record(createEvent("closed"));
+        sink.close();
+
+        final List<String> lines = Files.readAllLines(_folder.getRoot().toPath().resolve("query.log"), StandardCharsets.UTF_8);
+        Assert.assertEquals(3, lines.size());
+        Assert.assertEquals(toJson(createEvent("first")), lines.get(0));
+        Assert.assertEquals(toJson(large), lines.get(1));
+        Assert.assertEquals(toJson(createEvent("last")), lines.get(2));
+    }
+
+    @Test
+    public void rollsBySize() throws IOException {
+        final MappedFileSink sink = new MappedFileSink.Builder()
+                .setDirectory(_folder.getRoot())
+                .setName("sized")
+                .setExtension(".json")
+                .setMaxFileBytes(1)
+                .build();
+        sink.record(createEvent("first"));
+        sink.record(createEvent("second"));
+        sink.record(createEvent("third"));
+        sink.close();
+
+        final List<Path> files = listFiles();
+        Assert.assertEquals(3, files.size());
+        final List<String> lines = new ArrayList<>();
+        for (final Path file : files) {
+            final List<String> content = Files.readAllLines(file, StandardCharsets.UTF_8);
+            Assert.assertEquals(1, content.size());
+            lines.addAll(content);
+        }
+        Assert.assertTrue(lines.contains(toJson(createEvent("third"))));
+        Assert.assertTrue(Files.exists(_folder.getRoot().toPath().resolve("sized.json")));
+    }
+
+    @Test
+    public void rollsByTime() throws IOException, InterruptedException {
+        final MappedFileSink sink = new MappedFileSink.Builder()
+                .setDirectory(_folder.getRoot())
+                .setRollInterval(Duration.ofMillis(1))
+                .build();
+        sink.record(createEvent("first"));
+        Thread.sleep(5);
+        sink.record(createEvent("second"));
+        sink.close();
+        Assert.assertEquals(2, listFiles().size());
+    }
+
+    @Test
+    public void rollsPreviousActiveFile() throws IOException {
+        final Path active = _folder.getRoot().toPath().resolve("query.log");
+        Files.write(active, new byte[100]);
+        final MappedFileSink sink = new MappedFileSink.Builder()
+                .setDirectory(_folder.getRoot())
+                .build();
+        sink.record(createEvent("first"));
+        sink.close();
+        Assert.assertEquals(2, listFiles().size());
+        Assert.assertEquals(
+                Collections.singletonList(toJson(createEvent("first"))),
+                Files.readAllLines(active, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void closeUnused() throws IOException {
+        final MappedFileSink sink = new MappedFileSink.Builder()
+                .setDirectory(_folder.getRoot())
+                .build();
+        sink.close();
+        Assert.assertTrue(listFiles().isEmpty());
+    }
+
+    @Test
+    public void writeFailure() throws IOException {
+        final MappedFileSink sink = new MappedFileSink.Builder()
+                .setDirectory(new File(_folder.getRoot(), "missing"))
+                .build();
+        sink.record(createEvent("first"));
+        sink.close();
+        Assert.assertTrue(listFiles().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void segmentBytesInvalid() {
+        new MappedFileSink.Builder().setSegmentBytes(4095).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxFileBytesInvalid() {
+        new MappedFileSink.Builder().setMaxFileBytes(0).build();
+    }
+
+    private static Event createEvent(final String id) {
+        return QueryLogJsonTest.createEvent(
+                Collections.singletonMap("_id", id),
+                Collections.singletonMap("c", Collections.singletonList(QueryLogJsonTest.createQuantity(1L, null))),
+                Collections.emptyMap(),
+                Collections.emptyMap());
+    }
+
+    private static String toJson(final Event event) {
+        final StringBuilder json = new StringBuilder();
+        QueryLogJson.append(event, json);
+        return json.toString();
+    }
+
+    private static String repeat(final char c, final int count) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private List<Path> listFiles() throws IOException {
+        final List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(_folder.getRoot().toPath())) {
+            for (final Path file : files) {
+                paths.add(file);
+            }
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    @Rule
+    public final TemporaryFolder _folder = new TemporaryFolder();
+}
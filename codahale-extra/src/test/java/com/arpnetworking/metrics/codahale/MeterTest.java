@@ -16,6 +16,7 @@
 package com.arpnetworking.metrics.codahale;
 
 import com.arpnetworking.metrics.Metrics;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -58,6 +59,60 @@ public class MeterTest {
         Mockito.verify(_metrics).incrementCounter("foo", 1);
     }
 
+    @Test
+    public void buffered() {
+        final Meter meter = new Meter("foo", _lock, new ThreadLocalSampleBuffer(), false);
+        meter.mark(4);
+        Mockito.verifyZeroInteractions(_lock);
+        Assert.assertEquals(4, meter.getCount());
+        Assert.assertFalse(meter.isEmpty());
+        meter.drainTo(_metrics);
+        Assert.assertTrue(meter.isEmpty());
+        Mockito.verify(_metrics).resetCounter("foo");
+        Mockito.verify(_metrics).incrementCounter("foo", 4);
+    }
+
+    @Test
+    public void touched() {
+        final Meter meter = new Meter("foo", _lock);
+        Assert.assertFalse(meter.checkAndClearTouched());
+        meter.mark();
+        Assert.assertTrue(meter.checkAndClearTouched());
+        Assert.assertFalse(meter.checkAndClearTouched());
+    }
+
+    @Test
+    public void drainLocked() {
+        final Meter meter = new Meter("foo", _lock);
+        meter.mark();
+        meter.drainTo(_metrics);
+        Mockito.verifyZeroInteractions(_metrics);
+        Assert.assertTrue(meter.isEmpty());
+    }
+
+    @Test
+    public void tsdOnly() {
+        final Meter meter = new Meter("foo", _lock, null, true);
+        meter.mark(3);
+        Mockito.verify(_lock).readLocked(_delegateCaptor.capture());
+        _delegateCaptor.getValue().accept(_metrics);
+        Mockito.verify(_metrics).incrementCounter("foo", 3);
+        Assert.assertEquals(3, meter.getCount());
+        Assert.assertEquals(0, meter.getOneMinuteRate(), 0);
+        Assert.assertTrue(meter.getMeanRate() > 0);
+    }
+
+    @Test
+    public void tsdOnlyBuffered() {
+        final Meter meter = new Meter("foo", _lock, new ThreadLocalSampleBuffer(), true);
+        meter.mark(3);
+        Assert.assertEquals(3, meter.getCount());
+        Assert.assertEquals(0, meter.getOneMinuteRate(), 0);
+        Assert.assertTrue(meter.getMeanRate() > 0);
+        meter.drainTo(_metrics);
+        Mockito.verify(_metrics).incrementCounter("foo", 3);
+    }
+
     @Mock
     private SafeRefLock<Metrics> _lock;
     @Captor
@@ -15,10 +15,13 @@
  */
 package com.arpnetworking.metrics.codahale;
 
+import com.arpnetworking.metrics.Event;
 import com.arpnetworking.metrics.Metrics;
 import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.Sink;
 import com.arpnetworking.metrics.impl.TsdMetricsFactory;
 import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricSet;
 
 import org.hamcrest.CoreMatchers;
 import org.junit.Assert;
@@ -30,6 +33,16 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
@@ -58,6 +71,539 @@ public class MetricRegistryTest {
         Assert.assertTrue(metricsFactory instanceof TsdMetricsFactory);
     }
 
+    @Test
+    public void builder() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(metrics);
+        final MetricRegistry metricRegistry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setLock(new StripedReadWriteLock())
+                .build();
+        Assert.assertSame(_factory, metricRegistry.getMetricsFactory());
+        metricRegistry.counter("foo").inc();
+        Mockito.verify(metrics).incrementCounter("foo", 1);
+    }
+
+    @Test
+    public void threadLocalRecording() {
+        final Metrics original = Mockito.mock(Metrics.class);
+        final Metrics after = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(original, after);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setRecordingMode(RecordingMode.THREAD_LOCAL)
+                .build();
+        registry.counter("counter").inc(2);
+        registry.timer("timer").update(3, TimeUnit.MILLISECONDS);
+        registry.histogram("histogram").update(4);
+        registry.meter("meter").mark(5);
+        Mockito.verifyZeroInteractions(original);
+
+        final MetricRegistry.Closer closer = new MetricRegistry.Closer(_lock, _factory, _reference, registry);
+        _reference.set(original);
+        closer.run();
+        Mockito.verify(original).incrementCounter("counter", 2);
+        Mockito.verify(original).setTimer("timer", TimeUnit.MILLISECONDS.toNanos(3), TimeUnit.NANOSECONDS);
+        Mockito.verify(original).incrementCounter("histogram", 4);
+        Mockito.verify(original).incrementCounter("meter", 5);
+        Mockito.verify(original).close();
+    }
+
+    @Test
+    public void indexedRecording() {
+        final Metrics original = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(original);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofHours(1))
+                .setRecordingMode(RecordingMode.INDEXED)
+                .build();
+        registry.counter("counter").inc(2);
+        registry.timer("timer").update(3, TimeUnit.MILLISECONDS);
+        registry.histogram("histogram").update(4);
+        registry.meter("meter").mark(5);
+        Mockito.verifyZeroInteractions(original);
+
+        final MetricRegistry.Closer closer = new MetricRegistry.Closer(_lock, _factory, _reference, registry);
+        _reference.set(original);
+        closer.run();
+        Mockito.verify(original).incrementCounter("counter", 2);
+        Mockito.verify(original).setTimer("timer", TimeUnit.MILLISECONDS.toNanos(3), TimeUnit.NANOSECONDS);
+        Mockito.verify(original).incrementCounter("histogram", 4);
+        Mockito.verify(original).incrementCounter("meter", 5);
+        Mockito.verify(original).close();
+    }
+
+    @Test
+    public void offHeap() {
+        final Metrics original = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(original);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofHours(1))
+                .setOffHeap(name -> name.startsWith("off_heap"))
+                .build();
+        registry.timer("off_heap_timer").update(3, TimeUnit.MILLISECONDS);
+        registry.histogram("off_heap_histogram").update(4);
+        registry.counter("off_heap_counter").inc();
+        Mockito.verify(original).resetCounter("off_heap_counter");
+        Mockito.verify(original).incrementCounter("off_heap_counter", 1);
+        Mockito.verifyNoMoreInteractions(original);
+
+        final MetricRegistry.Closer closer = new MetricRegistry.Closer(_lock, _factory, _reference, registry);
+        _reference.set(original);
+        closer.run();
+        Mockito.verify(original).setTimer("off_heap_timer", TimeUnit.MILLISECONDS.toNanos(3), TimeUnit.NANOSECONDS);
+        Mockito.verify(original).incrementCounter("off_heap_histogram", 4);
+    }
+
+    @Test
+    public void sampled() {
+        final Metrics original = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(original);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofHours(1))
+                .setSampleRate(name -> name.startsWith("sampled") ? Double.MIN_VALUE : 1)
+                .build();
+        final com.codahale.metrics.Timer timer = registry.timer("sampled_timer");
+        timer.update(3, TimeUnit.MILLISECONDS);
+        timer.update(4, TimeUnit.MILLISECONDS);
+        registry.histogram("sampled_histogram").update(4);
+        registry.histogram("histogram").update(5);
+        Assert.assertEquals(2, timer.getCount());
+        Mockito.verify(original).resetCounter("histogram");
+        Mockito.verify(original).incrementCounter("histogram", 5);
+        Mockito.verifyNoMoreInteractions(original);
+
+        final MetricRegistry.Closer closer = new MetricRegistry.Closer(_lock, _factory, _reference, registry);
+        _reference.set(original);
+        closer.run();
+        Mockito.verify(original).incrementCounter("sampled_timer.count", 2);
+        Mockito.verify(original).incrementCounter("sampled_histogram.count", 1);
+        Mockito.verify(original).setGauge("sampled_timer.sample_rate", Double.MIN_VALUE);
+        Mockito.verify(original).setGauge("sampled_histogram.sample_rate", Double.MIN_VALUE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sampleRateInvalid() {
+        new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setSampleRate(name -> 0)
+                .build()
+                .timer("timer");
+    }
+
+    @Test
+    public void coalesced() {
+        final Metrics original = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(original);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setCoalesced(name -> name.startsWith("coalesced"))
+                .build();
+        final com.codahale.metrics.Counter counter = registry.counter("coalesced_counter");
+        counter.inc();
+        counter.inc();
+        counter.dec(5);
+        final com.codahale.metrics.Meter meter = registry.meter("coalesced_meter");
+        meter.mark();
+        meter.mark(2);
+        registry.counter("counter").inc();
+        registry.timer("coalesced_timer").update(3, TimeUnit.MILLISECONDS);
+        Mockito.verify(original).resetCounter("counter");
+        Mockito.verify(original).incrementCounter("counter", 1);
+        Mockito.verify(original).setTimer("coalesced_timer", 3, TimeUnit.MILLISECONDS);
+        Mockito.verifyNoMoreInteractions(original);
+
+        final MetricRegistry.Closer closer = new MetricRegistry.Closer(_lock, _factory, _reference, registry);
+        _reference.set(original);
+        closer.run();
+        Mockito.verify(original).incrementCounter("coalesced_counter", -3);
+        Mockito.verify(original).incrementCounter("coalesced_meter", 3);
+    }
+
+    @Test
+    public void tsdOnly() {
+        final Metrics original = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(original);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setTsdOnly(true)
+                .build();
+        final com.codahale.metrics.Histogram histogram = registry.histogram("histogram");
+        histogram.update(5);
+        final com.codahale.metrics.Timer timer = registry.timer("timer");
+        timer.update(3, TimeUnit.MILLISECONDS);
+        final com.codahale.metrics.Meter meter = registry.meter("meter");
+        meter.mark();
+        Mockito.verify(original).incrementCounter("histogram", 5);
+        Mockito.verify(original).setTimer("timer", 3, TimeUnit.MILLISECONDS);
+        Mockito.verify(original).incrementCounter("meter", 1);
+        Assert.assertEquals(1, histogram.getCount());
+        Assert.assertEquals(0, histogram.getSnapshot().size());
+        Assert.assertEquals(1, timer.getCount());
+        Assert.assertEquals(0, timer.getSnapshot().size());
+        Assert.assertEquals(1, meter.getCount());
+    }
+
+    @Test
+    public void reservoirFactory() {
+        Mockito.when(_factory.create()).thenReturn(Mockito.mock(Metrics.class));
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setReservoirFactory(() -> new LogLinearReservoir(3))
+                .build();
+        final com.codahale.metrics.Histogram histogram = registry.histogram("histogram");
+        histogram.update(5);
+        histogram.update(7);
+        Assert.assertEquals(6, histogram.getSnapshot().getMean(), 0);
+        final com.codahale.metrics.Timer timer = registry.timer("timer");
+        timer.update(3, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(TimeUnit.MILLISECONDS.toNanos(3), timer.getSnapshot().getMax());
+        Assert.assertEquals(1, timer.getSnapshot().size());
+    }
+
+    @Test
+    public void closerSkipsIdlePeriods() {
+        final Metrics original = Mockito.mock(Metrics.class);
+        final Metrics after = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(original, after);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setRecordingMode(RecordingMode.THREAD_LOCAL)
+                .setPeriod(Duration.ofHours(1))
+                .build();
+        final com.codahale.metrics.Counter counter = registry.counter("counter");
+        final AtomicReference<Metrics> reference = new AtomicReference<>(original);
+        final SafeRefLock<Metrics> lock = new SafeRefLock<>(reference, new StripedReadWriteLock());
+        final MetricRegistry.Closer closer = new MetricRegistry.Closer(lock, _factory, reference, registry);
+
+        final long skipped = registry.getSkippedPeriods();
+        closer.run();
+        Assert.assertEquals(skipped + 1, registry.getSkippedPeriods());
+        Assert.assertSame(original, reference.get());
+        Mockito.verifyZeroInteractions(original);
+
+        counter.inc();
+        closer.run();
+        Mockito.verify(original).incrementCounter("counter", 1);
+        Mockito.verify(original).close();
+        Assert.assertSame(after, reference.get());
+
+        lock.readLocked(metrics -> metrics.setGauge("foo", 1));
+        closer.run();
+        Mockito.verify(after).close();
+        Assert.assertEquals(skipped + 1, registry.getSkippedPeriods());
+    }
+
+    @Test
+    public void closerHandOffAfterFinish() {
+        final Metrics original = Mockito.mock(Metrics.class);
+        final Metrics after = Mockito.mock(Metrics.class);
+        final Metrics late = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(original, after, late);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofHours(1))
+                .build();
+        final AtomicReference<Metrics> reference = new AtomicReference<>(original);
+        final SafeRefLock<Metrics> lock = new SafeRefLock<>(reference, new StripedReadWriteLock());
+        final MetricRegistry.Closer closer = new MetricRegistry.Closer(lock, _factory, reference, registry);
+
+        lock.readLocked(metrics -> metrics.setGauge("foo", 1));
+        closer.finish();
+        Mockito.verify(original).close();
+        Assert.assertSame(after, reference.get());
+
+        lock.readLocked(metrics -> metrics.setGauge("foo", 2));
+        closer.handOff();
+        Assert.assertSame(after, reference.get());
+        Mockito.verify(after, Mockito.never()).close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void periodTooShort() {
+        new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofNanos(10))
+                .build();
+    }
+
+    @Test
+    public void period() throws InterruptedException {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(metrics);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofMillis(10))
+                .build();
+        Assert.assertEquals(Duration.ofMillis(10), registry.getPeriod());
+        registry.counter("foo").inc();
+        Mockito.verify(metrics, Mockito.timeout(1000)).close();
+    }
+
+    @Test
+    public void overrunPeriodsMerged() throws InterruptedException {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        Mockito.doAnswer(invocation -> {
+                    Thread.sleep(50);
+                    return null;
+                }).when(metrics).close();
+        Mockito.when(_factory.create()).thenReturn(metrics);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofMillis(10))
+                .build();
+        registry.register("gauge", (Gauge<Integer>) () -> 1);
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (registry.getOverrunPeriods() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(registry.getOverrunPeriods() >= 3);
+    }
+
+    @Test
+    public void slowGaugesDoNotDelayOtherRegistries() {
+        final CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(_factory.create()).thenReturn(Mockito.mock(Metrics.class));
+        final MetricRegistry slow = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofMillis(10))
+                .setGaugeTimeout(Duration.ofSeconds(30))
+                .build();
+        slow.register("slow", (Gauge<Integer>) () -> {
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 1;
+        });
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        Mockito.when(factory.create()).thenReturn(metrics);
+        final MetricRegistry other = new MetricRegistry.Builder()
+                .setMetricsFactory(factory)
+                .setPeriod(Duration.ofMillis(10))
+                .build();
+        try {
+            other.counter("foo").inc();
+            Mockito.verify(metrics, Mockito.timeout(5000)).close();
+            other.counter("foo").inc();
+            Mockito.verify(metrics, Mockito.timeout(5000).times(2)).close();
+        } finally {
+            release.countDown();
+            slow.close();
+            other.close();
+        }
+    }
+
+    @Test
+    public void registriesShareWorkers() throws InterruptedException {
+        Mockito.when(_factory.create()).thenReturn(Mockito.mock(Metrics.class));
+        final List<MetricRegistry> registries = new ArrayList<>();
+        final List<CountDownLatch> sampled = new ArrayList<>();
+        try {
+            for (int i = 0; i < 20; ++i) {
+                final CountDownLatch latch = new CountDownLatch(1);
+                final MetricRegistry registry = new MetricRegistry.Builder()
+                        .setMetricsFactory(_factory)
+                        .setPeriod(Duration.ofMillis(10))
+                        .build();
+                registry.register("gauge", (Gauge<Integer>) () -> {
+                    latch.countDown();
+                    return 1;
+                });
+                registries.add(registry);
+                sampled.add(latch);
+            }
+            for (final CountDownLatch latch : sampled) {
+                Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+            }
+            int workers = 0;
+            for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+                Assert.assertFalse(thread.getName(), thread.getName().startsWith("metrics-gauge-"));
+                if (thread.getName().startsWith("metrics-worker-")) {
+                    ++workers;
+                }
+            }
+            Assert.assertTrue(workers <= CloserScheduler.WORKER_THREADS);
+        } finally {
+            for (final MetricRegistry registry : registries) {
+                registry.close();
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void gaugeThreadsInvalid() {
+        new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setGaugeThreads(0)
+                .build();
+    }
+
+    @Test
+    public void gaugeTimeout() {
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofHours(1))
+                .setGaugeThreads(1)
+                .setGaugeTimeout(Duration.ofMillis(1))
+                .build();
+        final CountDownLatch release = new CountDownLatch(1);
+        registry.register("slow", (Gauge<Integer>) () -> {
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return 1;
+        });
+        final MetricRegistry.Closer closer = new MetricRegistry.Closer(_lock, _factory, _reference, registry);
+        final Metrics original = Mockito.mock(Metrics.class);
+        _reference.set(original);
+
+        closer.run();
+        release.countDown();
+        Mockito.verify(original).close();
+        Mockito.verifyNoMoreInteractions(original);
+        Assert.assertEquals(1, registry.getGaugeOverruns());
+    }
+
+    @Test
+    public void remove() {
+        final Metrics original = Mockito.mock(Metrics.class);
+        final Metrics after = Mockito.mock(Metrics.class);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofHours(1))
+                .setRecordingMode(RecordingMode.THREAD_LOCAL)
+                .build();
+        final Counter counter = registry.counter("counter");
+        counter.inc(2);
+        Assert.assertTrue(registry.remove("counter"));
+        Assert.assertFalse(registry.getCounters().containsKey("counter"));
+        final Counter recreated = registry.counter("counter");
+        Assert.assertNotSame(counter, recreated);
+        Assert.assertSame(recreated, registry.getCounters().get("counter"));
+
+        registry.timer("timer_1");
+        registry.timer("timer_2");
+        registry.removeMatching((name, metric) -> name.startsWith("timer_"));
+        Assert.assertTrue(registry.getTimers().isEmpty());
+        Assert.assertSame(registry.timer("timer_1"), registry.getTimers().get("timer_1"));
+
+        final MetricRegistry.Closer closer = new MetricRegistry.Closer(_lock, _factory, _reference, registry);
+        _reference.set(original);
+        closer.run();
+        Mockito.verify(original).incrementCounter("counter", 2);
+        Mockito.verify(original).close();
+
+        // Removed metrics which are still referenced continue to be drained
+        counter.inc(3);
+        _reference.set(after);
+        closer.run();
+        Mockito.verify(after).incrementCounter("counter", 3);
+        Mockito.verify(after).close();
+
+        final long skipped = registry.getSkippedPeriods();
+        closer.run();
+        Assert.assertEquals(skipped + 1, registry.getSkippedPeriods());
+    }
+
+    @Test
+    public void evictIdle() {
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofHours(1))
+                .setRecordingMode(RecordingMode.THREAD_LOCAL)
+                .setEvictionPeriods(2)
+                .build();
+        final Counter idle = registry.counter("idle");
+        final Counter busy = registry.counter("busy");
+        final MetricRegistry.Closer closer = new MetricRegistry.Closer(_lock, _factory, _reference, registry);
+        _reference.set(Mockito.mock(Metrics.class));
+
+        busy.inc();
+        idle.inc();
+        closer.run();
+        busy.inc();
+        closer.run();
+        Assert.assertSame(idle, registry.getCounters().get("idle"));
+        busy.inc();
+        closer.run();
+        Assert.assertFalse(registry.getCounters().containsKey("idle"));
+        Assert.assertSame(busy, registry.getCounters().get("busy"));
+        Assert.assertNotSame(idle, registry.counter("idle"));
+    }
+
+    @Test
+    public void maxMetrics() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(metrics);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofHours(1))
+                .setMaxMetrics(2)
+                .build();
+        final Counter first = registry.counter("first");
+        registry.timer("second");
+        final Counter overflow = registry.counter("third");
+        Assert.assertNotSame(first, overflow);
+        Assert.assertSame(first, registry.counter("first"));
+        Assert.assertSame(overflow, registry.counter("fourth"));
+        Assert.assertEquals(2, registry.getRejectedNames());
+        Assert.assertFalse(registry.getCounters().containsKey("third"));
+
+        overflow.inc();
+        Mockito.verify(metrics).incrementCounter("codahale_extra.overflow.counter", 1);
+    }
+
+    @Test
+    public void maxNewMetricsPerPeriod() {
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofHours(1))
+                .setMaxNewMetricsPerPeriod(1)
+                .build();
+        registry.meter("first");
+        registry.histogram("second");
+        Assert.assertEquals(1, registry.getRejectedNames());
+        Assert.assertFalse(registry.getHistograms().containsKey("second"));
+
+        final MetricRegistry.Closer closer = new MetricRegistry.Closer(_lock, _factory, _reference, registry);
+        _reference.set(Mockito.mock(Metrics.class));
+        closer.run();
+        registry.histogram("second");
+        Assert.assertTrue(registry.getHistograms().containsKey("second"));
+        Assert.assertEquals(1, registry.getRejectedNames());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxMetricsInvalid() {
+        new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setMaxMetrics(0)
+                .build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxNewMetricsPerPeriodInvalid() {
+        new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setMaxNewMetricsPerPeriod(0)
+                .build();
+    }
+
+    @Test
+    public void builderDefaults() {
+        final MetricRegistry metricRegistry = new MetricRegistry.Builder().build();
+        Assert.assertEquals(Duration.ofMillis(500), metricRegistry.getPeriod());
+        Assert.assertTrue(metricRegistry.getMetricsFactory() instanceof TsdMetricsFactory);
+    }
+
     @Test
     public void counter() {
         final MetricRegistry metricRegistry = new MetricRegistry();
@@ -124,7 +670,7 @@ public class MetricRegistryTest {
 
     @Test
     public void closer() {
-        final MetricRegistry registry = new MetricRegistry();
+        final MetricRegistry registry = new MetricRegistry.Builder().setPeriod(Duration.ofHours(1)).build();
         @SuppressWarnings("unchecked")
         final Gauge<Integer> gauge = (Gauge<Integer>) (Gauge<?>) Mockito.mock(Gauge.class);
         registry.register("some_gauge", gauge);
@@ -148,9 +694,29 @@ public class MetricRegistryTest {
         Mockito.verifyZeroInteractions(after);
     }
 
+    @Test
+    public void gaugeIndex() {
+        final MetricRegistry registry = new MetricRegistry.Builder().setPeriod(Duration.ofHours(1)).build();
+        registry.register("removed", (Gauge<Integer>) () -> 1);
+        registry.register("matching", (Gauge<Integer>) () -> 2);
+        registry.register("kept", (Gauge<Integer>) () -> 3);
+        registry.register("set", (MetricSet) () -> Collections.singletonMap("child", (Gauge<Integer>) () -> 4));
+        Assert.assertTrue(registry.remove("removed"));
+        registry.removeMatching((name, metric) -> name.startsWith("match"));
+        final MetricRegistry.Closer closer = new MetricRegistry.Closer(_lock, _factory, _reference, registry);
+        final Metrics original = Mockito.mock(Metrics.class);
+        _reference.set(original);
+
+        closer.run();
+        Mockito.verify(original).setGauge("kept", 3d);
+        Mockito.verify(original).setGauge("set.child", 4d);
+        Mockito.verify(original).close();
+        Mockito.verifyNoMoreInteractions(original);
+    }
+
     @Test
     public void gaugeString() {
-        final MetricRegistry registry = new MetricRegistry();
+        final MetricRegistry registry = new MetricRegistry.Builder().setPeriod(Duration.ofHours(1)).build();
         @SuppressWarnings("unchecked")
         final Gauge<String> gauge = (Gauge<String>) (Gauge<?>) Mockito.mock(Gauge.class);
         registry.register("some_gauge", gauge);
@@ -175,7 +741,7 @@ public class MetricRegistryTest {
 
     @Test
     public void gaugeThrows() {
-        final MetricRegistry registry = new MetricRegistry();
+        final MetricRegistry registry = new MetricRegistry.Builder().setPeriod(Duration.ofHours(1)).build();
         @SuppressWarnings("unchecked")
         final Gauge<Integer> gauge = (Gauge<Integer>) (Gauge<?>) Mockito.mock(Gauge.class);
         registry.register("some_gauge", gauge);
@@ -198,6 +764,176 @@ public class MetricRegistryTest {
         Mockito.verifyZeroInteractions(after);
     }
 
+    @Test
+    public void closeRecordsLastPeriod() {
+        final Metrics original = Mockito.mock(Metrics.class);
+        final Metrics after = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(original, after);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setRecordingMode(RecordingMode.THREAD_LOCAL)
+                .setPeriod(Duration.ofHours(1))
+                .build();
+        registry.counter("counter").inc(2);
+        registry.register("gauge", (Gauge<Integer>) () -> 3);
+
+        registry.close();
+        registry.close();
+        Mockito.verify(original).incrementCounter("counter", 2);
+        Mockito.verify(original).setGauge("gauge", 3d);
+        Mockito.verify(original).close();
+        Mockito.verifyZeroInteractions(after);
+    }
+
+    @Test
+    public void closeFlushesAndClosesSinks() throws IOException {
+        Mockito.when(_factory.create()).thenReturn(Mockito.mock(Metrics.class));
+        final Sink delegate = Mockito.mock(Sink.class);
+        final AsyncSink async = new AsyncSink.Builder().setSink(delegate).build();
+        final Sink buffered = Mockito.mock(Sink.class, Mockito.withSettings().extraInterfaces(Flushable.class, Closeable.class));
+        final Sink plain = Mockito.mock(Sink.class);
+        final Event event = Mockito.mock(Event.class);
+        async.record(event);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofHours(1))
+                .setSinks(Arrays.asList(async, buffered, plain))
+                .setCloseTimeout(Duration.ofSeconds(10))
+                .build();
+
+        registry.close();
+        Mockito.verify(delegate).record(event);
+        Assert.assertEquals(0, async.getQueued());
+        Mockito.verify((Flushable) buffered).flush();
+        Mockito.verify((Closeable) buffered).close();
+        Mockito.verifyZeroInteractions(plain);
+        async.record(event);
+        Assert.assertEquals(1, async.getDropped());
+    }
+
+    @Test
+    public void closeSinkFailure() throws IOException {
+        Mockito.when(_factory.create()).thenReturn(Mockito.mock(Metrics.class));
+        final Sink failing = Mockito.mock(Sink.class, Mockito.withSettings().extraInterfaces(Closeable.class));
+        Mockito.doThrow(new IOException()).when((Closeable) failing).close();
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofHours(1))
+                .setSinks(Collections.singletonList(failing))
+                .build();
+        registry.close();
+        Mockito.verify((Closeable) failing).close();
+    }
+
+    @Test
+    public void closeTimeout() {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        Mockito.doAnswer(invocation -> {
+                    release.await();
+                    return null;
+                }).when(metrics).close();
+        Mockito.when(_factory.create()).thenReturn(metrics);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofHours(1))
+                .setCloseTimeout(Duration.ofMillis(50))
+                .build();
+        registry.counter("counter").inc();
+
+        final long start = System.nanoTime();
+        registry.close();
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        release.countDown();
+        Mockito.verify(metrics, Mockito.timeout(1000)).close();
+    }
+
+    @Test
+    public void closeInterrupted() {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        Mockito.doAnswer(invocation -> {
+                    release.await();
+                    return null;
+                }).when(metrics).close();
+        Mockito.when(_factory.create()).thenReturn(metrics);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofHours(1))
+                .build();
+        registry.counter("counter").inc();
+
+        Thread.currentThread().interrupt();
+        registry.close();
+        Assert.assertTrue(Thread.interrupted());
+        release.countDown();
+    }
+
+    @Test
+    public void closeDefaultMetricsFactory() {
+        new MetricRegistry.Builder()
+                .setPeriod(Duration.ofHours(1))
+                .build()
+                .close();
+    }
+
+    @Test
+    public void shutdownHookRemovedOnClose() {
+        Mockito.when(_factory.create()).thenReturn(Mockito.mock(Metrics.class));
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofHours(1))
+                .setShutdownHook(true)
+                .build();
+        registry.close();
+    }
+
+    @Test
+    public void instrumented() {
+        final Metrics original = Mockito.mock(Metrics.class);
+        Mockito.when(_factory.create()).thenReturn(original, Mockito.mock(Metrics.class));
+        final Sink delegate = Mockito.mock(Sink.class);
+        final MetricRegistry registry = new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setPeriod(Duration.ofHours(1))
+                .setSinks(Collections.singletonList(new AsyncSink.Builder().setSink(delegate).build()))
+                .setInstrumented(true)
+                .build();
+        Assert.assertSame(_factory, registry.getMetricsFactory());
+        registry.counter("counter").inc();
+        registry.timer("timer").update(1, TimeUnit.MILLISECONDS);
+        registry.register("gauge", (Gauge<Integer>) () -> {
+            throw new IllegalStateException();
+        });
+
+        registry.close();
+        Mockito.verify(original).incrementCounter("codahale_extra.samples", 2);
+        Mockito.verify(original).setGauge("codahale_extra.names", 2L);
+        Mockito.verify(original).incrementCounter("codahale_extra.lock.reads", 2);
+        Mockito.verify(original).incrementCounter("codahale_extra.gauges.failed", 1);
+        Mockito.verify(original).incrementCounter("codahale_extra.names.rejected", 0);
+        Mockito.verify(original).incrementCounter("codahale_extra.sinks.dropped", 0);
+        Mockito.verify(original).setGauge("codahale_extra.sinks.queued", 0L);
+        Mockito.verify(original).close();
+        Assert.assertEquals(1, registry.getGaugeFailures());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void closeTimeoutInvalid() {
+        new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setCloseTimeout(Duration.ZERO)
+                .build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void closeTimeoutNegative() {
+        new MetricRegistry.Builder()
+                .setMetricsFactory(_factory)
+                .setCloseTimeout(Duration.ofSeconds(-1))
+                .build();
+    }
+
     @Mock
     private SafeRefLock<Metrics> _lock;
     @Mock
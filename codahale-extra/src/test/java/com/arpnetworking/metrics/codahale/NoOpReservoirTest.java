@@ -0,0 +1,35 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the NoOpReservoir class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class NoOpReservoirTest {
+    @Test
+    public void discards() {
+        final NoOpReservoir reservoir = new NoOpReservoir();
+        reservoir.update(5);
+        Assert.assertEquals(0, reservoir.size());
+        Assert.assertEquals(0, reservoir.getSnapshot().size());
+        Assert.assertEquals(0, reservoir.getSnapshot().getMax());
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the OffHeapSampleBuffer class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class OffHeapSampleBufferTest {
+    @Test
+    public void recordAndDrain() {
+        final ChunkPool pool = new ChunkPool(32, 8);
+        final OffHeapSampleBuffer buffer = new OffHeapSampleBuffer(pool);
+        Assert.assertTrue(buffer.isEmpty());
+        final List<Long> expected = new ArrayList<>();
+        for (long i = 0; i < 10; ++i) {
+            buffer.record(i);
+            expected.add(i);
+        }
+        Assert.assertFalse(buffer.isEmpty());
+
+        final List<Long> drained = new ArrayList<>();
+        buffer.drain(drained::add);
+        Assert.assertEquals(expected, drained);
+        Assert.assertTrue(buffer.isEmpty());
+        Assert.assertEquals(3, pool.getPooled());
+    }
+
+    @Test
+    public void reusesChunks() {
+        final ChunkPool pool = new ChunkPool(32, 8);
+        final OffHeapSampleBuffer buffer = new OffHeapSampleBuffer(pool);
+        final List<Long> drained = new ArrayList<>();
+        for (long period = 0; period < 4; ++period) {
+            buffer.record(period);
+            buffer.drain(drained::add);
+            Assert.assertEquals(1, pool.getPooled());
+        }
+        Assert.assertEquals(4, drained.size());
+        Assert.assertEquals(Long.valueOf(3), drained.get(3));
+    }
+
+    @Test
+    public void drainEmpty() {
+        final OffHeapSampleBuffer buffer = new OffHeapSampleBuffer(new ChunkPool());
+        final List<Long> drained = new ArrayList<>();
+        buffer.drain(drained::add);
+        Assert.assertTrue(drained.isEmpty());
+    }
+
+    @Test
+    public void recordBatch() {
+        final ChunkPool pool = new ChunkPool(32, 8);
+        final OffHeapSampleBuffer buffer = new OffHeapSampleBuffer(pool);
+        final long[] values = new long[10];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = i;
+        }
+        buffer.record(values, 2, 6);
+        final List<Long> drained = new ArrayList<>();
+        buffer.drain(drained::add);
+        Assert.assertEquals(Arrays.asList(2L, 3L, 4L, 5L, 6L, 7L), drained);
+    }
+}
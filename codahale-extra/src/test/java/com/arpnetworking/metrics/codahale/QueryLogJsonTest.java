@@ -0,0 +1,112 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.CompoundUnit;
+import com.arpnetworking.metrics.Event;
+import com.arpnetworking.metrics.Quantity;
+import com.arpnetworking.metrics.Unit;
+import com.arpnetworking.metrics.Units;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests for the QueryLogJson class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class QueryLogJsonTest {
+    @Test
+    public void annotationsOnly() {
+        final Map<String, String> annotations = new LinkedHashMap<>();
+        annotations.put("_host", "a\"b\\c");
+        annotations.put("_id", "\n\r\t\u0001");
+        final Event event = createEvent(
+                annotations,
+                Collections.emptyMap(),
+                Collections.emptyMap(),
+                Collections.emptyMap());
+        Assert.assertEquals(
+                "{\"version\":\"2f\",\"annotations\":{\"_host\":\"a\\\"b\\\\c\",\"_id\":\"\\n\\r\\t\\u0001\"}}",
+                toJson(event));
+    }
+
+    @Test
+    public void samples() {
+        final Map<String, List<Quantity>> counters = new LinkedHashMap<>();
+        counters.put("c1", Arrays.asList(createQuantity(1L, null), createQuantity(2, null)));
+        counters.put("c2", Collections.singletonList(createQuantity(3L, null)));
+        final Map<String, List<Quantity>> gauges = Collections.singletonMap(
+                "g",
+                Arrays.asList(
+                        createQuantity(1.5d, null),
+                        createQuantity(Double.NaN, null),
+                        createQuantity(Float.POSITIVE_INFINITY, null)));
+        final CompoundUnit rate = Mockito.mock(CompoundUnit.class);
+        Mockito.when(rate.getNumeratorUnits()).thenReturn(Collections.singletonList(Units.BYTE));
+        Mockito.when(rate.getDenominatorUnits()).thenReturn(Collections.singletonList(Units.SECOND));
+        final CompoundUnit none = Mockito.mock(CompoundUnit.class);
+        Mockito.when(none.getNumeratorUnits()).thenReturn(Collections.emptyList());
+        Mockito.when(none.getDenominatorUnits()).thenReturn(Collections.emptyList());
+        final Map<String, List<Quantity>> timers = Collections.singletonMap(
+                "t",
+                Arrays.asList(
+                        createQuantity(7L, Units.NANOSECOND),
+                        createQuantity(8L, rate),
+                        createQuantity(9L, none)));
+        final Event event = createEvent(Collections.emptyMap(), counters, gauges, timers);
+        Assert.assertEquals(
+                "{\"version\":\"2f\",\"annotations\":{},"
+                        + "\"counters\":{\"c1\":{\"values\":[{\"value\":1},{\"value\":2}]},\"c2\":{\"values\":[{\"value\":3}]}},"
+                        + "\"gauges\":{\"g\":{\"values\":[{\"value\":1.5},{\"value\":\"NaN\"},{\"value\":\"Infinity\"}]}},"
+                        + "\"timers\":{\"t\":{\"values\":[{\"value\":7,\"unitNumerators\":[\"nanosecond\"]},"
+                        + "{\"value\":8,\"unitNumerators\":[\"byte\"],\"unitDenominators\":[\"second\"]},{\"value\":9}]}}}",
+                toJson(event));
+    }
+
+    static Event createEvent(
+            final Map<String, String> annotations,
+            final Map<String, List<Quantity>> counters,
+            final Map<String, List<Quantity>> gauges,
+            final Map<String, List<Quantity>> timers) {
+        final Event event = Mockito.mock(Event.class);
+        Mockito.when(event.getAnnotations()).thenReturn(annotations);
+        Mockito.when(event.getCounterSamples()).thenReturn(counters);
+        Mockito.when(event.getGaugeSamples()).thenReturn(gauges);
+        Mockito.when(event.getTimerSamples()).thenReturn(timers);
+        return event;
+    }
+
+    static Quantity createQuantity(final Number value, final Unit unit) {
+        final Quantity quantity = Mockito.mock(Quantity.class);
+        Mockito.when(quantity.getValue()).thenReturn(value);
+        Mockito.when(quantity.getUnit()).thenReturn(unit);
+        return quantity;
+    }
+
+    private static String toJson(final Event event) {
+        final StringBuilder json = new StringBuilder();
+        QueryLogJson.append(event, json);
+        return json.toString();
+    }
+}
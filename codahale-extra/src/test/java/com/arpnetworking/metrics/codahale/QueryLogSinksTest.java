@@ -0,0 +1,90 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Sink;
+import com.arpnetworking.metrics.impl.TsdLogSink;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Tests for the QueryLogSinks class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class QueryLogSinksTest {
+    @Test
+    public void tsdByDefault() {
+        final Properties properties = new Properties();
+        properties.setProperty("METRICS_CODAHALE_EXTRA_DIRECTORY", _folder.getRoot().getPath());
+        Assert.assertTrue(QueryLogSinks.create(properties) instanceof TsdLogSink);
+    }
+
+    @Test
+    public void mapped() {
+        final Properties properties = new Properties();
+        properties.setProperty("METRICS_CODAHALE_EXTRA_DIRECTORY", _folder.getRoot().getPath());
+        properties.setProperty("METRICS_CODAHALE_EXTRA_SINK", "MAPPED");
+        Assert.assertTrue(QueryLogSinks.create(properties) instanceof MappedFileSink);
+    }
+
+    @Test
+    public void binary() {
+        final Properties properties = new Properties();
+        properties.setProperty("METRICS_CODAHALE_EXTRA_DIRECTORY", _folder.getRoot().getPath());
+        properties.setProperty("METRICS_CODAHALE_EXTRA_SINK", "binary");
+        Assert.assertTrue(QueryLogSinks.create(properties) instanceof BinaryFileSink);
+    }
+
+    @Test
+    public void gzip() throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty("METRICS_CODAHALE_EXTRA_DIRECTORY", _folder.getRoot().getPath());
+        properties.setProperty("METRICS_CODAHALE_EXTRA_SINK", "gzip");
+        properties.setProperty("METRICS_CODAHALE_EXTRA_COMPRESSION_LEVEL", "1");
+        final Sink sink = QueryLogSinks.create(properties);
+        Assert.assertTrue(sink instanceof GzipFileSink);
+        ((GzipFileSink) sink).close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void gzipLevelInvalid() {
+        final Properties properties = new Properties();
+        properties.setProperty("METRICS_CODAHALE_EXTRA_SINK", "gzip");
+        properties.setProperty("METRICS_CODAHALE_EXTRA_COMPRESSION_LEVEL", "fast");
+        QueryLogSinks.create(properties);
+    }
+
+    @Test
+    public void systemProperties() {
+        Assert.assertNotNull(QueryLogSinks.create());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknown() {
+        final Properties properties = new Properties();
+        properties.setProperty("METRICS_CODAHALE_EXTRA_SINK", "unknown");
+        QueryLogSinks.create(properties);
+    }
+
+    @Rule
+    public final TemporaryFolder _folder = new TemporaryFolder();
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.Units;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests for the RegistryInstrumentation class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class RegistryInstrumentationTest {
+    @Test
+    public void recordsOverhead() {
+        final RegistryInstrumentation instrumentation = new RegistryInstrumentation();
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        instrumentation.recordReadWait(10);
+        instrumentation.recordReadWait(20);
+
+        instrumentation.recordTo(metrics, 1, 2, 3, 4);
+        Mockito.verify(metrics).resetCounter("codahale_extra.samples");
+        Mockito.verify(metrics).incrementCounter("codahale_extra.samples", 0);
+        Mockito.verify(metrics).setGauge("codahale_extra.names", 4L);
+        Mockito.verify(metrics).setTimer("codahale_extra.lock.read_wait", 30, TimeUnit.NANOSECONDS);
+        Mockito.verify(metrics).resetCounter("codahale_extra.lock.reads");
+        Mockito.verify(metrics).incrementCounter("codahale_extra.lock.reads", 2);
+        Mockito.verify(metrics).setTimer("codahale_extra.closer.swap", 1, TimeUnit.NANOSECONDS);
+        Mockito.verify(metrics).setTimer("codahale_extra.closer.drain", 2, TimeUnit.NANOSECONDS);
+        Mockito.verify(metrics).setTimer("codahale_extra.closer.gauges", 3, TimeUnit.NANOSECONDS);
+        Mockito.verifyNoMoreInteractions(metrics);
+
+        // The striped counters are reset and the close of the previous period recorded
+        final Metrics next = Mockito.mock(Metrics.class);
+        instrumentation.recordClose(5);
+        instrumentation.recordTo(next, 1, 2, 3, 0);
+        Mockito.verify(next).setTimer("codahale_extra.lock.read_wait", 0, TimeUnit.NANOSECONDS);
+        Mockito.verify(next).incrementCounter("codahale_extra.lock.reads", 0);
+        Mockito.verify(next).setTimer("codahale_extra.closer.close", 5, TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void countersAsChanges() {
+        final RegistryInstrumentation instrumentation = new RegistryInstrumentation();
+        final AtomicLong count = new AtomicLong(3);
+        instrumentation.addCounter("counter", count::get);
+        instrumentation.addGauge("gauge", () -> 7);
+        final Metrics first = Mockito.mock(Metrics.class);
+        final Metrics second = Mockito.mock(Metrics.class);
+
+        instrumentation.recordTo(first, 0, 0, 0, 0);
+        count.set(5);
+        instrumentation.recordTo(second, 0, 0, 0, 0);
+        Mockito.verify(first).resetCounter("counter");
+        Mockito.verify(first).incrementCounter("counter", 3);
+        Mockito.verify(first).setGauge("gauge", 7L);
+        Mockito.verify(second).incrementCounter("counter", 2);
+        Mockito.verify(second).setGauge("gauge", 7L);
+    }
+
+    @Test
+    public void countsSamples() {
+        final Metrics metrics = Mockito.mock(Metrics.class);
+        final MetricsFactory factory = Mockito.mock(MetricsFactory.class);
+        Mockito.when(factory.create()).thenReturn(metrics);
+        final Instant now = Instant.now();
+        Mockito.when(metrics.isOpen()).thenReturn(true);
+        Mockito.when(metrics.getOpenTime()).thenReturn(now);
+        Mockito.when(metrics.getCloseTime()).thenReturn(now);
+        final RegistryInstrumentation instrumentation = new RegistryInstrumentation();
+        final Metrics counting = instrumentation.wrap(factory).create();
+
+        counting.createCounter("a");
+        counting.incrementCounter("b");
+        counting.incrementCounter("c", 2);
+        counting.decrementCounter("d");
+        counting.decrementCounter("e", 2);
+        counting.resetCounter("f");
+        counting.createTimer("g");
+        counting.startTimer("h");
+        counting.stopTimer("h");
+        counting.setTimer("i", 1, TimeUnit.SECONDS);
+        counting.setTimer("j", 1, Units.SECOND);
+        counting.setGauge("k", 1d);
+        counting.setGauge("l", 1d, Units.SECOND);
+        counting.setGauge("m", 1L);
+        counting.setGauge("n", 1L, Units.SECOND);
+        counting.addAnnotation("key", "value");
+        counting.addAnnotations(Collections.singletonMap("key", "value"));
+        Assert.assertTrue(counting.isOpen());
+        Assert.assertSame(now, counting.getOpenTime());
+        Assert.assertSame(now, counting.getCloseTime());
+
+        instrumentation.recordTo(counting, 0, 0, 0, 0);
+        counting.close();
+        Mockito.verify(metrics).incrementCounter("codahale_extra.samples", 13);
+        Mockito.verify(metrics).createCounter("a");
+        Mockito.verify(metrics).incrementCounter("b");
+        Mockito.verify(metrics).incrementCounter("c", 2);
+        Mockito.verify(metrics).decrementCounter("d");
+        Mockito.verify(metrics).decrementCounter("e", 2);
+        Mockito.verify(metrics).resetCounter("f");
+        Mockito.verify(metrics).createTimer("g");
+        Mockito.verify(metrics).startTimer("h");
+        Mockito.verify(metrics).stopTimer("h");
+        Mockito.verify(metrics).setTimer("i", 1, TimeUnit.SECONDS);
+        Mockito.verify(metrics).setTimer("j", 1, Units.SECOND);
+        Mockito.verify(metrics).setGauge("k", 1d);
+        Mockito.verify(metrics).setGauge("l", 1d, Units.SECOND);
+        Mockito.verify(metrics).setGauge("m", 1L);
+        Mockito.verify(metrics).setGauge("n", 1L, Units.SECOND);
+        Mockito.verify(metrics).addAnnotation("key", "value");
+        Mockito.verify(metrics).addAnnotations(Collections.singletonMap("key", "value"));
+        Mockito.verify(metrics).close();
+    }
+}
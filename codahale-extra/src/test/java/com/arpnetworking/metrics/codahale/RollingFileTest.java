@@ -0,0 +1,142 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for the RollingFile class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class RollingFileTest {
+    @Test
+    public void rollsAtIntervals() throws IOException {
+        final RollingFile file = new RollingFile(_folder.getRoot(), "query", ".log", Duration.ofMillis(1000), 24);
+        Assert.assertEquals(_folder.getRoot().toPath().resolve("query.log"), file.getActive());
+        Assert.assertTrue(file.isDue(0));
+        file.scheduleNext(1500);
+        Assert.assertFalse(file.isDue(1999));
+        Assert.assertTrue(file.isDue(2000));
+        file.roll(2500);
+        Assert.assertFalse(file.isDue(2999));
+        Assert.assertTrue(file.isDue(3000));
+        Assert.assertTrue(listFiles().isEmpty());
+    }
+
+    @Test
+    public void renamesActive() throws IOException {
+        final RollingFile file = new RollingFile(_folder.getRoot(), "query", ".log", Duration.ofHours(1), 24);
+        Files.write(file.getActive(), Collections.singletonList("first"));
+        file.roll(0);
+        Files.write(file.getActive(), Collections.singletonList("second"));
+        file.roll(0);
+        final List<String> files = listFiles();
+        Assert.assertEquals(2, files.size());
+        Assert.assertFalse(files.contains("query.log"));
+        Assert.assertTrue(files.get(0).matches("query\\.\\d{4}-\\d{2}-\\d{2}-\\d{2}-\\d{2}-\\d{2}-1\\.log"));
+        Assert.assertTrue(files.get(1).matches("query\\.\\d{4}-\\d{2}-\\d{2}-\\d{2}-\\d{2}-\\d{2}\\.log"));
+    }
+
+    @Test
+    public void prunesHistory() throws IOException {
+        final RollingFile file = new RollingFile(_folder.getRoot(), "query", ".log", Duration.ofHours(1), 2);
+        Files.write(_folder.getRoot().toPath().resolve("other.log"), Collections.singletonList("other"));
+        for (int i = 0; i < 4; ++i) {
+            Files.write(file.getActive(), Collections.singletonList("line"));
+            file.roll(Duration.ofDays(i).toMillis());
+        }
+        Files.write(file.getActive(), Collections.singletonList("active"));
+        final List<String> files = listFiles();
+        Assert.assertEquals(4, files.size());
+        Assert.assertTrue(files.contains("other.log"));
+        Assert.assertTrue(files.contains("query.log"));
+    }
+
+    @Test
+    public void stampsInUtc() throws IOException {
+        final RollingFile file = new RollingFile(_folder.getRoot(), "query", ".log", Duration.ofHours(1), 24);
+        Files.write(file.getActive(), Collections.singletonList("line"));
+        file.roll(Duration.ofHours(17).toMillis());
+        Assert.assertEquals(Collections.singletonList("query.1970-01-01-17-00-00.log"), listFiles());
+    }
+
+    @Test
+    public void prunesCollisionsInOrder() throws IOException {
+        final RollingFile file = new RollingFile(_folder.getRoot(), "query", ".log", Duration.ofHours(1), 2);
+        for (int i = 0; i < 3; ++i) {
+            Files.write(file.getActive(), Collections.singletonList("line"));
+            file.roll(0);
+        }
+        Assert.assertEquals(
+                Arrays.asList("query.1970-01-01-00-00-00-1.log", "query.1970-01-01-00-00-00-2.log"),
+                listFiles());
+    }
+
+    @Test
+    public void keepsForeignFiles() throws IOException {
+        final RollingFile file = new RollingFile(_folder.getRoot(), "query", ".log", Duration.ofHours(1), 0);
+        final List<String> foreign = Arrays.asList(
+                "query.2015-11-08-17.log",
+                "query.2015-11-08-17-44-00-x.log",
+                "query.2015-13-08-17-44-00.log");
+        for (final String name : foreign) {
+            Files.write(_folder.getRoot().toPath().resolve(name), Collections.singletonList("foreign"));
+        }
+        Files.write(file.getActive(), Collections.singletonList("line"));
+        file.roll(0);
+        final List<String> expected = new ArrayList<>(foreign);
+        Collections.sort(expected);
+        Assert.assertEquals(expected, listFiles());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void intervalInvalid() {
+        new RollingFile(_folder.getRoot(), "query", ".log", Duration.ZERO, 24);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxHistoryInvalid() {
+        new RollingFile(_folder.getRoot(), "query", ".log", Duration.ofHours(1), -1);
+    }
+
+    private List<String> listFiles() throws IOException {
+        final List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(_folder.getRoot().toPath())) {
+            for (final Path file : files) {
+                names.add(file.getFileName().toString());
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    @Rule
+    public final TemporaryFolder _folder = new TemporaryFolder();
+}
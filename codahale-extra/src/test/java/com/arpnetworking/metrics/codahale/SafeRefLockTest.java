@@ -22,9 +22,12 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.function.LongConsumer;
 
 /**
  * Tests for the SafeRefLock class.
@@ -54,6 +57,20 @@ public class SafeRefLockTest {
         Mockito.verifyNoMoreInteractions(readLock);
     }
 
+    @Test
+    public void readWaitsTimed() {
+        final Lock readLock = Mockito.mock(Lock.class);
+        Mockito.when(_lock.readLock()).thenReturn(readLock);
+        final List<Long> waits = new ArrayList<>();
+        final SafeRefLock<Object> safeLock = new SafeRefLock<>(_reference, _lock, waits::add);
+        safeLock.readLocked(obj -> Assert.assertSame(_object, obj));
+
+        Assert.assertEquals(1, waits.size());
+        Assert.assertTrue(waits.get(0) >= 0);
+        Mockito.verify(readLock).lock();
+        Mockito.verify(readLock).unlock();
+    }
+
     @Test
     public void writeLock() {
         final Lock writeLock = Mockito.mock(Lock.class);
@@ -71,6 +88,26 @@ public class SafeRefLockTest {
         Mockito.verifyNoMoreInteractions(writeLock);
     }
 
+    @Test
+    public void checkAndClearRead() {
+        Mockito.when(_lock.readLock()).thenReturn(Mockito.mock(Lock.class));
+        Mockito.when(_lock.writeLock()).thenReturn(Mockito.mock(Lock.class));
+        final SafeRefLock<Object> safeLock = new SafeRefLock<>(_reference, _lock);
+        Assert.assertFalse(safeLock.checkAndClearRead());
+        safeLock.writeLocked(obj -> { });
+        Assert.assertFalse(safeLock.checkAndClearRead());
+        safeLock.readLocked(obj -> { });
+        safeLock.readLocked(obj -> { });
+        Assert.assertTrue(safeLock.checkAndClearRead());
+        Assert.assertFalse(safeLock.checkAndClearRead());
+    }
+
+    @Test
+    public void readFlaggedWhenCheckedBeforeAcquired() {
+        assertReadFlaggedWhenCheckedBeforeAcquired(null);
+        assertReadFlaggedWhenCheckedBeforeAcquired(wait -> { });
+    }
+
     @Test(expected = RuntimeException.class)
     public void handlesException() throws InterruptedException {
         final Lock readLock = Mockito.mock(Lock.class);
@@ -85,6 +122,17 @@ public class SafeRefLockTest {
         Mockito.verifyNoMoreInteractions(readLock);
     }
 
+    private void assertReadFlaggedWhenCheckedBeforeAcquired(final LongConsumer readWaits) {
+        final Lock readLock = Mockito.mock(Lock.class);
+        Mockito.when(_lock.readLock()).thenReturn(readLock);
+        final SafeRefLock<Object> safeLock = new SafeRefLock<>(_reference, _lock, readWaits);
+        safeLock.readLocked(obj -> { });
+        // The period is checked, and swapped, while the reader waits for the lock
+        Mockito.doAnswer(invocation -> safeLock.checkAndClearRead()).when(readLock).lock();
+        safeLock.readLocked(obj -> { });
+        Assert.assertTrue(safeLock.checkAndClearRead());
+    }
+
     @Mock
     private ReadWriteLock _lock;
     private final Object _object = new Object();
@@ -0,0 +1,74 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tests for the SampleArray class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class SampleArrayTest {
+    @Test
+    public void drainSwapsArrays() {
+        final SampleArray array = new SampleArray();
+        final List<Long> drained = new ArrayList<>();
+        for (long i = 0; i < 20; ++i) {
+            array.add(i);
+        }
+        array.drain(drained::add);
+        Assert.assertEquals(20, drained.size());
+        array.add(20);
+        array.add(21);
+        drained.clear();
+        array.drain(drained::add);
+        Assert.assertEquals(Arrays.asList(20L, 21L), drained);
+    }
+
+    @Test
+    public void clear() {
+        final SampleArray array = new SampleArray();
+        array.add(1);
+        array.clear();
+        Assert.assertTrue(array.isEmpty());
+        final List<Long> drained = new ArrayList<>();
+        array.drain(drained::add);
+        Assert.assertTrue(drained.isEmpty());
+    }
+
+    @Test
+    public void addAll() {
+        final SampleArray array = new SampleArray();
+        final long[] values = new long[40];
+        for (int i = 0; i < values.length; ++i) {
+            values[i] = i;
+        }
+        array.add(-1);
+        array.addAll(values, 2, 3);
+        array.addAll(values, 0, 40);
+        final List<Long> drained = new ArrayList<>();
+        array.drain(drained::add);
+        Assert.assertEquals(44, drained.size());
+        Assert.assertEquals(Arrays.asList(-1L, 2L, 3L, 4L, 0L), drained.subList(0, 5));
+        Assert.assertEquals(Long.valueOf(39), drained.get(43));
+    }
+}
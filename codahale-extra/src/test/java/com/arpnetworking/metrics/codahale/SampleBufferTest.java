@@ -0,0 +1,58 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * Tests for the SampleBuffer interface.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class SampleBufferTest {
+    @Test
+    public void recordBatchDefault() {
+        final RecordingSampleBuffer buffer = new RecordingSampleBuffer();
+        buffer.record(new long[] {5, 2, 3, 5}, 1, 2);
+        Assert.assertEquals(Arrays.asList(2L, 3L), buffer._recorded);
+    }
+
+    private static final class RecordingSampleBuffer implements SampleBuffer {
+        @Override
+        public void record(final long value) {
+            _recorded.add(value);
+        }
+
+        @Override
+        public void drain(final LongConsumer consumer) {
+            _recorded.forEach(consumer::accept);
+            _recorded.clear();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return _recorded.isEmpty();
+        }
+
+        private final List<Long> _recorded = new ArrayList<>();
+    }
+}
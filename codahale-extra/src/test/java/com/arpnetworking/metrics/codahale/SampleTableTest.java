@@ -0,0 +1,78 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for the SampleTable class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class SampleTableTest {
+    @Test
+    public void recordAndDrain() {
+        final SampleTable table = new SampleTable();
+        final int first = table.register();
+        final int second = table.register();
+        Assert.assertNotEquals(first, second);
+        Assert.assertTrue(table.isEmpty(first));
+        table.record(first, 1);
+        table.record(second, 2);
+        table.record(first, 3);
+        Assert.assertFalse(table.isEmpty(first));
+
+        final List<Long> drained = new ArrayList<>();
+        table.drain(first, drained::add);
+        Assert.assertEquals(Arrays.asList(1L, 3L), drained);
+        Assert.assertTrue(table.isEmpty(first));
+        Assert.assertFalse(table.isEmpty(second));
+    }
+
+    @Test
+    public void grows() {
+        final SampleTable table = new SampleTable();
+        final List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            final int id = table.register();
+            table.record(id, i);
+            ids.add(id);
+        }
+        Assert.assertEquals(200, table.size());
+        for (int i = 0; i < ids.size(); ++i) {
+            final List<Long> drained = new ArrayList<>();
+            table.drain(ids.get(i), drained::add);
+            Assert.assertEquals(Collections.singletonList((long) i), drained);
+        }
+    }
+
+    @Test
+    public void releaseRecycles() {
+        final SampleTable table = new SampleTable();
+        final int id = table.register();
+        table.record(id, 1);
+        table.release(id);
+        Assert.assertEquals(id, table.register());
+        Assert.assertTrue(table.isEmpty(id));
+        Assert.assertEquals(1, table.size());
+    }
+}
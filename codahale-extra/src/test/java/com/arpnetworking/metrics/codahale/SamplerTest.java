@@ -0,0 +1,80 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the Sampler class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class SamplerTest {
+    @Test
+    public void keepsEverySampleAtRateOne() {
+        final Sampler sampler = new Sampler(1);
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertTrue(sampler.sample());
+        }
+        Assert.assertEquals(1, sampler.getRate(), 0);
+        Assert.assertEquals(100, sampler.getCount());
+    }
+
+    @Test
+    public void thinsSamples() {
+        final Sampler sampler = new Sampler(0.1);
+        int kept = 0;
+        for (int i = 0; i < 100000; ++i) {
+            if (sampler.sample()) {
+                ++kept;
+            }
+        }
+        Assert.assertEquals(100000, sampler.getCount());
+        // Over ten standard deviations from the expected 10000
+        Assert.assertTrue("kept=" + kept, kept > 9000 && kept < 11000);
+    }
+
+    @Test
+    public void drainCount() {
+        final Sampler sampler = new Sampler(0.5);
+        Assert.assertTrue(sampler.isEmpty());
+        sampler.sample();
+        sampler.sample();
+        Assert.assertFalse(sampler.isEmpty());
+        Assert.assertEquals(2, sampler.drainCount());
+        Assert.assertTrue(sampler.isEmpty());
+        Assert.assertEquals(0, sampler.drainCount());
+        sampler.sample();
+        Assert.assertEquals(1, sampler.drainCount());
+        Assert.assertEquals(3, sampler.getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rateZero() {
+        new Sampler(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rateAboveOne() {
+        new Sampler(1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rateNaN() {
+        new Sampler(Double.NaN);
+    }
+}
@@ -0,0 +1,298 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Tests for the StripedReadWriteLock class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class StripedReadWriteLockTest {
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidStripes() {
+        new StripedReadWriteLock(0);
+    }
+
+    @Test
+    public void readersShareLock() throws InterruptedException {
+        final StripedReadWriteLock lock = new StripedReadWriteLock();
+        lock.readLock().lock();
+        final Thread other = new Thread(() -> {
+            lock.readLock().lock();
+            lock.readLock().unlock();
+        });
+        other.start();
+        other.join(TIMEOUT);
+        Assert.assertFalse(other.isAlive());
+        Assert.assertFalse(lock.writeLock().tryLock());
+        lock.readLock().unlock();
+        Assert.assertTrue(lock.writeLock().tryLock());
+        lock.writeLock().unlock();
+    }
+
+    @Test
+    public void readReentrant() {
+        final StripedReadWriteLock lock = new StripedReadWriteLock(1);
+        lock.readLock().lock();
+        Assert.assertTrue(lock.readLock().tryLock());
+        lock.readLock().unlock();
+        Assert.assertFalse(lock.writeLock().tryLock());
+        lock.readLock().unlock();
+        Assert.assertTrue(lock.writeLock().tryLock());
+        lock.writeLock().unlock();
+    }
+
+    @Test
+    public void readReentrantWhileWriterWaits() throws InterruptedException {
+        final StripedReadWriteLock lock = new StripedReadWriteLock(1);
+        lock.readLock().lock();
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final Thread writer = new Thread(() -> {
+            lock.writeLock().lock();
+            acquired.countDown();
+            lock.writeLock().unlock();
+        });
+        writer.start();
+        // Returns once the writer is waiting, since new readers then back off
+        final Thread reader = new Thread(() -> {
+            while (lock.readLock().tryLock()) {
+                lock.readLock().unlock();
+                Thread.yield();
+            }
+        });
+        reader.start();
+        reader.join(TIMEOUT);
+        Assert.assertFalse(reader.isAlive());
+        Assert.assertTrue(lock.readLock().tryLock(TIMEOUT, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(lock.readLock().tryLock());
+        lock.readLock().lock();
+        lock.readLock().lockInterruptibly();
+        for (int i = 0; i < 4; ++i) {
+            lock.readLock().unlock();
+        }
+        Assert.assertFalse(acquired.await(WAIT, TimeUnit.MILLISECONDS));
+        lock.readLock().unlock();
+        Assert.assertTrue(acquired.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void writerExcludesReaders() throws InterruptedException {
+        final StripedReadWriteLock lock = new StripedReadWriteLock(3);
+        lock.writeLock().lock();
+        Assert.assertFalse(lock.readLock().tryLock());
+        Assert.assertFalse(lock.readLock().tryLock(1, TimeUnit.MILLISECONDS));
+        lock.writeLock().unlock();
+        Assert.assertTrue(lock.readLock().tryLock(1, TimeUnit.MILLISECONDS));
+        lock.readLock().unlock();
+    }
+
+    @Test
+    public void writerExcludesWriters() throws InterruptedException {
+        final StripedReadWriteLock lock = new StripedReadWriteLock(2);
+        lock.writeLock().lockInterruptibly();
+        final AtomicReference<Boolean> acquired = new AtomicReference<>();
+        final Thread other = new Thread(() -> {
+            acquired.set(lock.writeLock().tryLock());
+        });
+        other.start();
+        other.join(TIMEOUT);
+        Assert.assertFalse(acquired.get());
+        final Thread timed = new Thread(() -> {
+            try {
+                acquired.set(lock.writeLock().tryLock(1, TimeUnit.MILLISECONDS));
+            } catch (final InterruptedException e) {
+                acquired.set(null);
+            }
+        });
+        timed.start();
+        timed.join(TIMEOUT);
+        Assert.assertFalse(acquired.get());
+        lock.writeLock().unlock();
+    }
+
+    @Test
+    public void writeReentrant() {
+        final StripedReadWriteLock lock = new StripedReadWriteLock();
+        lock.writeLock().lock();
+        lock.writeLock().lock();
+        lock.writeLock().unlock();
+        Assert.assertFalse(lock.readLock().tryLock());
+        Assert.assertTrue(lock.writeLock().tryLock());
+        lock.writeLock().unlock();
+        lock.writeLock().unlock();
+        Assert.assertTrue(lock.readLock().tryLock());
+        lock.readLock().unlock();
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void writeUnlockNotHeld() {
+        new StripedReadWriteLock().writeLock().unlock();
+    }
+
+    @Test
+    public void readerWaitsForWriter() throws InterruptedException {
+        final StripedReadWriteLock lock = new StripedReadWriteLock();
+        lock.writeLock().lock();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch acquired = new CountDownLatch(2);
+        final Thread reader = new Thread(() -> {
+            started.countDown();
+            lock.readLock().lock();
+            acquired.countDown();
+            lock.readLock().unlock();
+            try {
+                lock.readLock().lockInterruptibly();
+                acquired.countDown();
+                lock.readLock().unlock();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        reader.start();
+        started.await();
+        Assert.assertFalse(acquired.await(WAIT, TimeUnit.MILLISECONDS));
+        lock.writeLock().unlock();
+        Assert.assertTrue(acquired.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void writerWaitsForReaders() throws InterruptedException {
+        final StripedReadWriteLock lock = new StripedReadWriteLock();
+        lock.readLock().lock();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final Thread writer = new Thread(() -> {
+            started.countDown();
+            lock.writeLock().lock();
+            acquired.countDown();
+            lock.writeLock().unlock();
+        });
+        writer.start();
+        started.await();
+        Assert.assertFalse(acquired.await(WAIT, TimeUnit.MILLISECONDS));
+        final AtomicReference<Boolean> other = new AtomicReference<>();
+        final Thread reader = new Thread(() -> other.set(lock.readLock().tryLock()));
+        reader.start();
+        reader.join(TIMEOUT);
+        Assert.assertFalse(other.get());
+        lock.readLock().unlock();
+        Assert.assertTrue(acquired.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void timedWriterWaitsForReaders() throws InterruptedException {
+        final StripedReadWriteLock lock = new StripedReadWriteLock();
+        lock.readLock().lock();
+        Assert.assertFalse(lock.writeLock().tryLock(1, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(lock.readLock().tryLock());
+        lock.readLock().unlock();
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicReference<Boolean> acquired = new AtomicReference<>();
+        final Thread writer = new Thread(() -> {
+            started.countDown();
+            try {
+                acquired.set(lock.writeLock().tryLock(TIMEOUT, TimeUnit.MILLISECONDS));
+                lock.writeLock().unlock();
+            } catch (final InterruptedException e) {
+                acquired.set(null);
+            }
+        });
+        writer.start();
+        started.await();
+        Thread.sleep(WAIT);
+        lock.readLock().unlock();
+        writer.join(TIMEOUT);
+        Assert.assertTrue(acquired.get());
+    }
+
+    @Test
+    public void readInterrupted() {
+        final StripedReadWriteLock lock = new StripedReadWriteLock();
+        lock.writeLock().lock();
+        Thread.currentThread().interrupt();
+        assertInterrupted(() -> lock.readLock().lockInterruptibly());
+        Thread.currentThread().interrupt();
+        assertInterrupted(() -> Assert.assertFalse(lock.readLock().tryLock(TIMEOUT, TimeUnit.MILLISECONDS)));
+        lock.writeLock().unlock();
+    }
+
+    @Test
+    public void writeInterrupted() throws InterruptedException {
+        assertWriterInterrupted(lock -> lock.lockInterruptibly());
+        assertWriterInterrupted(lock -> Assert.assertFalse(lock.tryLock(TIMEOUT, TimeUnit.MILLISECONDS)));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void readCondition() {
+        final Condition condition = new StripedReadWriteLock().readLock().newCondition();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void writeCondition() {
+        final Condition condition = new StripedReadWriteLock().writeLock().newCondition();
+    }
+
+    private static void assertInterrupted(final Interruptible action) {
+        try {
+            action.run();
+            Assert.fail("Expected InterruptedException");
+        } catch (final InterruptedException e) {
+            Assert.assertFalse(Thread.currentThread().isInterrupted());
+        }
+    }
+
+    private static void assertWriterInterrupted(final LockAction action) throws InterruptedException {
+        final StripedReadWriteLock lock = new StripedReadWriteLock();
+        lock.readLock().lock();
+        final AtomicReference<Boolean> interrupted = new AtomicReference<>(false);
+        final Thread writer = new Thread(() -> {
+            try {
+                action.run(lock.writeLock());
+            } catch (final InterruptedException e) {
+                interrupted.set(true);
+            }
+        });
+        writer.start();
+        Thread.sleep(WAIT);
+        writer.interrupt();
+        writer.join(TIMEOUT);
+        Assert.assertTrue(interrupted.get());
+        // The failed writer must not block readers
+        Assert.assertTrue(lock.readLock().tryLock());
+        lock.readLock().unlock();
+        lock.readLock().unlock();
+    }
+
+    private static final long WAIT = 50;
+    private static final long TIMEOUT = 5000;
+
+    private interface Interruptible {
+        void run() throws InterruptedException;
+    }
+
+    private interface LockAction {
+        void run(Lock lock) throws InterruptedException;
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for the ThreadLocalSampleBuffer class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class ThreadLocalSampleBufferTest {
+    @Test
+    public void drainEmpty() {
+        final ThreadLocalSampleBuffer buffer = new ThreadLocalSampleBuffer();
+        final List<Long> drained = new ArrayList<>();
+        buffer.drain(drained::add);
+        Assert.assertTrue(drained.isEmpty());
+    }
+
+    @Test
+    public void recordAndDrain() {
+        final ThreadLocalSampleBuffer buffer = new ThreadLocalSampleBuffer();
+        buffer.record(1);
+        buffer.record(2);
+        final List<Long> drained = new ArrayList<>();
+        buffer.drain(drained::add);
+        Assert.assertEquals(Arrays.asList(1L, 2L), drained);
+
+        drained.clear();
+        buffer.drain(drained::add);
+        Assert.assertTrue(drained.isEmpty());
+    }
+
+    @Test
+    public void isEmpty() throws InterruptedException {
+        final ThreadLocalSampleBuffer buffer = new ThreadLocalSampleBuffer();
+        Assert.assertTrue(buffer.isEmpty());
+        final Thread thread = new Thread(() -> buffer.record(1));
+        thread.start();
+        thread.join();
+        buffer.record(2);
+        Assert.assertFalse(buffer.isEmpty());
+        buffer.drain(value -> { });
+        Assert.assertTrue(buffer.isEmpty());
+        buffer.record(3);
+        Assert.assertFalse(buffer.isEmpty());
+    }
+
+    @Test
+    public void reusesDrainedArrays() {
+        final ThreadLocalSampleBuffer buffer = new ThreadLocalSampleBuffer();
+        final List<Long> drained = new ArrayList<>();
+        for (int period = 0; period < 4; ++period) {
+            buffer.record(period);
+            buffer.drain(drained::add);
+        }
+        Assert.assertEquals(Arrays.asList(0L, 1L, 2L, 3L), drained);
+    }
+
+    @Test
+    public void grows() {
+        final ThreadLocalSampleBuffer buffer = new ThreadLocalSampleBuffer();
+        final List<Long> expected = new ArrayList<>();
+        for (long i = 0; i < 100; ++i) {
+            buffer.record(i);
+            expected.add(i);
+        }
+        final List<Long> drained = new ArrayList<>();
+        buffer.drain(drained::add);
+        Assert.assertEquals(expected, drained);
+    }
+
+    @Test
+    public void multipleThreads() throws InterruptedException {
+        final ThreadLocalSampleBuffer buffer = new ThreadLocalSampleBuffer();
+        final int threadCount = 4;
+        final int samples = 1000;
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; ++i) {
+            final Thread thread = new Thread(() -> {
+                for (int j = 0; j < samples; ++j) {
+                    buffer.record(1);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        final List<Long> drained = new ArrayList<>();
+        buffer.drain(drained::add);
+        Assert.assertEquals(threadCount * samples, drained.size());
+        Assert.assertEquals(threadCount * samples, Collections.frequency(drained, 1L));
+
+        // The segments of the terminated threads are discarded once drained
+        drained.clear();
+        buffer.drain(drained::add);
+        Assert.assertTrue(drained.isEmpty());
+    }
+
+    @Test
+    public void terminatedThreadDrainedOnce() throws InterruptedException {
+        final ThreadLocalSampleBuffer buffer = new ThreadLocalSampleBuffer();
+        final Thread thread = new Thread(() -> buffer.record(5));
+        thread.start();
+        thread.join();
+        buffer.record(6);
+        final List<Long> drained = new ArrayList<>();
+        buffer.drain(drained::add);
+        Collections.sort(drained);
+        Assert.assertEquals(Arrays.asList(5L, 6L), drained);
+
+        buffer.record(7);
+        drained.clear();
+        buffer.drain(drained::add);
+        Assert.assertEquals(Collections.singletonList(7L), drained);
+    }
+
+    @Test
+    public void recordBatch() {
+        final ThreadLocalSampleBuffer buffer = new ThreadLocalSampleBuffer();
+        buffer.record(1);
+        buffer.record(new long[] {5, 2, 3, 5}, 1, 2);
+        final List<Long> drained = new ArrayList<>();
+        buffer.drain(drained::add);
+        Assert.assertEquals(Arrays.asList(1L, 2L, 3L), drained);
+    }
+}
@@ -17,6 +17,8 @@ package com.arpnetworking.metrics.codahale;
 
 import com.arpnetworking.metrics.Metrics;
 import com.codahale.metrics.Clock;
+import com.codahale.metrics.ExponentiallyDecayingReservoir;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -26,6 +28,7 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 /**
@@ -55,8 +58,212 @@ public class TimerTest {
         timer.time();
     }
 
+    @Test
+    public void timeContext() {
+        final Timer timer = new Timer(
+                "foo", _lock, new ThreadLocalSampleBuffer(), new ExponentiallyDecayingReservoir(), _clock, false, null);
+        Mockito.when(_clock.getTick()).thenReturn(100L, 142L);
+        Assert.assertEquals(42, timer.time().stop());
+        timer.drainTo(_metrics);
+        Mockito.verify(_metrics).setTimer("foo", 42, TimeUnit.NANOSECONDS);
+        Assert.assertEquals(1, timer.getCount());
+    }
+
+    @Test
+    public void recordSince() {
+        final Timer timer = new Timer(
+                "foo", _lock, new ThreadLocalSampleBuffer(), new ExponentiallyDecayingReservoir(), _clock, false, null);
+        Mockito.when(_clock.getTick()).thenReturn(100L, 142L);
+        final long start = timer.start();
+        Assert.assertEquals(100, start);
+        Assert.assertEquals(42, timer.recordSince(start));
+        timer.drainTo(_metrics);
+        Mockito.verify(_metrics).setTimer("foo", 42, TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void timeRunnable() {
+        final Timer timer = new Timer(
+                "foo", _lock, new ThreadLocalSampleBuffer(), new ExponentiallyDecayingReservoir(), _clock, false, null);
+        Mockito.when(_clock.getTick()).thenReturn(100L, 142L);
+        final AtomicBoolean ran = new AtomicBoolean(false);
+        timer.time(() -> ran.set(true));
+        Assert.assertTrue(ran.get());
+        timer.drainTo(_metrics);
+        Mockito.verify(_metrics).setTimer("foo", 42, TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void timeRunnableThrows() {
+        final Timer timer = new Timer(
+                "foo", _lock, new ThreadLocalSampleBuffer(), new ExponentiallyDecayingReservoir(), _clock, false, null);
+        Mockito.when(_clock.getTick()).thenReturn(100L, 142L);
+        try {
+            timer.time((Runnable) () -> {
+                throw new IllegalStateException();
+            });
+            Assert.fail("Expected exception");
+        } catch (final IllegalStateException e) {
+            timer.drainTo(_metrics);
+            Mockito.verify(_metrics).setTimer("foo", 42, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @Test
+    public void timeCallable() throws Exception {
+        final Timer timer = new Timer("foo", _lock, _clock);
+        Mockito.when(_clock.getTick()).thenReturn(100L, 142L);
+        Assert.assertEquals("bar", timer.time(() -> "bar"));
+        Mockito.verify(_lock).readLocked(_delegateCaptor.capture());
+        _delegateCaptor.getValue().accept(_metrics);
+        Mockito.verify(_metrics).setTimer("foo", 42, TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void buffered() {
+        final Timer timer = new Timer(
+                "foo", _lock, new ThreadLocalSampleBuffer(), new ExponentiallyDecayingReservoir(), Clock.defaultClock(), false,
+                null);
+        timer.update(18, TimeUnit.MILLISECONDS);
+        Mockito.verifyZeroInteractions(_lock);
+        Assert.assertEquals(1, timer.getCount());
+        Assert.assertFalse(timer.isEmpty());
+        timer.drainTo(_metrics);
+        Assert.assertTrue(timer.isEmpty());
+        Mockito.verify(_metrics).setTimer("foo", TimeUnit.MILLISECONDS.toNanos(18), TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void touched() {
+        final Timer timer = new Timer(
+                "foo", _lock, new ThreadLocalSampleBuffer(), new ExponentiallyDecayingReservoir(), Clock.defaultClock(), false,
+                null);
+        Assert.assertFalse(timer.checkAndClearTouched());
+        timer.update(18, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(timer.checkAndClearTouched());
+        Assert.assertFalse(timer.checkAndClearTouched());
+    }
+
+    @Test
+    public void drainLocked() {
+        final Timer timer = new Timer("foo", _lock, Clock.defaultClock());
+        timer.update(18, TimeUnit.MILLISECONDS);
+        timer.drainTo(_metrics);
+        Mockito.verifyZeroInteractions(_metrics);
+        Assert.assertTrue(timer.isEmpty());
+    }
+
+    @Test
+    public void tsdOnly() {
+        final Timer timer = new Timer("foo", _lock, null, new NoOpReservoir(), Clock.defaultClock(), true, null);
+        timer.update(18, TimeUnit.MILLISECONDS);
+        Mockito.verify(_lock).readLocked(_delegateCaptor.capture());
+        _delegateCaptor.getValue().accept(_metrics);
+        Mockito.verify(_metrics).setTimer("foo", 18, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(1, timer.getCount());
+        Assert.assertEquals(0, timer.getMeanRate(), 0);
+        Assert.assertEquals(0, timer.getSnapshot().size());
+    }
+
+    @Test
+    public void tsdOnlyBuffered() {
+        final Timer timer = new Timer(
+                "foo", _lock, new ThreadLocalSampleBuffer(), new NoOpReservoir(), Clock.defaultClock(), true, null);
+        timer.update(18, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(1, timer.getCount());
+        Assert.assertEquals(0, timer.getSnapshot().size());
+        timer.drainTo(_metrics);
+        Mockito.verify(_metrics).setTimer("foo", TimeUnit.MILLISECONDS.toNanos(18), TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void sampled() {
+        final Timer timer = new Timer(
+                "foo", _lock, null, new ExponentiallyDecayingReservoir(), Clock.defaultClock(), false,
+                new Sampler(Double.MIN_VALUE));
+        for (int i = 0; i < 1000; ++i) {
+            timer.update(18, TimeUnit.MILLISECONDS);
+        }
+        timer.update(new long[] {18, 20}, 0, 2, TimeUnit.MILLISECONDS);
+        Mockito.verifyZeroInteractions(_lock);
+        Assert.assertEquals(1002, timer.getCount());
+        Assert.assertEquals(0, timer.getSnapshot().size());
+        Assert.assertTrue(timer.checkAndClearTouched());
+        Assert.assertFalse(timer.isEmpty());
+        timer.drainTo(_metrics);
+        Mockito.verify(_metrics).incrementCounter("foo.count", 1002);
+        Mockito.verify(_metrics).setGauge("foo.sample_rate", Double.MIN_VALUE);
+        Assert.assertTrue(timer.isEmpty());
+        timer.drainTo(_metrics);
+        Mockito.verifyNoMoreInteractions(_metrics);
+    }
+
+    @Test
+    public void sampledBuffered() {
+        final Timer timer = new Timer(
+                "foo", _lock, new ThreadLocalSampleBuffer(), new ExponentiallyDecayingReservoir(), Clock.defaultClock(), false,
+                new Sampler(1));
+        timer.update(18, TimeUnit.MILLISECONDS);
+        timer.update(new long[] {20}, 0, 1, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(2, timer.getCount());
+        Assert.assertEquals(2, timer.getSnapshot().size());
+        Assert.assertTrue(timer.getMeanRate() > 0);
+        Assert.assertTrue(timer.getOneMinuteRate() >= 0);
+        Assert.assertTrue(timer.getFiveMinuteRate() >= 0);
+        Assert.assertTrue(timer.getFifteenMinuteRate() >= 0);
+        timer.drainTo(_metrics);
+        Mockito.verify(_metrics).setTimer("foo", TimeUnit.MILLISECONDS.toNanos(18), TimeUnit.NANOSECONDS);
+        Mockito.verify(_metrics).setTimer("foo", TimeUnit.MILLISECONDS.toNanos(20), TimeUnit.NANOSECONDS);
+        Mockito.verify(_metrics).incrementCounter("foo.count", 2);
+        Mockito.verify(_metrics).setGauge("foo.sample_rate", 1d);
+    }
+
+    @Test
+    public void updateBatch() {
+        final Timer timer = new Timer("foo", _lock, Clock.defaultClock());
+        timer.update(new long[] {9, 18, 20, 9}, 1, 2, TimeUnit.MILLISECONDS);
+        timer.update(new long[] {9}, 1, 0, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(2, timer.getCount());
+        Mockito.verify(_lock).readLocked(_delegateCaptor.capture());
+        _delegateCaptor.getValue().accept(_metrics);
+        Mockito.verify(_metrics).setTimer("foo", 18, TimeUnit.MILLISECONDS);
+        Mockito.verify(_metrics).setTimer("foo", 20, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void updateBatchBuffered() {
+        final Timer timer = new Timer(
+                "foo", _lock, new ThreadLocalSampleBuffer(), new NoOpReservoir(), Clock.defaultClock(), true, null);
+        timer.update(new long[] {18, 20}, 0, 2, TimeUnit.MILLISECONDS);
+        timer.update(new long[] {42}, 0, 1, TimeUnit.NANOSECONDS);
+        Mockito.verifyZeroInteractions(_lock);
+        Assert.assertEquals(3, timer.getCount());
+        Assert.assertTrue(timer.checkAndClearTouched());
+        timer.drainTo(_metrics);
+        Mockito.verify(_metrics).setTimer("foo", TimeUnit.MILLISECONDS.toNanos(18), TimeUnit.NANOSECONDS);
+        Mockito.verify(_metrics).setTimer("foo", TimeUnit.MILLISECONDS.toNanos(20), TimeUnit.NANOSECONDS);
+        Mockito.verify(_metrics).setTimer("foo", 42, TimeUnit.NANOSECONDS);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void updateBatchOutOfBounds() {
+        new Timer("foo", _lock, Clock.defaultClock()).update(new long[2], 1, 2, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void updateBatchNegativeOffset() {
+        new Timer("foo", _lock, Clock.defaultClock()).update(new long[2], -1, 1, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void updateBatchNegativeLength() {
+        new Timer("foo", _lock, Clock.defaultClock()).update(new long[2], 0, -1, TimeUnit.SECONDS);
+    }
+
     @Mock
     private SafeRefLock<Metrics> _lock;
+    @Mock
+    private Clock _clock;
     @Captor
     private ArgumentCaptor<Consumer<Metrics>> _delegateCaptor;
     @Mock
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2015 Groupon.com
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.arpnetworking.metrics.codahale;
+
+import com.arpnetworking.metrics.Metrics;
+import com.arpnetworking.metrics.MetricsFactory;
+import com.arpnetworking.metrics.Units;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the TsdReporter class.
+ *
+ * @author Brandon Arp (barp at groupon dot com)
+ */
+public class TsdReporterTest {
+    @Before
+    public void setUp() {
+        _registry = new MetricRegistry();
+        _metricsFactory = Mockito.mock(MetricsFactory.class);
+        _first = Mockito.mock(Metrics.class);
+        _second = Mockito.mock(Metrics.class);
+        Mockito.when(_metricsFactory.create()).thenReturn(_first, _second);
+        _reporter = new TsdReporter.Builder()
+                .setRegistry(_registry)
+                .setMetricsFactory(_metricsFactory)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        _reporter.close();
+    }
+
+    @Test
+    public void countersAndMetersAsDeltas() {
+        _registry.counter("counter").inc(5);
+        _registry.meter("meter").mark(3);
+        _reporter.report();
+        Mockito.verify(_first).incrementCounter("counter", 5);
+        Mockito.verify(_first).incrementCounter("meter", 3);
+        Mockito.verify(_first).close();
+
+        _registry.counter("counter").dec(2);
+        _reporter.report();
+        Mockito.verify(_second).incrementCounter("counter", -2);
+        Mockito.verify(_second).incrementCounter("meter", 0);
+        Mockito.verify(_second).close();
+        Mockito.verifyNoMoreInteractions(_first, _second);
+    }
+
+    @Test
+    public void removedMetricsForgotten() {
+        _registry.counter("counter").inc(5);
+        _reporter.report();
+        _registry.remove("counter");
+        _reporter.report();
+        _registry.counter("counter").inc(1);
+        final Metrics third = Mockito.mock(Metrics.class);
+        Mockito.when(_metricsFactory.create()).thenReturn(third);
+        _reporter.report();
+        Mockito.verify(_first).incrementCounter("counter", 5);
+        Mockito.verify(third).incrementCounter("counter", 1);
+    }
+
+    @Test
+    public void histogramSnapshot() {
+        for (long value = 1; value <= 100; ++value) {
+            _registry.histogram("histogram").update(value);
+        }
+        _reporter.report();
+        _reporter.report();
+
+        Mockito.verify(_first).incrementCounter("histogram.count", 100);
+        Mockito.verify(_first).setGauge("histogram.min", 1d);
+        Mockito.verify(_first).setGauge("histogram.max", 100d);
+        Mockito.verify(_first).setGauge(Mockito.eq("histogram.mean"), Mockito.anyDouble());
+        Mockito.verify(_first).setGauge(Mockito.eq("histogram.stddev"), Mockito.anyDouble());
+        Mockito.verify(_first).setGauge("histogram.p50", 50d);
+        Mockito.verify(_first).setGauge("histogram.p75", 75d);
+        Mockito.verify(_first).setGauge("histogram.p95", 95d);
+        Mockito.verify(_first).setGauge("histogram.p99", 99d);
+        Mockito.verify(_first).setGauge("histogram.p999", 100d);
+        Mockito.verify(_first).close();
+        // Unchanged so only the count is reported
+        Mockito.verify(_second).incrementCounter("histogram.count", 0);
+        Mockito.verify(_second).close();
+        Mockito.verifyNoMoreInteractions(_first, _second);
+    }
+
+    @Test
+    public void timerSnapshotInNanoseconds() {
+        _registry.timer("timer").update(2, TimeUnit.MILLISECONDS);
+        _reporter.report();
+
+        Mockito.verify(_first).incrementCounter("timer.count", 1);
+        Mockito.verify(_first).setGauge("timer.min", 2000000d, Units.NANOSECOND);
+        Mockito.verify(_first).setGauge("timer.max", 2000000d, Units.NANOSECOND);
+        Mockito.verify(_first).setGauge("timer.p99", 2000000d, Units.NANOSECOND);
+    }
+
+    @Test
+    public void gauges() {
+        _registry.register("number", (Gauge<Integer>) () -> 5);
+        _registry.register("string", (Gauge<String>) () -> "value");
+        _registry.register("throws", (Gauge<Integer>) () -> {
+            throw new IllegalStateException();
+        });
+        _reporter.report();
+        Mockito.verify(_first).setGauge("number", 5d);
+        Mockito.verify(_first).close();
+        Mockito.verifyNoMoreInteractions(_first);
+    }
+
+    @Test
+    public void filter() {
+        final TsdReporter reporter = new TsdReporter.Builder()
+                .setRegistry(_registry)
+                .setMetricsFactory(_metricsFactory)
+                .setFilter((name, metric) -> name.startsWith("kept"))
+                .build();
+        _registry.counter("kept").inc();
+        _registry.counter("filtered").inc();
+        reporter.report();
+        reporter.close();
+        Mockito.verify(_first).incrementCounter("kept", 1);
+        Mockito.verify(_first).close();
+        Mockito.verifyNoMoreInteractions(_first);
+    }
+
+    @Test
+    public void defaultMetricsFactory() {
+        final TsdReporter reporter = new TsdReporter.Builder().setRegistry(_registry).build();
+        _registry.counter("counter").inc();
+        reporter.report();
+        reporter.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void registryRequired() {
+        new TsdReporter.Builder().build();
+    }
+
+    private MetricRegistry _registry;
+    private MetricsFactory _metricsFactory;
+    private Metrics _first;
+    private Metrics _second;
+    private TsdReporter _reporter;
+}